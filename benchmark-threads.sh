@@ -0,0 +1,108 @@
+#!/bin/bash
+
+# Benchmark: thread di piattaforma vs virtual thread
+#
+# Avvia un finto upstream YouTube lento (risponde dopo UPSTREAM_DELAY_MS) e due volte il proxy,
+# prima con il pool Tomcat classico e poi con spring.threads.virtual.enabled=true,
+# inviando REQUESTS richieste search tutte diverse (solo Cache MISS) con CONCURRENCY client in parallelo.
+# Il budget di quota è alzato apposta: con quello predefinito quasi tutte le search risponderebbero
+# dal database e il benchmark misurerebbe quel percorso invece delle chiamate upstream.
+#
+# Requisiti: JDK 21 (JAVA_HOME), python3, curl
+# Uso: ./benchmark-threads.sh
+
+REQUESTS="${REQUESTS:-2000}"
+CONCURRENCY="${CONCURRENCY:-400}"
+TOMCAT_THREADS="${TOMCAT_THREADS:-50}"
+UPSTREAM_DELAY_MS="${UPSTREAM_DELAY_MS:-300}"
+UPSTREAM_PORT=18081
+PROXY_PORT=18080
+WORK_DIR=$(mktemp -d)
+
+# Colori
+GREEN='\033[0;32m'
+RED='\033[0;31m'
+BLUE='\033[0;34m'
+NC='\033[0m'
+
+cleanup() {
+    [ -n "$UPSTREAM_PID" ] && kill "$UPSTREAM_PID" 2>/dev/null
+    [ -n "$PROXY_PID" ] && kill "$PROXY_PID" 2>/dev/null
+    rm -rf "$WORK_DIR"
+}
+trap cleanup EXIT
+
+echo -e "${BLUE}════════════════════════════════════════${NC}"
+echo -e "${BLUE}🧵 Benchmark platform vs virtual thread${NC}"
+echo -e "${BLUE}════════════════════════════════════════${NC}"
+echo "Richieste: $REQUESTS, concorrenza: $CONCURRENCY, thread Tomcat: $TOMCAT_THREADS, latenza upstream: ${UPSTREAM_DELAY_MS}ms"
+
+# Build con il profilo JDK 21
+./mvnw -q -Pvirtual-threads -DskipTests package || { echo -e "${RED}❌ Build fallita${NC}"; exit 1; }
+JAR=$(ls target/youtubeproxy-*.jar | grep -v plain | head -1)
+
+# Finto upstream: ogni risposta arriva dopo UPSTREAM_DELAY_MS
+python3 - "$UPSTREAM_PORT" "$UPSTREAM_DELAY_MS" <<'PY' &
+import sys, time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+delay = int(sys.argv[2]) / 1000.0
+
+class Handler(BaseHTTPRequestHandler):
+    def do_GET(self):
+        time.sleep(delay)
+        body = b'{"kind": "youtube#searchListResponse", "pageInfo": {"totalResults": 0, "resultsPerPage": 0}, "items": []}'
+        self.send_response(200)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def log_message(self, *args):
+        pass
+
+ThreadingHTTPServer.request_queue_size = 1024
+ThreadingHTTPServer(("127.0.0.1", int(sys.argv[1])), Handler).serve_forever()
+PY
+UPSTREAM_PID=$!
+
+run_benchmark() {
+    local label=$1
+    local virtual=$2
+
+    java -jar "$JAR" \
+        --server.port=$PROXY_PORT \
+        --server.tomcat.threads.max=$TOMCAT_THREADS \
+        --spring.threads.virtual.enabled=$virtual \
+        --spring.datasource.url=jdbc:h2:file:$WORK_DIR/$label \
+        --spring.jpa.show-sql=false \
+        --api.security.enabled=false \
+        --youtube.api.key=benchmark \
+        --youtube.quota.daily-budget=100000000 \
+        --youtube.api.base-url=http://127.0.0.1:$UPSTREAM_PORT \
+        --logging.level.root=WARN > "$WORK_DIR/$label.log" 2>&1 &
+    PROXY_PID=$!
+
+    for i in $(seq 1 60); do
+        curl -s "http://localhost:$PROXY_PORT/youtube/v3/health" > /dev/null && break
+        sleep 1
+    done
+
+    local start=$(date +%s%N)
+    seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I{} \
+        curl -s -o /dev/null -w "%{http_code} %{time_total}\n" \
+        "http://localhost:$PROXY_PORT/youtube/v3/search?part=snippet&q=$label-{}" > "$WORK_DIR/$label.times"
+    local end=$(date +%s%N)
+
+    kill "$PROXY_PID"
+    wait "$PROXY_PID" 2>/dev/null
+    PROXY_PID=""
+
+    local elapsed=$(awk -v s="$start" -v e="$end" 'BEGIN {printf "%.2f", (e - s) / 1e9}')
+    local ok=$(grep -c "^200" "$WORK_DIR/$label.times")
+    local p99=$(awk '{print $2}' "$WORK_DIR/$label.times" | sort -n | awk '{a[NR]=$1} END {print a[int(NR*0.99)]}')
+    echo -e "${GREEN}✅ $label${NC}: ${elapsed}s totali, $(awk -v n="$REQUESTS" -v t="$elapsed" 'BEGIN {printf "%.0f", n / t}') req/s, $ok risposte 200, p99 ${p99}s"
+}
+
+run_benchmark platform false
+run_benchmark virtual true
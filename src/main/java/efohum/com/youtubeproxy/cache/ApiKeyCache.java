@@ -0,0 +1,153 @@
+package efohum.com.youtubeproxy.cache;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import efohum.com.youtubeproxy.repository.ApiKeyRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Validazione delle API-KEY interne senza accessi al DB sul percorso delle richieste.
+ *
+ * - Esito della lettura (key attiva con la sua scadenza, oppure key sconosciuta o disattivata) tenuto in
+ *   memoria per api.security.key-cache-ttl-seconds; la scadenza della key viene comunque verificata a ogni uso
+ * - ApiKeyController invalida la voce quando una key viene disattivata, riattivata o eliminata
+ * - lastUsedAt viene registrato in memoria e scritto nel DB a blocchi ogni api.security.last-used-flush-ms,
+ *   un UPDATE per key usata in un'unica transazione (l'ultimo utilizzo può arrivare in ritardo di un intervallo)
+ */
+@Component
+@Slf4j
+public class ApiKeyCache {
+
+    // Key sconosciuta, disattivata o eliminata: anche l'esito negativo evita una lettura a ogni richiesta
+    private static final ValidatedKey INVALID = new ValidatedKey(null, null);
+
+    private final ApiKeyRepository apiKeyRepository;
+    private final TransactionOperations transactions;
+    private final Cache<String, ValidatedKey> keys;
+
+    private final ConcurrentHashMap<Long, LocalDateTime> pendingLastUsed = new ConcurrentHashMap<>();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedKeys = new AtomicLong();
+
+    @Autowired
+    public ApiKeyCache(
+            ApiKeyRepository apiKeyRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${api.security.key-cache-ttl-seconds:60}") long ttlSeconds) {
+        this(apiKeyRepository, new TransactionTemplate(transactionManager), ttlSeconds);
+    }
+
+    ApiKeyCache(ApiKeyRepository apiKeyRepository, TransactionOperations transactions, long ttlSeconds) {
+        this.apiKeyRepository = apiKeyRepository;
+        this.transactions = transactions;
+        this.keys = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * true se la key è attiva e non scaduta; in tal caso ne registra l'utilizzo
+     */
+    public boolean validate(String keyValue) {
+        ValidatedKey key = keys.get(keyValue, this::load);
+        if (key.id == null || (key.expiresAt != null && LocalDateTime.now().isAfter(key.expiresAt))) {
+            return false;
+        }
+        pendingLastUsed.put(key.id, LocalDateTime.now());
+        return true;
+    }
+
+    /**
+     * Da chiamare dopo ogni modifica di una key: la richiesta successiva la rilegge dal DB
+     */
+    public void invalidate(Long id) {
+        keys.asMap().values().removeIf(key -> id.equals(key.id));
+    }
+
+    public void invalidate(String keyValue) {
+        keys.invalidate(keyValue);
+    }
+
+    /**
+     * Scrive gli ultimi utilizzi registrati dall'ultimo flush
+     */
+    @Scheduled(initialDelayString = "${api.security.last-used-flush-ms:30000}",
+            fixedDelayString = "${api.security.last-used-flush-ms:30000}")
+    public void flushLastUsed() {
+        if (pendingLastUsed.isEmpty()) {
+            return;
+        }
+        Map<Long, LocalDateTime> batch = new HashMap<>();
+        for (Long id : pendingLastUsed.keySet()) {
+            LocalDateTime lastUsed = pendingLastUsed.remove(id);
+            if (lastUsed != null) {
+                batch.put(id, lastUsed);
+            }
+        }
+        try {
+            transactions.executeWithoutResult(status ->
+                    batch.forEach((id, lastUsed) -> apiKeyRepository.updateLastUsedAt(id, lastUsed)));
+            flushes.incrementAndGet();
+            flushedKeys.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            // Rimessi in coda per il flush successivo, senza sovrascrivere utilizzi più recenti
+            batch.forEach((id, lastUsed) -> pendingLastUsed.merge(id, lastUsed,
+                    (pending, failed) -> pending.isAfter(failed) ? pending : failed));
+            log.error("Errore nel salvataggio dell'ultimo utilizzo delle API-KEY: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushLastUsed();
+    }
+
+    public Map<String, Object> getStatistics() {
+        CacheStats stats = keys.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", keys.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("pendingLastUsed", pendingLastUsed.size());
+        result.put("flushes", flushes.get());
+        result.put("flushedKeys", flushedKeys.get());
+        return result;
+    }
+
+    private ValidatedKey load(String keyValue) {
+        return apiKeyRepository.findByKeyValueAndIsActiveTrue(keyValue)
+                .map(key -> new ValidatedKey(key.getId(), key.getExpiresAt()))
+                .orElse(INVALID);
+    }
+
+    private static final class ValidatedKey {
+
+        private final Long id;
+        private final LocalDateTime expiresAt;
+
+        private ValidatedKey(Long id, LocalDateTime expiresAt) {
+            this.id = id;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
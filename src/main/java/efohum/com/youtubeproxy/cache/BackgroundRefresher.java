@@ -0,0 +1,152 @@
+package efohum.com.youtubeproxy.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Esegue in background la rivalidazione delle risposte scadute servite in modalità stale-while-revalidate.
+ *
+ * Un solo refresh alla volta per chiave: le richieste successive per una chiave già in refresh vengono ignorate.
+ */
+@Component
+@Slf4j
+public class BackgroundRefresher {
+
+    private final Executor executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Con spring.threads.virtual.enabled=true (JDK 21+) ogni refresh gira su un virtual thread;
+     * cache.refresh.threads limita comunque i refresh contemporanei verso YouTube
+     */
+    @Autowired
+    public BackgroundRefresher(
+            @Value("${cache.refresh.threads:4}") int threads,
+            @Value("${cache.refresh.queue-capacity:1000}") int queueCapacity,
+            Environment environment) {
+        this(Threading.VIRTUAL.isActive(environment)
+                ? newVirtualExecutor(threads, queueCapacity)
+                : newExecutor(threads, queueCapacity));
+    }
+
+    BackgroundRefresher(Executor executor) {
+        this.executor = executor;
+    }
+
+    private static ExecutorService newExecutor(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Stessi limiti del pool di piattaforma: al massimo threads refresh in esecuzione
+     * e queueCapacity in attesa, oltre i quali il refresh viene rifiutato
+     */
+    private static Executor newVirtualExecutor(int threads, int queueCapacity) {
+        VirtualThreadTaskExecutor virtualThreads = new VirtualThreadTaskExecutor("cache-refresh-");
+        Semaphore running = new Semaphore(threads);
+        AtomicInteger queued = new AtomicInteger();
+        log.info("Refresh in background su virtual thread (max {} contemporanei)", threads);
+        return task -> {
+            if (queued.incrementAndGet() > threads + queueCapacity) {
+                queued.decrementAndGet();
+                throw new RejectedExecutionException("Coda di refresh piena");
+            }
+            virtualThreads.execute(() -> {
+                try {
+                    running.acquire();
+                    try {
+                        task.run();
+                    } finally {
+                        running.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    queued.decrementAndGet();
+                }
+            });
+        };
+    }
+
+    /**
+     * Pianifica il refresh di una chiave; restituisce false se è già in corso o la coda è piena
+     */
+    public boolean schedule(String key, Runnable refresh) {
+        if (!pending.add(key)) {
+            deduplicated.incrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh.run();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.warn("Refresh in background fallito per {}: {}", key, e.getMessage());
+                } finally {
+                    pending.remove(key);
+                }
+            });
+            scheduled.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            rejected.incrementAndGet();
+            log.warn("Coda di refresh piena, refresh di {} rimandato alla prossima richiesta", key);
+            return false;
+        }
+    }
+
+    /**
+     * Contatori dei refresh: pianificati, ignorati perché già in corso, rifiutati, falliti
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("scheduled", scheduled.get());
+        result.put("deduplicated", deduplicated.get());
+        result.put("rejected", rejected.get());
+        result.put("failed", failed.get());
+        result.put("pending", pending.size());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+    }
+}
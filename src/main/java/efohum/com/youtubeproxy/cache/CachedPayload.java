@@ -0,0 +1,112 @@
+package efohum.com.youtubeproxy.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.util.DigestUtils;
+
+import efohum.com.youtubeproxy.entity.CachedSearchResult;
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+
+/**
+ * Risposta cachata pronta per essere restituita al client, senza riferimenti all'entity JPA
+ */
+@Value
+public class CachedPayload {
+
+    String json; // Risposta dell'API in formato JSON
+    LocalDateTime createdAt;
+    LocalDateTime expiresAt;
+    
+    // Corpo gzip della risposta, calcolato una sola volta e riusato per ogni client che accetta gzip
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    AtomicReference<byte[]> gzip = new AtomicReference<>();
+    
+    // ETag debole (W/"md5 del JSON"): uguale per la forma gzip e quella in chiaro, stabile tra le repliche
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    AtomicReference<String> etag = new AtomicReference<>();
+
+    public static CachedPayload of(CachedSearchResult result) {
+        return new CachedPayload(result.getResponseJson(), result.getCreatedAt(), result.getExpiresAt());
+    }
+
+    public static CachedPayload of(CachedVideo video) {
+        return new CachedPayload(video.getResponseJson(), video.getCreatedAt(), video.getExpiresAt());
+    }
+
+    public boolean isExpired() {
+        return expiresAt == null || LocalDateTime.now().isAfter(expiresAt);
+    }
+
+    /**
+     * Scaduta anche oltre la finestra stale-while-revalidate (hard TTL = expiresAt + staleSeconds)
+     */
+    public boolean isExpired(long staleSeconds) {
+        return expiresAt == null || LocalDateTime.now().isAfter(expiresAt.plusSeconds(staleSeconds));
+    }
+
+    /**
+     * Risposta in UTF-8 compressa gzip; calcolata alla prima richiesta (la cache L1 la calcola al riempimento)
+     */
+    public byte[] gzip() {
+        byte[] compressed = gzip.get();
+        if (compressed == null && json != null) {
+            compressed = compress(json);
+            gzip.compareAndSet(null, compressed);
+        }
+        return compressed;
+    }
+    
+    /**
+     * ETag della risposta, calcolato alla prima richiesta condizionale e poi riusato
+     */
+    public String etag() {
+        String value = etag.get();
+        if (value == null && json != null) {
+            value = "W/\"" + DigestUtils.md5DigestAsHex(json.getBytes(StandardCharsets.UTF_8)) + "\"";
+            etag.compareAndSet(null, value);
+        }
+        return value;
+    }
+    
+    /**
+     * Secondi di vita residua fino a expiresAt (0 se già scaduta)
+     */
+    public long secondsToExpiry() {
+        return expiresAt == null ? 0L : Math.max(0L, Duration.between(LocalDateTime.now(), expiresAt).getSeconds());
+    }
+    
+    /**
+     * Peso approssimativo in byte della risposta (caratteri UTF-16) più l'eventuale forma gzip
+     */
+    public int weight() {
+        byte[] compressed = gzip.get();
+        return (json == null ? 0 : json.length() * 2) + (compressed == null ? 0 : compressed.length);
+    }
+    
+    private static byte[] compress(String json) {
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,179 @@
+package efohum.com.youtubeproxy.cache;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache L1 in memoria davanti ai repository JPA.
+ *
+ * - Chiavi: queryKey per le ricerche, videoId per i video
+ * - Eviction per numero di elementi e per peso (byte), con admission W-TinyLFU di Caffeine
+ *   (le query frequenti non vengono scalzate da un burst di query uniche)
+ * - Ogni elemento resta in cache fino al suo hard TTL (expiresAt + finestra stale-while-revalidate):
+ *   oltre expiresAt viene ancora restituito, ma è il chiamante a decidere se rivalidarlo
+ * - Con cache.local.gzip=true la forma gzip di ogni risposta viene calcolata all'inserimento
+ *   (e pesata insieme al JSON), così i controller la inviano senza comprimere a ogni richiesta
+ */
+@Component
+@Slf4j
+public class LocalResponseCache {
+
+    private final Cache<String, CachedPayload> searches;
+    private final Cache<String, CachedPayload> videos;
+    private final long staleSeconds;
+    private final boolean gzip;
+
+    public LocalResponseCache(
+            @Value("${cache.local.max-entries:10000}") long maxEntries,
+            @Value("${cache.local.max-weight-bytes:67108864}") long maxWeightBytes,
+            @Value("${cache.stale-while-revalidate-seconds:21600}") long staleSeconds,
+            @Value("${cache.local.gzip:true}") boolean gzip) {
+        this.staleSeconds = staleSeconds;
+        this.gzip = gzip;
+        this.searches = buildCache(maxEntries, maxWeightBytes, staleSeconds);
+        this.videos = buildCache(maxEntries, maxWeightBytes, staleSeconds);
+        log.info("Cache L1 configurata: maxEntries={}, maxWeightBytes={} (per tipo)", maxEntries, maxWeightBytes);
+    }
+
+    /**
+     * Il peso minimo di ogni elemento è maxWeight / maxEntries: così il limite sul peso
+     * garantisce anche il limite sul numero di elementi
+     */
+    private static Cache<String, CachedPayload> buildCache(long maxEntries, long maxWeightBytes, long staleSeconds) {
+        int minWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxWeightBytes / Math.max(1, maxEntries)));
+        return Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((String key, CachedPayload payload) -> Math.max(minWeight, payload.weight()))
+                .expireAfter(new ExpiresAtExpiry(staleSeconds))
+                .recordStats()
+                .build();
+    }
+
+    public Optional<CachedPayload> getSearch(String queryKey) {
+        return Optional.ofNullable(searches.getIfPresent(queryKey));
+    }
+
+    public void putSearch(String queryKey, CachedPayload payload) {
+        if (isCacheable(payload)) {
+            searches.put(queryKey, precompress(payload));
+        }
+    }
+
+    /**
+     * Lettura che non conta come accesso nelle statistiche (il chiamante ha già letto la cache)
+     */
+    public Optional<CachedPayload> peekSearch(String queryKey) {
+        return Optional.ofNullable(searches.policy().getIfPresentQuietly(queryKey));
+    }
+
+    public Optional<CachedPayload> getVideo(String videoId) {
+        return Optional.ofNullable(videos.getIfPresent(videoId));
+    }
+
+    public void putVideo(String videoId, CachedPayload payload) {
+        if (isCacheable(payload)) {
+            videos.put(videoId, precompress(payload));
+        }
+    }
+
+    public Optional<CachedPayload> peekVideo(String videoId) {
+        return Optional.ofNullable(videos.policy().getIfPresentQuietly(videoId));
+    }
+
+    public void invalidateSearches() {
+        searches.invalidateAll();
+        log.info("Cache L1 search invalidata");
+    }
+
+    public void invalidateVideos() {
+        videos.invalidateAll();
+        log.info("Cache L1 video invalidata");
+    }
+
+    public void invalidateAll() {
+        invalidateSearches();
+        invalidateVideos();
+    }
+
+    /**
+     * Statistiche della cache L1 (hit/miss/eviction) per search e video
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("search", describe(searches));
+        result.put("video", describe(videos));
+        return result;
+    }
+
+    private static Map<String, Object> describe(Cache<String, CachedPayload> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("evictionWeight", stats.evictionWeight());
+        cache.policy().eviction().ifPresent(eviction ->
+                eviction.weightedSize().ifPresent(weight -> result.put("weightBytes", weight)));
+        return result;
+    }
+
+    private CachedPayload precompress(CachedPayload payload) {
+        if (gzip) {
+            payload.gzip();
+        }
+        return payload;
+    }
+
+    private boolean isCacheable(CachedPayload payload) {
+        return payload != null && payload.getJson() != null && !payload.isExpired(staleSeconds);
+    }
+
+    /**
+     * Fa scadere ogni elemento al suo expiresAt + staleSeconds; le letture non prolungano la durata
+     */
+    private static class ExpiresAtExpiry implements Expiry<String, CachedPayload> {
+
+        private final long staleSeconds;
+
+        ExpiresAtExpiry(long staleSeconds) {
+            this.staleSeconds = staleSeconds;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, CachedPayload payload, long currentTime) {
+            return nanosUntil(payload.getExpiresAt());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedPayload payload, long currentTime, long currentDuration) {
+            return nanosUntil(payload.getExpiresAt());
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedPayload payload, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        private long nanosUntil(LocalDateTime expiresAt) {
+            if (expiresAt == null) {
+                return 0L;
+            }
+            return Math.max(0L, Duration.between(LocalDateTime.now(), expiresAt.plusSeconds(staleSeconds)).toNanos());
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package efohum.com.youtubeproxy.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Cache L2 condivisa su Redis, tra la cache L1 in memoria e il database H2.
+ *
+ * Ogni risposta viene salvata con un TTL nativo Redis pari alla vita residua di expiresAt
+ * (più la finestra stale-while-revalidate),
+ * così un MISS su una replica diventa un HIT per tutte le altre.
+ * Se Redis non è raggiungibile la cache si comporta come un MISS: il proxy continua a funzionare sul DB.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RedisResponseCache {
+
+    private static final String SEARCH_PREFIX = "search:";
+    private static final String VIDEO_PREFIX = "video:";
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    @Value("${cache.redis.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cache.redis.key-prefix:youtubeproxy:}")
+    private String keyPrefix;
+
+    @Value("${cache.redis.timeout-ms:250}")
+    private long timeoutMs;
+
+    @Value("${cache.stale-while-revalidate-seconds:21600}")
+    private long staleSeconds;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<CachedPayload> getSearch(String queryKey) {
+        return get(SEARCH_PREFIX + queryKey);
+    }
+
+    public Mono<CachedPayload> getSearchAsync(String queryKey) {
+        return getAsync(SEARCH_PREFIX + queryKey);
+    }
+
+    public void putSearch(String queryKey, CachedPayload payload) {
+        put(SEARCH_PREFIX + queryKey, payload);
+    }
+
+    public Optional<CachedPayload> getVideo(String videoId) {
+        return get(VIDEO_PREFIX + videoId);
+    }
+
+    /**
+     * Più video con un solo MGET (un round trip per l'intera richiesta); nella mappa solo gli HIT
+     */
+    public Map<String, CachedPayload> getVideos(Collection<String> videoIds) {
+        Map<String, CachedPayload> result = new HashMap<>();
+        if (!enabled || videoIds.isEmpty()) {
+            return result;
+        }
+        List<String> ids = new ArrayList<>(videoIds);
+        List<String> keys = ids.stream().map(videoId -> keyPrefix + VIDEO_PREFIX + videoId).toList();
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(keys).block(Duration.ofMillis(timeoutMs));
+            for (int i = 0; i < ids.size(); i++) {
+                String value = values == null ? null : values.get(i);
+                CachedPayload payload = value == null ? null : decode(value);
+                if (payload == null || payload.isExpired(staleSeconds)) {
+                    missCount.incrementAndGet();
+                } else {
+                    hitCount.incrementAndGet();
+                    result.put(ids.get(i), payload);
+                }
+            }
+        } catch (Exception e) {
+            errorCount.incrementAndGet();
+            log.warn("Cache Redis non disponibile in lettura ({} video): {}", ids.size(), e.getMessage());
+            result.clear();
+        }
+        return result;
+    }
+
+    public Mono<CachedPayload> getVideoAsync(String videoId) {
+        return getAsync(VIDEO_PREFIX + videoId);
+    }
+
+    public void putVideo(String videoId, CachedPayload payload) {
+        put(VIDEO_PREFIX + videoId, payload);
+    }
+
+    public void invalidateSearches() {
+        deleteByPrefix(SEARCH_PREFIX);
+    }
+
+    public void invalidateVideos() {
+        deleteByPrefix(VIDEO_PREFIX);
+    }
+
+    public void invalidateAll() {
+        invalidateSearches();
+        invalidateVideos();
+    }
+
+    /**
+     * Statistiche della cache L2 (hit/miss/errori di connessione)
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("hitCount", hitCount.get());
+        result.put("missCount", missCount.get());
+        result.put("errorCount", errorCount.get());
+        return result;
+    }
+
+    private Optional<CachedPayload> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(keyPrefix + key)
+                    .block(Duration.ofMillis(timeoutMs));
+            if (value == null) {
+                missCount.incrementAndGet();
+                return Optional.empty();
+            }
+            CachedPayload payload = decode(value);
+            if (payload.isExpired(staleSeconds)) {
+                missCount.incrementAndGet();
+                return Optional.empty();
+            }
+            hitCount.incrementAndGet();
+            return Optional.of(payload);
+        } catch (Exception e) {
+            errorCount.incrementAndGet();
+            log.warn("Cache Redis non disponibile in lettura ({}): {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Lettura non bloccante per la modalità reattiva: timeout ed errori diventano un MISS (Mono vuoto)
+     */
+    private Mono<CachedPayload> getAsync(String key) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue().get(keyPrefix + key)
+                .timeout(Duration.ofMillis(timeoutMs))
+                .map(value -> {
+                    try {
+                        return decode(value);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .filter(payload -> !payload.isExpired(staleSeconds))
+                .doOnNext(payload -> hitCount.incrementAndGet())
+                .switchIfEmpty(Mono.fromRunnable(missCount::incrementAndGet))
+                .onErrorResume(e -> {
+                    errorCount.incrementAndGet();
+                    log.warn("Cache Redis non disponibile in lettura ({}): {}", key, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Scrittura asincrona: il client non attende Redis
+     */
+    private void put(String key, CachedPayload payload) {
+        if (!enabled || payload == null || payload.getJson() == null || payload.getExpiresAt() == null) {
+            return;
+        }
+        Duration ttl = Duration.between(LocalDateTime.now(), payload.getExpiresAt().plusSeconds(staleSeconds));
+        if (ttl.isNegative() || ttl.isZero()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(keyPrefix + key, encode(payload), ttl)
+                    .subscribe(
+                        ok -> log.debug("Cache Redis aggiornata: {} (ttl={}s)", key, ttl.toSeconds()),
+                        error -> {
+                            errorCount.incrementAndGet();
+                            log.warn("Cache Redis non disponibile in scrittura ({}): {}", key, error.getMessage());
+                        });
+        } catch (Exception e) {
+            errorCount.incrementAndGet();
+            log.warn("Errore nella serializzazione per la cache Redis ({}): {}", key, e.getMessage());
+        }
+    }
+
+    private void deleteByPrefix(String prefix) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Long deleted = redisTemplate.delete(
+                    redisTemplate.scan(ScanOptions.scanOptions().match(keyPrefix + prefix + "*").count(500).build()))
+                    .block(Duration.ofSeconds(30));
+            log.info("Cache Redis {}* invalidata: {} chiavi eliminate", prefix, deleted);
+        } catch (Exception e) {
+            errorCount.incrementAndGet();
+            log.warn("Impossibile invalidare la cache Redis {}*: {}", prefix, e.getMessage());
+        }
+    }
+
+    String encode(CachedPayload payload) throws Exception {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("createdAt", toEpochMillis(payload.getCreatedAt()));
+        node.put("expiresAt", toEpochMillis(payload.getExpiresAt()));
+        node.put("json", payload.getJson());
+        return objectMapper.writeValueAsString(node);
+    }
+
+    CachedPayload decode(String value) throws Exception {
+        JsonNode node = objectMapper.readTree(value);
+        return new CachedPayload(
+                node.path("json").asText(null),
+                fromEpochMillis(node.path("createdAt").asLong(0L)),
+                fromEpochMillis(node.path("expiresAt").asLong(0L)));
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time == null ? 0L : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
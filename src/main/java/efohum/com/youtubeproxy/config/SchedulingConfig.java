@@ -0,0 +1,12 @@
+package efohum.com.youtubeproxy.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Job periodici (@Scheduled), ad esempio la riconciliazione del riepilogo statistiche
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,43 @@
+package efohum.com.youtubeproxy.config;
+
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Raccoglie le metriche del pool di connessioni verso YouTube (un pool per indirizzo remoto),
+ * senza dipendere da Micrometer: connessioni attive, inattive e richieste in attesa di una connessione
+ */
+public class UpstreamPoolMetrics implements ConnectionProvider.MeterRegistrar {
+
+    private final Map<String, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(String.valueOf(remoteAddress), metrics);
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(String.valueOf(remoteAddress));
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        pools.forEach((remoteAddress, metrics) -> {
+            Map<String, Object> pool = new HashMap<>();
+            pool.put("active", metrics.acquiredSize());
+            pool.put("idle", metrics.idleSize());
+            pool.put("allocated", metrics.allocatedSize());
+            pool.put("pendingAcquires", metrics.pendingAcquireSize());
+            pool.put("maxConnections", metrics.maxAllocatedSize());
+            pool.put("maxPendingAcquires", metrics.maxPendingAcquireSize());
+            result.put(remoteAddress, pool);
+        });
+        return result;
+    }
+}
@@ -1,12 +1,23 @@
 package efohum.com.youtubeproxy.config;
 
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
 @Configuration
+@Slf4j
 public class WebClientConfig {
     
     @Bean
@@ -14,6 +25,59 @@ public class WebClientConfig {
         return WebClient.builder();
     }
     
+    @Bean
+    public UpstreamPoolMetrics upstreamPoolMetrics() {
+        return new UpstreamPoolMetrics();
+    }
+    
+    /**
+     * Pool di connessioni keep-alive verso YouTube, condiviso da tutte le richieste.
+     * Se il pool è saturo le richieste attendono al massimo pending-acquire-timeout e poi falliscono,
+     * invece di accumularsi occupando i thread delle richieste
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider youtubeConnectionProvider(
+            UpstreamPoolMetrics upstreamPoolMetrics,
+            @Value("${youtube.api.http.max-connections:100}") int maxConnections,
+            @Value("${youtube.api.http.pending-acquire-max:500}") int pendingAcquireMax,
+            @Value("${youtube.api.http.pending-acquire-timeout-ms:2000}") long pendingAcquireTimeoutMs,
+            @Value("${youtube.api.http.max-idle-time-seconds:30}") long maxIdleTimeSeconds,
+            @Value("${youtube.api.http.max-life-time-seconds:300}") long maxLifeTimeSeconds) {
+        log.info("Pool connessioni YouTube: maxConnections={}, pendingAcquireMax={}", maxConnections, pendingAcquireMax);
+        return ConnectionProvider.builder("youtube")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(maxIdleTimeSeconds))
+                .metrics(true, () -> upstreamPoolMetrics)
+                .build();
+    }
+    
+    /**
+     * Unico client verso le API di YouTube: HTTP/2 con fallback a HTTP/1.1, risposte gzip,
+     * timeout di connessione e di risposta per ogni chiamata
+     */
+    @Bean
+    public WebClient youtubeWebClient(
+            WebClient.Builder webClientBuilder,
+            ConnectionProvider youtubeConnectionProvider,
+            @Value("${youtube.api.base-url}") String baseUrl,
+            @Value("${youtube.api.http.connect-timeout-ms:2000}") int connectTimeoutMs,
+            @Value("${youtube.api.http.response-timeout-ms:10000}") long responseTimeoutMs) {
+        HttpClient httpClient = HttpClient.create(youtubeConnectionProvider)
+                .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                .keepAlive(true)
+                .compress(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+        return webClientBuilder.clone()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+    
     @Bean
     public ObjectMapper objectMapper() {
         return new ObjectMapper();
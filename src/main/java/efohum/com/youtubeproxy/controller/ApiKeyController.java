@@ -16,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import efohum.com.youtubeproxy.cache.ApiKeyCache;
 import efohum.com.youtubeproxy.entity.ApiKey;
 import efohum.com.youtubeproxy.repository.ApiKeyRepository;
 import lombok.RequiredArgsConstructor;
@@ -26,6 +27,7 @@ import lombok.RequiredArgsConstructor;
 public class ApiKeyController {
     
     private final ApiKeyRepository apiKeyRepository;
+    private final ApiKeyCache apiKeyCache;
     
     @PostMapping("/generate")
     public ResponseEntity<Map<String, Object>> generateApiKey(
@@ -74,6 +76,7 @@ public class ApiKeyController {
         ApiKey apiKey = apiKeyOpt.get();
         apiKey.setIsActive(false);
         apiKeyRepository.save(apiKey);
+        apiKeyCache.invalidate(apiKey.getKeyValue());
         
         Map<String, Object> response = new HashMap<>();
         response.put("message", "API-KEY disattivata con successo");
@@ -93,6 +96,7 @@ public class ApiKeyController {
         ApiKey apiKey = apiKeyOpt.get();
         apiKey.setIsActive(true);
         apiKeyRepository.save(apiKey);
+        apiKeyCache.invalidate(apiKey.getKeyValue());
         
         Map<String, Object> response = new HashMap<>();
         response.put("message", "API-KEY attivata con successo");
@@ -108,6 +112,7 @@ public class ApiKeyController {
         }
         
         apiKeyRepository.deleteById(id);
+        apiKeyCache.invalidate(id);
         
         Map<String, Object> response = new HashMap<>();
         response.put("message", "API-KEY eliminata con successo");
@@ -0,0 +1,124 @@
+package efohum.com.youtubeproxy.controller;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import efohum.com.youtubeproxy.cache.CachedPayload;
+
+/**
+ * Risposte degli endpoint /youtube/v3 comuni ai controller bloccante e reattivo.
+ *
+ * Quando la risposta è quella della cache L1 si usano i suoi metadati:
+ * - ETag debole del payload e 304 Not Modified se corrisponde a If-None-Match
+ * - Cache-Control: max-age pari alla vita residua di expiresAt (no-cache se servita stale),
+ *   così browser e CDN assorbono le richieste ripetute
+ * - Se il client accetta gzip, il corpo è la forma gzip già calcolata al riempimento della cache
+ *   (Content-Encoding: gzip), senza ricodificare né comprimere a ogni richiesta
+ * Le altre risposte (ricostruite, multi-ID) restano JSON in chiaro senza validatori.
+ */
+final class CachedResponses {
+
+    // La API-KEY interna può arrivare come header: una CDN non deve servire a una key la risposta di un'altra
+    private static final String VARY = HttpHeaders.ACCEPT_ENCODING + ", X-API-Key";
+
+    private CachedResponses() {
+    }
+
+    static ResponseEntity<?> ok(String response, String acceptEncoding, String ifNoneMatch,
+            Optional<CachedPayload> cached) {
+        // equals confronta prima i riferimenti: la risposta servita dalla cache è la stessa istanza
+        Optional<CachedPayload> payload = cached
+                .filter(candidate -> response != null && response.equals(candidate.getJson()));
+        if (payload.isEmpty()) {
+            return ResponseEntity.ok()
+                    .header("X-Cache-Source", "youtube-proxy")
+                    .header(HttpHeaders.VARY, VARY)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(response);
+        }
+        
+        CachedPayload hit = payload.get();
+        long maxAge = hit.secondsToExpiry();
+        CacheControl cacheControl = maxAge > 0 ? CacheControl.maxAge(Duration.ofSeconds(maxAge)) : CacheControl.noCache();
+        if (matches(ifNoneMatch, hit.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .header("X-Cache-Source", "youtube-proxy")
+                    .header(HttpHeaders.VARY, VARY)
+                    .eTag(hit.etag())
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .header("X-Cache-Source", "youtube-proxy")
+                .header(HttpHeaders.VARY, VARY)
+                .eTag(hit.etag())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (acceptsGzip(acceptEncoding)) {
+            byte[] gzip = hit.gzip();
+            return builder
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .contentLength(gzip.length)
+                    .body(gzip);
+        }
+        return builder.body(response);
+    }
+
+    /**
+     * If-None-Match contiene l'ETag (confronto debole: W/ ignorato) o è *
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || stripWeak(value).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Accept-Encoding contiene gzip (o *) con qualità diversa da 0
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0.0;
+                    }
+                }
+            }
+            if (quality > 0.0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,108 @@
+package efohum.com.youtubeproxy.controller;
+
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import efohum.com.youtubeproxy.service.YouTubeProxyService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Variante non bloccante di YouTubeProxyController (api.youtube.reactive=true)
+ * Base path: /youtube/v3
+ * 
+ * Gli endpoint restituiscono Mono: Spring MVC rilascia il thread Tomcat (async servlet)
+ * mentre la risposta arriva da Redis o da YouTube, quindi i MISS concorrenti non occupano
+ * un thread ciascuno per tutta la durata della chiamata upstream.
+ */
+@RestController
+@RequestMapping("/youtube/v3")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*", allowedHeaders = "*", methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.OPTIONS})
+@ConditionalOnProperty(name = "api.youtube.reactive", havingValue = "true")
+public class ReactiveYouTubeProxyController {
+    
+    private final YouTubeProxyService youTubeProxyService;
+    
+    /**
+     * Replacement diretto per: GET https://www.googleapis.com/youtube/v3/search
+     */
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<?>> search(@RequestParam Map<String, String> params,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        log.info("YouTube API proxy (reactive) - search request: {}", params);
+        
+        // Rimuovi il parametro 'key' se presente (viene usato quello configurato nell'app)
+        params.remove("key");
+        
+        return Mono.defer(() -> youTubeProxyService.searchVideosReactive(params))
+                .<ResponseEntity<?>>map(response -> CachedResponses.ok(response, acceptEncoding, ifNoneMatch,
+                        youTubeProxyService.peekCachedSearch(params)))
+                .onErrorResume(e -> {
+                    log.error("Errore nella chiamata search API: ", e);
+                    return Mono.just(error(e));
+                });
+    }
+    
+    /**
+     * Replacement diretto per: GET https://www.googleapis.com/youtube/v3/videos
+     */
+    @GetMapping(value = "/videos", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<?>> videos(@RequestParam Map<String, String> params,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        log.info("YouTube API proxy (reactive) - videos request: {}", params);
+        
+        String videoId = params.get("id");
+        
+        // Rimuovi 'id' e 'key' dalla mappa per passare solo gli altri parametri
+        params.remove("id");
+        params.remove("key");
+        
+        return Mono.defer(() -> youTubeProxyService.getVideoDetailsReactive(videoId, params))
+                .<ResponseEntity<?>>map(response -> CachedResponses.ok(response, acceptEncoding, ifNoneMatch,
+                        youTubeProxyService.peekCachedVideo(videoId)))
+                .onErrorResume(e -> {
+                    log.error("Errore nella chiamata videos API: ", e);
+                    return Mono.just(error(e));
+                });
+    }
+    
+    /**
+     * Health check endpoint
+     */
+    @GetMapping("/health")
+    public ResponseEntity<String> health() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"status\": \"UP\", \"service\": \"YouTube Proxy API\", \"mode\": \"reactive\"}");
+    }
+    
+    private ResponseEntity<String> error(Throwable e) {
+        // Determina il codice di errore appropriato
+        int statusCode = 500;
+        if (e.getMessage() != null) {
+            if (e.getMessage().contains("401")) statusCode = 401;
+            else if (e.getMessage().contains("403")) statusCode = 403;
+            else if (e.getMessage().contains("404")) statusCode = 404;
+        }
+        
+        return ResponseEntity.status(statusCode)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"error\": {\"code\": " + statusCode + ", \"message\": \"" + e.getMessage() + "\"}}");
+    }
+}
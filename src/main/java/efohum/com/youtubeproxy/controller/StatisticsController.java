@@ -1,9 +1,12 @@
 package efohum.com.youtubeproxy.controller;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,10 +14,25 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.cache.ApiKeyCache;
+import efohum.com.youtubeproxy.cache.BackgroundRefresher;
+import efohum.com.youtubeproxy.cache.LocalResponseCache;
+import efohum.com.youtubeproxy.cache.RedisResponseCache;
+import efohum.com.youtubeproxy.config.UpstreamPoolMetrics;
+import efohum.com.youtubeproxy.persistence.PayloadCodec;
+import efohum.com.youtubeproxy.persistence.PayloadMigration;
+import efohum.com.youtubeproxy.persistence.WriteBehindQueue;
 import efohum.com.youtubeproxy.repository.CachedSearchResultRepository;
 import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.TopViewedVideo;
+import efohum.com.youtubeproxy.repository.VideoStatisticsRow;
+import efohum.com.youtubeproxy.search.VideoSearchIndex;
+import efohum.com.youtubeproxy.service.UpstreamQuotaScheduler;
+import efohum.com.youtubeproxy.service.YouTubeProxyService;
+import efohum.com.youtubeproxy.statistics.VideoStatisticsExporter;
+import efohum.com.youtubeproxy.statistics.VideoStatisticsSummary;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -29,16 +47,34 @@ public class StatisticsController {
     
     private final CachedVideoRepository videoRepository;
     private final CachedSearchResultRepository searchResultRepository;
+    private final LocalResponseCache localCache;
+    private final RedisResponseCache sharedCache;
+    private final BackgroundRefresher backgroundRefresher;
+    private final YouTubeProxyService youTubeProxyService;
+    private final UpstreamPoolMetrics upstreamPoolMetrics;
+    private final UpstreamQuotaScheduler quotaScheduler;
+    private final WriteBehindQueue writeBehindQueue;
+    private final VideoSearchIndex videoSearchIndex;
+    private final VideoStatisticsSummary videoStatisticsSummary;
+    private final VideoStatisticsExporter videoStatisticsExporter;
+    private final PayloadCodec payloadCodec;
+    private final PayloadMigration payloadMigration;
+    private final ApiKeyCache apiKeyCache;
+    
+    private static final String NEXT_AFTER_ID_HEADER = "X-Next-After-Id";
+    
+    // Righe massime della classifica top-viewed
+    private static final int MAX_TOP_VIEWED = 500;
     
     /**
      * GET /api/statistics/video/{videoId}
-     * Ottiene le statistiche di un video specifico dal database
+     * Ottiene le statistiche di un video specifico dal database (solo metadati, senza responseJson)
      */
     @GetMapping("/video/{videoId}")
     public ResponseEntity<Map<String, Object>> getVideoStatistics(@PathVariable String videoId) {
         log.info("Richiesta statistiche per video: {}", videoId);
         
-        return videoRepository.findByVideoId(videoId)
+        return videoRepository.findMetadataByVideoId(videoId)
                 .map(video -> {
                     Map<String, Object> stats = new HashMap<>();
                     stats.put("videoId", video.getVideoId());
@@ -67,54 +103,75 @@ public class StatisticsController {
     
     /**
      * GET /api/statistics/videos
-     * Ottiene le statistiche di tutti i video cachati
+     * Ottiene le statistiche di tutti i video cachati, scritte in streaming a blocchi (array JSON o,
+     * con format=ndjson, un oggetto per riga). Con limit restituisce solo una pagina dopo afterId
+     * e l'id da cui riprendere nell'header X-Next-After-Id.
+     * limit va da 1 a 1000: fuori intervallo la risposta è 400 invece di una pagina ridimensionata
      */
     @GetMapping("/videos")
-    public ResponseEntity<List<Map<String, Object>>> getAllVideosStatistics() {
-        log.info("Richiesta statistiche per tutti i video");
+    public ResponseEntity<StreamingResponseBody> getAllVideosStatistics(
+            @RequestParam(defaultValue = "0") long afterId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "json") String format) {
+        log.info("Richiesta statistiche dei video (afterId={}, limit={}, format={})", afterId, limit, format);
         
-        List<CachedVideo> videos = videoRepository.findAll();
-        List<Map<String, Object>> result = videos.stream()
-                .map(video -> {
-                    Map<String, Object> stats = new HashMap<>();
-                    stats.put("videoId", video.getVideoId());
-                    stats.put("title", video.getTitle());
-                    stats.put("channelTitle", video.getChannelTitle());
-                    stats.put("viewCount", video.getViewCount());
-                    stats.put("likeCount", video.getLikeCount());
-                    stats.put("commentCount", video.getCommentCount());
-                    stats.put("thumbnailUrl", video.getThumbnailUrl());
-                    stats.put("duration", video.getDuration());
-                    stats.put("cachedAt", video.getCreatedAt());
-                    stats.put("expired", video.isExpired());
-                    return stats;
-                })
-                .toList();
+        if (limit != null) {
+            if (limit < 1 || limit > VideoStatisticsExporter.MAX_PAGE_SIZE) {
+                log.warn("limit non valido per le statistiche dei video: {} (ammesso da 1 a {})",
+                        limit, VideoStatisticsExporter.MAX_PAGE_SIZE);
+                return ResponseEntity.badRequest().build();
+            }
+            List<VideoStatisticsRow> rows = videoStatisticsExporter.page(afterId, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+            if (rows.size() == limit) {
+                response.header(NEXT_AFTER_ID_HEADER, rows.get(rows.size() - 1).getId().toString());
+            }
+            return response.body(out -> videoStatisticsExporter.writePage(rows, out));
+        }
         
-        return ResponseEntity.ok(result);
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(out -> videoStatisticsExporter.writeAll(afterId, ndjson, out));
     }
     
     /**
      * GET /api/statistics/top-viewed
-     * Ottiene i video più visti dalla cache
+     * Ottiene i video più visti dalla cache, anche per canale (channelId) o categoria (category).
+     * La classifica viene letta dal DB già ordinata sull'indice di view_count, fermandosi a limit righe.
+     * limit va da 1 a 500: fuori intervallo la risposta è 400 invece di una classifica troncata
      */
     @GetMapping("/top-viewed")
     public ResponseEntity<List<Map<String, Object>>> getTopViewedVideos(
-            @RequestParam(defaultValue = "10") int limit) {
-        log.info("Richiesta top {} video più visti", limit);
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) String channelId,
+            @RequestParam(required = false) String category) {
+        log.info("Richiesta top {} video più visti (channelId={}, category={})", limit, channelId, category);
         
-        List<CachedVideo> videos = videoRepository.findAll().stream()
-                .filter(video -> !video.isExpired() && video.getViewCount() != null)
-                .sorted((v1, v2) -> Long.compare(v2.getViewCount(), v1.getViewCount()))
-                .limit(limit)
-                .toList();
+        if (limit < 1 || limit > MAX_TOP_VIEWED) {
+            log.warn("limit non valido per top-viewed: {} (ammesso da 1 a {})", limit, MAX_TOP_VIEWED);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        PageRequest page = PageRequest.of(0, limit);
+        LocalDateTime now = LocalDateTime.now();
+        List<TopViewedVideo> videos;
+        if (channelId != null) {
+            videos = videoRepository.findTopViewedByChannel(channelId, now, page);
+        } else if (category != null) {
+            videos = videoRepository.findTopViewedByCategory(category, now, page);
+        } else {
+            videos = videoRepository.findTopViewed(now, page);
+        }
         
         List<Map<String, Object>> result = videos.stream()
                 .map(video -> {
                     Map<String, Object> stats = new HashMap<>();
                     stats.put("videoId", video.getVideoId());
                     stats.put("title", video.getTitle());
+                    stats.put("channelId", video.getChannelId());
                     stats.put("channelTitle", video.getChannelTitle());
+                    stats.put("category", video.getCategory());
                     stats.put("viewCount", video.getViewCount());
                     stats.put("likeCount", video.getLikeCount());
                     stats.put("thumbnailUrl", video.getThumbnailUrl());
@@ -127,39 +184,72 @@ public class StatisticsController {
     
     /**
      * GET /api/statistics/summary
-     * Ottiene un riepilogo generale delle statistiche
+     * Ottiene un riepilogo generale delle statistiche (aggregati mantenuti in memoria, nessuna lettura del DB)
      */
     @GetMapping("/summary")
     public ResponseEntity<Map<String, Object>> getSummary() {
         log.info("Richiesta riepilogo statistiche");
-        
-        List<CachedVideo> videos = videoRepository.findAll();
-        long validVideos = videos.stream().filter(v -> !v.isExpired()).count();
-        
-        Map<String, Object> summary = new HashMap<>();
-        summary.put("totalCachedVideos", videos.size());
-        summary.put("validCachedVideos", validVideos);
-        summary.put("expiredCachedVideos", videos.size() - validVideos);
-        
-        long totalViews = videos.stream()
-                .filter(v -> !v.isExpired() && v.getViewCount() != null)
-                .mapToLong(CachedVideo::getViewCount)
-                .sum();
-        summary.put("totalViews", totalViews);
-        
-        long totalLikes = videos.stream()
-                .filter(v -> !v.isExpired() && v.getLikeCount() != null)
-                .mapToLong(CachedVideo::getLikeCount)
-                .sum();
-        summary.put("totalLikes", totalLikes);
-        
-        long totalComments = videos.stream()
-                .filter(v -> !v.isExpired() && v.getCommentCount() != null)
-                .mapToLong(CachedVideo::getCommentCount)
-                .sum();
-        summary.put("totalComments", totalComments);
-        
-        return ResponseEntity.ok(summary);
+        return ResponseEntity.ok(videoStatisticsSummary.getSummary());
+    }
+    
+    /**
+     * GET /api/statistics/cache
+     * Ottiene le statistiche delle cache L1 in memoria e L2 Redis (hit rate, eviction, peso)
+     * e i contatori delle richieste concorrenti accorpate e dei refresh in background
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("local", localCache.getStatistics());
+        result.put("shared", sharedCache.getStatistics());
+        result.put("coalescing", youTubeProxyService.getCoalescingStatistics());
+        result.put("refresh", backgroundRefresher.getStatistics());
+        result.put("searchIndex", videoSearchIndex.getStatistics());
+        result.put("summary", videoStatisticsSummary.getStatistics());
+        result.put("apiKeys", apiKeyCache.getStatistics());
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * GET /api/statistics/upstream
+     * Stato del pool di connessioni verso YouTube: connessioni attive, inattive e richieste in attesa
+     */
+    @GetMapping("/upstream")
+    public ResponseEntity<Map<String, Object>> getUpstreamStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("pools", upstreamPoolMetrics.getStatistics());
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * GET /api/statistics/quota
+     * Quota YouTube spesa oggi (search = 100 unità, videos = 1 unità), residua e chiamate rifiutate
+     */
+    @GetMapping("/quota")
+    public ResponseEntity<Map<String, Object>> getQuotaStatistics() {
+        return ResponseEntity.ok(quotaScheduler.getStatistics());
+    }
+    
+    /**
+     * GET /api/statistics/writes
+     * Scrittura differita: profondità della coda, scritture fuse, blocchi scritti ed errori
+     */
+    @GetMapping("/writes")
+    public ResponseEntity<Map<String, Object>> getWriteStatistics() {
+        return ResponseEntity.ok(writeBehindQueue.getStatistics());
+    }
+    
+    /**
+     * GET /api/statistics/storage
+     * Compressione a riposo dei responseJson: rapporto ottenuto sulle scritture dall'avvio
+     * e avanzamento della migrazione delle righe ancora in chiaro
+     */
+    @GetMapping("/storage")
+    public ResponseEntity<Map<String, Object>> getStorageStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("codec", payloadCodec.getStatistics());
+        result.put("migration", payloadMigration.getStatistics());
+        return ResponseEntity.ok(result);
     }
     
     /**
@@ -174,8 +264,14 @@ public class StatisticsController {
         long searchCount = searchResultRepository.count();
         long videoCount = videoRepository.count();
         
-        searchResultRepository.deleteAll();
-        videoRepository.deleteAll();
+        // DELETE in blocco: deleteAll() caricherebbe ogni riga con il suo responseJson per cancellarle una a una.
+        // Senza entity listener, indice di ricerca e riepilogo vengono riallineati qui
+        searchResultRepository.deleteAllInBatch();
+        videoRepository.deleteAllInBatch();
+        videoSearchIndex.clear();
+        videoStatisticsSummary.reconcile();
+        localCache.invalidateAll();
+        sharedCache.invalidateAll();
         
         Map<String, Object> result = new HashMap<>();
         result.put("message", "Cache pulita con successo");
@@ -196,7 +292,9 @@ public class StatisticsController {
         log.warn("Richiesta pulizia cache search");
         
         long count = searchResultRepository.count();
-        searchResultRepository.deleteAll();
+        searchResultRepository.deleteAllInBatch();
+        localCache.invalidateSearches();
+        sharedCache.invalidateSearches();
         
         Map<String, Object> result = new HashMap<>();
         result.put("message", "Cache search pulita con successo");
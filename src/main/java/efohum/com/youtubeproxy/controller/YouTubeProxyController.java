@@ -2,12 +2,15 @@ package efohum.com.youtubeproxy.controller;
 
 import java.util.Map;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -22,8 +25,15 @@ import lombok.extern.slf4j.Slf4j;
  * Sostituisce:
  * - https://www.googleapis.com/youtube/v3/search
  * - https://www.googleapis.com/youtube/v3/videos
+ * 
+ * Con api.youtube.reactive=true viene sostituito da ReactiveYouTubeProxyController
  */
 @RestController
+@ConditionalOnProperty(
+    name = "api.youtube.reactive",
+    havingValue = "false",
+    matchIfMissing = true  // Modalità bloccante di default
+)
 @RequestMapping("/youtube/v3")
 @RequiredArgsConstructor
 @Slf4j
@@ -41,7 +51,9 @@ public class YouTubeProxyController {
      * Esempio: /youtube/v3/search?part=snippet&q=spring+boot&maxResults=10&type=video
      */
     @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> search(@RequestParam Map<String, String> params) {
+    public ResponseEntity<?> search(@RequestParam Map<String, String> params,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("YouTube API proxy - search request: {}", params);
         
         // Rimuovi il parametro 'key' se presente (viene usato quello configurato nell'app)
@@ -49,10 +61,7 @@ public class YouTubeProxyController {
         
         try {
             String response = youTubeProxyService.searchVideos(params);
-            return ResponseEntity.ok()
-                    .header("X-Cache-Source", "youtube-proxy")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(response);
+            return CachedResponses.ok(response, acceptEncoding, ifNoneMatch, youTubeProxyService.peekCachedSearch(params));
         } catch (Exception e) {
             log.error("Errore nella chiamata search API: ", e);
             
@@ -80,7 +89,9 @@ public class YouTubeProxyController {
      * Esempio: /youtube/v3/videos?part=snippet,statistics&id=dQw4w9WgXcQ
      */
     @GetMapping(value = "/videos", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> videos(@RequestParam Map<String, String> params) {
+    public ResponseEntity<?> videos(@RequestParam Map<String, String> params,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("YouTube API proxy - videos request: {}", params);
         
         String videoId = params.get("id");
@@ -91,10 +102,7 @@ public class YouTubeProxyController {
         
         try {
             String response = youTubeProxyService.getVideoDetails(videoId, params);
-            return ResponseEntity.ok()
-                    .header("X-Cache-Source", "youtube-proxy")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(response);
+            return CachedResponses.ok(response, acceptEncoding, ifNoneMatch, youTubeProxyService.peekCachedVideo(videoId));
         } catch (Exception e) {
             log.error("Errore nella chiamata videos API: ", e);
             
@@ -2,12 +2,17 @@ package efohum.com.youtubeproxy.entity;
 
 import java.time.LocalDateTime;
 
+import org.hibernate.annotations.DynamicUpdate;
+
+import efohum.com.youtubeproxy.persistence.CompressedPayloadConverter;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -15,6 +20,8 @@ import lombok.NoArgsConstructor;
 
 @Entity
 @Table(name = "cached_search_results")
+// UPDATE dei soli campi cambiati: una rivalidazione (304) scrive solo expires_at
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -28,8 +35,11 @@ public class CachedSearchResult {
     private String queryKey; // Chiave basata sui parametri della query
     
     @Column(columnDefinition = "TEXT")
+    @Convert(converter = CompressedPayloadConverter.class) // compresso a riposo, in chiaro nell'entità
     private String responseJson; // Risposta dell'API in formato JSON
     
+    private String upstreamEtag; // etag della risposta YouTube, inviato come If-None-Match al refresh
+    
     @Column(nullable = false)
     private LocalDateTime createdAt;
     
@@ -46,14 +56,30 @@ public class CachedSearchResult {
     private Integer totalResults;
     private String regionCode;
     
+    // Pubblico: con la scrittura differita i timestamp servono prima del persist per popolare le cache
     @PrePersist
-    protected void onCreate() {
+    public void onCreate() {
         createdAt = LocalDateTime.now();
         if (expiresAt == null) {
             expiresAt = createdAt.plusHours(24); // Cache per 24 ore
         }
     }
     
+    @PreUpdate
+    protected void onUpdate() {
+        // Un refresh salvato tramite merge arriva senza timestamp: riparte una nuova finestra di 24 ore
+        if (createdAt == null) {
+            onCreate();
+        }
+    }
+    
+    /**
+     * Risposta confermata da YouTube (304 Not Modified): nuova finestra di 24 ore, responseJson invariato
+     */
+    public void revalidate() {
+        expiresAt = LocalDateTime.now().plusHours(24);
+    }
+    
     public boolean isExpired() {
         return LocalDateTime.now().isAfter(expiresAt);
     }
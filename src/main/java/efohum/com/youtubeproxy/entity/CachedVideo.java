@@ -2,19 +2,36 @@ package efohum.com.youtubeproxy.entity;
 
 import java.time.LocalDateTime;
 
+import org.hibernate.annotations.DynamicUpdate;
+
 import jakarta.persistence.Column;
+import efohum.com.youtubeproxy.persistence.CompressedPayloadConverter;
+import efohum.com.youtubeproxy.search.VideoSearchIndexListener;
+import efohum.com.youtubeproxy.statistics.VideoStatisticsListener;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "cached_videos")
+// Indici per le classifiche per visualizzazioni (top-viewed): globale, per canale e per categoria
+@Table(name = "cached_videos", indexes = {
+    @Index(name = "idx_video_view_count", columnList = "view_count DESC"),
+    @Index(name = "idx_video_channel_view_count", columnList = "channel_id, view_count DESC"),
+    @Index(name = "idx_video_category_view_count", columnList = "category, view_count DESC")
+})
+@EntityListeners({ VideoSearchIndexListener.class, VideoStatisticsListener.class })
+// UPDATE dei soli campi cambiati: aggiornare lo snippet non riscrive responseJson
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -28,8 +45,11 @@ public class CachedVideo {
     private String videoId; // ID del video YouTube
     
     @Column(columnDefinition = "TEXT")
+    @Convert(converter = CompressedPayloadConverter.class) // compresso a riposo, in chiaro nell'entità
     private String responseJson; // Risposta dell'API in formato JSON
     
+    private String upstreamEtag; // etag della risposta YouTube, inviato come If-None-Match al refresh
+    
     // Metadati del video
     private String title;
     private String description;
@@ -54,14 +74,30 @@ public class CachedVideo {
     @Column(nullable = false)
     private LocalDateTime expiresAt;
     
+    // Pubblico: con la scrittura differita i timestamp servono prima del persist per popolare le cache
     @PrePersist
-    protected void onCreate() {
+    public void onCreate() {
         createdAt = LocalDateTime.now();
         if (expiresAt == null) {
             expiresAt = createdAt.plusHours(24); // Cache per 24 ore
         }
     }
     
+    @PreUpdate
+    protected void onUpdate() {
+        // Un refresh salvato tramite merge arriva senza timestamp: riparte una nuova finestra di 24 ore
+        if (createdAt == null) {
+            onCreate();
+        }
+    }
+    
+    /**
+     * Risposta confermata da YouTube (304 Not Modified): nuova finestra di 24 ore, responseJson invariato
+     */
+    public void revalidate() {
+        expiresAt = LocalDateTime.now().plusHours(24);
+    }
+    
     public boolean isExpired() {
         return LocalDateTime.now().isAfter(expiresAt);
     }
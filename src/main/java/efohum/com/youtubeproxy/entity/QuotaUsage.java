@@ -0,0 +1,39 @@
+package efohum.com.youtubeproxy.entity;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Quota YouTube spesa da una API key in un giorno di quota (ora del Pacifico), condivisa tra riavvii
+ * e repliche che usano lo stesso database
+ */
+@Entity
+@Table(name = "youtube_quota_usage", uniqueConstraints = @UniqueConstraint(columnNames = { "usageDay", "keyId" }))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuotaUsage {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private LocalDate usageDay;
+    
+    @Column(nullable = false, length = 64)
+    private String keyId; // SHA-256 della API key: la key in chiaro non viene salvata
+    
+    @Column(nullable = false)
+    private Long spent = 0L;
+}
@@ -3,15 +3,13 @@ package efohum.com.youtubeproxy.filter;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import efohum.com.youtubeproxy.entity.ApiKey;
-import efohum.com.youtubeproxy.repository.ApiKeyRepository;
+import efohum.com.youtubeproxy.cache.ApiKeyCache;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -27,7 +25,7 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ApiKeyFilter implements Filter {
     
-    private final ApiKeyRepository apiKeyRepository;
+    private final ApiKeyCache apiKeyCache;
     private final ObjectMapper objectMapper;
     
     @Value("${api.security.enabled:false}")
@@ -65,18 +63,12 @@ public class ApiKeyFilter implements Filter {
                 return;
             }
             
-            Optional<ApiKey> apiKeyEntity = apiKeyRepository.findByKeyValueAndIsActiveTrue(apiKey);
-            
-            if (apiKeyEntity.isEmpty() || !apiKeyEntity.get().isValid()) {
+            // Validazione dalla cache in memoria; l'ultimo utilizzo viene scritto nel DB a blocchi
+            if (!apiKeyCache.validate(apiKey)) {
                 sendUnauthorizedResponse(httpResponse, "API-KEY non valida o scaduta");
                 return;
             }
             
-            // Aggiorna ultimo utilizzo
-            ApiKey key = apiKeyEntity.get();
-            key.updateLastUsed();
-            apiKeyRepository.save(key);
-            
             log.debug("API-KEY valida: {} per path: {}", apiKey.substring(0, 10) + "...", path);
         }
         
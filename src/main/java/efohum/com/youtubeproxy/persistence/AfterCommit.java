@@ -0,0 +1,28 @@
+package efohum.com.youtubeproxy.persistence;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Applica agli stati in memoria (indice di ricerca, riepilogo statistiche) le modifiche di una scrittura
+ * solo dopo il commit della transazione corrente, subito se non ce n'è una attiva:
+ * un blocco di scrittura annullato non lascia in memoria righe che nel DB non esistono.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+}
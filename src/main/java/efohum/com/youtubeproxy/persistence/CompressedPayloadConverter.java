@@ -0,0 +1,26 @@
+package efohum.com.youtubeproxy.persistence;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Applica PayloadCodec ai responseJson in modo trasparente: le entità vedono sempre il JSON in chiaro.
+ * Istanziato da Hibernate tramite il bean container di Spring, che inietta il codec
+ */
+@Converter
+@RequiredArgsConstructor
+public class CompressedPayloadConverter implements AttributeConverter<String, String> {
+
+    private final PayloadCodec codec;
+
+    @Override
+    public String convertToDatabaseColumn(String json) {
+        return codec.encode(json);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String value) {
+        return codec.decode(value);
+    }
+}
@@ -0,0 +1,161 @@
+package efohum.com.youtubeproxy.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Codifica a riposo dei responseJson salvati nel DB (cached_videos e cached_search_results).
+ *
+ * - Formato "z1:" + base64 del deflate con dizionario predefinito v1 (struttura delle risposte YouTube:
+ *   kind, etag, thumbnail, pageInfo...), nella stessa colonna TEXT: nessuna modifica di schema
+ * - Le righe senza prefisso sono JSON in chiaro (righe precedenti o payload che non si riducono)
+ *   e vengono restituite così come sono: la lettura funziona anche con la compressione disattivata
+ * - Il prefisso identifica formato e dizionario: un nuovo dizionario userà un nuovo prefisso
+ *   e il dizionario v1 non va mai modificato, altrimenti le righe già scritte non si leggono più
+ */
+@Component
+public class PayloadCodec {
+
+    static final String DEFLATE_V1 = "z1:";
+    private static final String DICTIONARY_V1 = "payload/youtube-dictionary-v1.txt";
+
+    private final boolean enabled;
+    private final byte[] dictionary;
+
+    private final AtomicLong encoded = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong decoded = new AtomicLong();
+
+    public PayloadCodec(@Value("${persistence.payload.compression.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.dictionary = loadDictionary();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static boolean isEncoded(String value) {
+        return value != null && value.startsWith(DEFLATE_V1);
+    }
+
+    /**
+     * Valore da scrivere nella colonna; il JSON resta in chiaro se la compressione è disattivata
+     * o se il risultato compresso non è più corto
+     */
+    public String encode(String json) {
+        if (json == null || isEncoded(json)) {
+            return json;
+        }
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        String value = json;
+        if (enabled) {
+            String compressed = DEFLATE_V1 + Base64.getEncoder().encodeToString(deflate(raw));
+            if (compressed.length() < raw.length) {
+                value = compressed;
+                encoded.incrementAndGet();
+            }
+        }
+        stored.incrementAndGet();
+        rawBytes.addAndGet(raw.length);
+        storedBytes.addAndGet(value.length());
+        return value;
+    }
+
+    public String decode(String value) {
+        if (!isEncoded(value)) {
+            return value;
+        }
+        decoded.incrementAndGet();
+        byte[] compressed = Base64.getDecoder().decode(value.substring(DEFLATE_V1.length()));
+        return new String(inflate(compressed), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Payload scritti dall'avvio: quanti compressi e rapporto tra byte in chiaro e byte salvati
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", enabled);
+        statistics.put("codec", "deflate+dictionary-v1");
+        statistics.put("written", stored.get());
+        statistics.put("compressed", encoded.get());
+        statistics.put("decoded", decoded.get());
+        statistics.put("rawBytes", rawBytes.get());
+        statistics.put("storedBytes", storedBytes.get());
+        statistics.put("compressionRatio", ratio(rawBytes.get(), storedBytes.get()));
+        return statistics;
+    }
+
+    static double ratio(long rawBytes, long storedBytes) {
+        return storedBytes == 0 ? 1.0 : Math.round(rawBytes * 100.0 / storedBytes) / 100.0;
+    }
+
+    private byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 6);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("Payload compresso troncato");
+                    }
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Payload compresso non valido: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] loadDictionary() {
+        try (InputStream in = PayloadCodec.class.getClassLoader().getResourceAsStream(DICTIONARY_V1)) {
+            if (in == null) {
+                throw new IllegalStateException("Dizionario di compressione non trovato: " + DICTIONARY_V1);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
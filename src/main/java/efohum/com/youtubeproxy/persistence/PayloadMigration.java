@@ -0,0 +1,139 @@
+package efohum.com.youtubeproxy.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Migrazione delle righe salvate con il responseJson in chiaro verso il formato compresso di PayloadCodec.
+ *
+ * Gira in background dopo l'avvio, a blocchi con keyset sull'id, senza passare dalle entità: legge
+ * il valore grezzo della colonna e lo riscrive codificato con un UPDATE in batch. Le letture restano
+ * corrette durante la migrazione perché il codec accetta entrambi i formati. Una riga riscritta nel
+ * frattempo da JPA è già compressa (o ha cambiato lunghezza) e viene lasciata com'è.
+ */
+@Component
+@Slf4j
+public class PayloadMigration {
+
+    private static final List<String> TABLES = List.of("cached_videos", "cached_search_results");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PayloadCodec codec;
+    private final boolean enabled;
+    private final int batchSize;
+
+    private final Map<String, TableResult> results = new LinkedHashMap<>();
+    private volatile boolean running;
+
+    public PayloadMigration(
+            JdbcTemplate jdbcTemplate,
+            PayloadCodec codec,
+            @Value("${persistence.payload.migration.enabled:true}") boolean enabled,
+            @Value("${persistence.payload.migration.batch-size:200}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.codec = codec;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || !codec.isEnabled()) {
+            return;
+        }
+        Thread thread = new Thread(this::migrate, "payload-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Comprime tutte le righe ancora in chiaro delle due tabelle
+     */
+    public void migrate() {
+        running = true;
+        try {
+            for (String table : TABLES) {
+                TableResult result = migrate(table);
+                synchronized (results) {
+                    results.put(table, result);
+                }
+                if (result.rows > 0) {
+                    log.info("Payload compressi in {}: {} righe, {} -> {} byte (rapporto {})", table, result.rows,
+                            result.rawBytes, result.storedBytes, PayloadCodec.ratio(result.rawBytes, result.storedBytes));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Errore nella migrazione dei payload compressi: {}", e.getMessage(), e);
+        } finally {
+            running = false;
+        }
+    }
+
+    private TableResult migrate(String table) {
+        String select = "SELECT id, response_json FROM " + table + " WHERE id > ? AND response_json IS NOT NULL"
+                + " AND response_json NOT LIKE '" + PayloadCodec.DEFLATE_V1 + "%' ORDER BY id LIMIT ?";
+        String update = "UPDATE " + table + " SET response_json = ? WHERE id = ?"
+                + " AND response_json NOT LIKE '" + PayloadCodec.DEFLATE_V1 + "%' AND LENGTH(response_json) = ?";
+        TableResult result = new TableResult();
+        long lastId = 0L;
+        List<Map<String, Object>> batch;
+        do {
+            batch = jdbcTemplate.queryForList(select, lastId, batchSize);
+            List<Object[]> updates = new ArrayList<>();
+            for (Map<String, Object> row : batch) {
+                long id = ((Number) row.get("ID")).longValue();
+                String json = (String) row.get("RESPONSE_JSON");
+                String value = codec.encode(json);
+                if (PayloadCodec.isEncoded(value)) {
+                    updates.add(new Object[] { value, id, json.length() });
+                    result.rows++;
+                    result.rawBytes += json.getBytes(StandardCharsets.UTF_8).length;
+                    result.storedBytes += value.length();
+                } else {
+                    result.skipped++;
+                }
+                lastId = id;
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(update, updates);
+            }
+        } while (batch.size() == batchSize);
+        return result;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("running", running);
+        synchronized (results) {
+            results.forEach((table, result) -> {
+                Map<String, Object> tableStatistics = new HashMap<>();
+                tableStatistics.put("rows", result.rows);
+                tableStatistics.put("skipped", result.skipped);
+                tableStatistics.put("rawBytes", result.rawBytes);
+                tableStatistics.put("storedBytes", result.storedBytes);
+                tableStatistics.put("compressionRatio", PayloadCodec.ratio(result.rawBytes, result.storedBytes));
+                statistics.put(table, tableStatistics);
+            });
+        }
+        return statistics;
+    }
+
+    private static final class TableResult {
+        private long rows;
+        private long skipped;
+        private long rawBytes;
+        private long storedBytes;
+    }
+}
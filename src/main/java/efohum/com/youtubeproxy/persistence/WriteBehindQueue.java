@@ -0,0 +1,235 @@
+package efohum.com.youtubeproxy.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scrittura differita (write-behind) dei riempimenti di cache: la risposta torna subito al client
+ * e le upsert vengono eseguite da un unico thread writer, a blocchi, in una transazione per blocco.
+ *
+ * - Chiave per scrittura (es. search:queryKey): una nuova scrittura per una chiave ancora in coda
+ *   sostituisce la precedente, quindi su DB arriva solo l'ultima versione
+ * - Coda limitata: quando è piena il chiamante attende (backpressure) e, oltre offer-timeout-ms,
+ *   esegue la scrittura da sé
+ * - Allo shutdown la coda viene svuotata prima della chiusura del database
+ *
+ * Le scritture devono essere upsert che rileggono la riga per chiave al momento del flush.
+ */
+@Component
+@Slf4j
+public class WriteBehindQueue {
+
+    private final TransactionOperations transactions;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long offerTimeoutMs;
+
+    private final LinkedHashMap<String, Runnable> pending = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @Autowired
+    public WriteBehindQueue(
+            PlatformTransactionManager transactionManager,
+            @Value("${persistence.write-behind.enabled:true}") boolean enabled,
+            @Value("${persistence.write-behind.capacity:10000}") int capacity,
+            @Value("${persistence.write-behind.batch-size:100}") int batchSize,
+            @Value("${persistence.write-behind.offer-timeout-ms:1000}") long offerTimeoutMs) {
+        this(new TransactionTemplate(transactionManager), enabled, capacity, batchSize, offerTimeoutMs);
+    }
+
+    WriteBehindQueue(TransactionOperations transactions, boolean enabled, int capacity, int batchSize, long offerTimeoutMs) {
+        this.transactions = transactions;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.writer = new Thread(this::drainLoop, "write-behind");
+        if (enabled) {
+            writer.setDaemon(true);
+            writer.start();
+            log.info("Scrittura differita attiva: capacity={}, batchSize={}", capacity, batchSize);
+        }
+    }
+
+    /**
+     * Accoda una scrittura; se la scrittura differita è disattivata (o in chiusura) la esegue subito
+     */
+    public void submit(String key, Runnable write) {
+        submitted.incrementAndGet();
+        if (!enabled || !running) {
+            runNow(key, write);
+            return;
+        }
+        lock.lock();
+        try {
+            if (pending.remove(key) != null) {
+                coalesced.incrementAndGet();
+            } else if (pending.size() >= capacity) {
+                blocked.incrementAndGet();
+                long nanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+                while (pending.size() >= capacity && nanos > 0) {
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                if (pending.size() >= capacity) {
+                    callerRuns.incrementAndGet();
+                    log.warn("Coda di scrittura piena ({}), scrittura {} eseguita dal chiamante", capacity, key);
+                    lock.unlock();
+                    try {
+                        runNow(key, write);
+                    } finally {
+                        lock.lock();
+                    }
+                    return;
+                }
+            }
+            pending.put(key, write);
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.put(key, write);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("queueDepth", queueDepth());
+        result.put("capacity", capacity);
+        result.put("submitted", submitted.get());
+        result.put("coalesced", coalesced.get());
+        result.put("blocked", blocked.get());
+        result.put("callerRuns", callerRuns.get());
+        result.put("batches", batches.get());
+        result.put("written", written.get());
+        result.put("failed", failed.get());
+        return result;
+    }
+
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Svuota la coda prima che il database venga chiuso
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Scrittura differita chiusa: {} scritture ancora in coda", queueDepth());
+    }
+
+    private void drainLoop() {
+        while (true) {
+            List<Map.Entry<String, Runnable>> batch = takeBatch();
+            if (batch.isEmpty()) {
+                if (!running) {
+                    return;
+                }
+                continue;
+            }
+            flush(batch);
+        }
+    }
+
+    private List<Map.Entry<String, Runnable>> takeBatch() {
+        lock.lock();
+        try {
+            while (pending.isEmpty() && running) {
+                notEmpty.await();
+            }
+            List<Map.Entry<String, Runnable>> batch = new ArrayList<>();
+            Iterator<Map.Entry<String, Runnable>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                Map.Entry<String, Runnable> entry = iterator.next();
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                iterator.remove();
+            }
+            notFull.signalAll();
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+            return List.of();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Un blocco in una sola transazione; se fallisce, le scritture vengono ripetute una per una
+     * così una riga non valida non fa perdere le altre
+     */
+    private void flush(List<Map.Entry<String, Runnable>> batch) {
+        try {
+            transactions.executeWithoutResult(status -> batch.forEach(entry -> entry.getValue().run()));
+            batches.incrementAndGet();
+            written.addAndGet(batch.size());
+            log.debug("Scrittura differita: {} upsert in una transazione", batch.size());
+        } catch (Exception e) {
+            log.warn("Blocco di {} scritture fallito ({}), riprovo singolarmente", batch.size(), e.getMessage());
+            batch.forEach(entry -> runNow(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private void runNow(String key, Runnable write) {
+        try {
+            transactions.executeWithoutResult(status -> write.run());
+            written.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Scrittura {} fallita: {}", key, e.getMessage(), e);
+        }
+    }
+}
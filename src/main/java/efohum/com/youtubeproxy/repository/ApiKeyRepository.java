@@ -1,8 +1,12 @@
 package efohum.com.youtubeproxy.repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import efohum.com.youtubeproxy.entity.ApiKey;
@@ -13,4 +17,12 @@ public interface ApiKeyRepository extends JpaRepository<ApiKey, Long> {
     Optional<ApiKey> findByKeyValue(String keyValue);
     
     Optional<ApiKey> findByKeyValueAndIsActiveTrue(String keyValue);
+    
+    /**
+     * Ultimo utilizzo scritto a blocchi da ApiKeyCache; non torna indietro se la riga ne ha già uno più recente
+     */
+    @Modifying
+    @Query("UPDATE ApiKey k SET k.lastUsedAt = :lastUsedAt WHERE k.id = :id "
+            + "AND (k.lastUsedAt IS NULL OR k.lastUsedAt < :lastUsedAt)")
+    int updateLastUsedAt(@Param("id") Long id, @Param("lastUsedAt") LocalDateTime lastUsedAt);
 }
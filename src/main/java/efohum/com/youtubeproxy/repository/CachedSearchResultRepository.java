@@ -1,8 +1,12 @@
 package efohum.com.youtubeproxy.repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import efohum.com.youtubeproxy.entity.CachedSearchResult;
@@ -11,4 +15,13 @@ import efohum.com.youtubeproxy.entity.CachedSearchResult;
 public interface CachedSearchResultRepository extends JpaRepository<CachedSearchResult, Long> {
     
     Optional<CachedSearchResult> findByQueryKey(String queryKey);
+    
+    /**
+     * Risposta confermata da YouTube (304): nuova scadenza ed etag, senza leggere né riscrivere responseJson
+     */
+    @Modifying
+    @Query("UPDATE CachedSearchResult r SET r.expiresAt = :expiresAt, r.upstreamEtag = :upstreamEtag "
+            + "WHERE r.queryKey = :queryKey")
+    int revalidate(@Param("queryKey") String queryKey, @Param("expiresAt") LocalDateTime expiresAt,
+            @Param("upstreamEtag") String upstreamEtag);
 }
@@ -1,8 +1,15 @@
 package efohum.com.youtubeproxy.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import efohum.com.youtubeproxy.entity.CachedVideo;
@@ -11,4 +18,75 @@ import efohum.com.youtubeproxy.entity.CachedVideo;
 public interface CachedVideoRepository extends JpaRepository<CachedVideo, Long> {
     
     Optional<CachedVideo> findByVideoId(String videoId);
+    
+    List<CachedVideo> findByVideoIdIn(Collection<String> videoIds);
+    
+    /**
+     * Risposta confermata da YouTube (304): nuova scadenza ed etag, senza leggere né riscrivere responseJson
+     */
+    @Modifying
+    @Query("UPDATE CachedVideo v SET v.expiresAt = :expiresAt, v.upstreamEtag = :upstreamEtag WHERE v.videoId = :videoId")
+    int revalidate(@Param("videoId") String videoId, @Param("expiresAt") LocalDateTime expiresAt,
+            @Param("upstreamEtag") String upstreamEtag);
+    
+    String METADATA_FIELDS = "SELECT v.id AS id, v.videoId AS videoId, v.title AS title, v.description AS description, "
+        + "v.channelId AS channelId, v.channelTitle AS channelTitle, v.thumbnailUrl AS thumbnailUrl, "
+        + "v.viewCount AS viewCount, v.likeCount AS likeCount, v.commentCount AS commentCount, "
+        + "v.favoriteCount AS favoriteCount, v.duration AS duration, v.publishedAt AS publishedAt, "
+        + "v.category AS category, v.createdAt AS createdAt, v.expiresAt AS expiresAt FROM CachedVideo v ";
+    
+    /**
+     * Metadati senza responseJson
+     */
+    @Query(METADATA_FIELDS + "WHERE v.videoId = :videoId")
+    Optional<VideoMetadata> findMetadataByVideoId(@Param("videoId") String videoId);
+    
+    @Query(METADATA_FIELDS + "WHERE v.videoId IN :videoIds")
+    List<VideoMetadata> findMetadataByVideoIdIn(@Param("videoIds") Collection<String> videoIds);
+    
+    String TOP_VIEWED_FIELDS = "SELECT v.videoId AS videoId, v.title AS title, v.channelId AS channelId, "
+        + "v.channelTitle AS channelTitle, v.category AS category, v.viewCount AS viewCount, v.likeCount AS likeCount, "
+        + "v.thumbnailUrl AS thumbnailUrl FROM CachedVideo v ";
+    
+    /**
+     * Video non scaduti più visti: scorre l'indice su view_count e si ferma al LIMIT del Pageable
+     */
+    @Query(TOP_VIEWED_FIELDS + "WHERE v.viewCount IS NOT NULL AND v.expiresAt > :now ORDER BY v.viewCount DESC")
+    List<TopViewedVideo> findTopViewed(@Param("now") LocalDateTime now, Pageable pageable);
+    
+    @Query(TOP_VIEWED_FIELDS + "WHERE v.channelId = :channelId AND v.viewCount IS NOT NULL AND v.expiresAt > :now "
+        + "ORDER BY v.viewCount DESC")
+    List<TopViewedVideo> findTopViewedByChannel(@Param("channelId") String channelId, @Param("now") LocalDateTime now,
+        Pageable pageable);
+    
+    @Query(TOP_VIEWED_FIELDS + "WHERE v.category = :category AND v.viewCount IS NOT NULL AND v.expiresAt > :now "
+        + "ORDER BY v.viewCount DESC")
+    List<TopViewedVideo> findTopViewedByCategory(@Param("category") String category, @Param("now") LocalDateTime now,
+        Pageable pageable);
+    
+    /**
+     * Campi per l'indice di ricerca, a blocchi ordinati per id (keyset: nessun OFFSET da scorrere)
+     */
+    @Query("SELECT v.id AS id, v.videoId AS videoId, v.title AS title, v.description AS description, "
+        + "v.channelId AS channelId, v.channelTitle AS channelTitle, v.publishedAt AS publishedAt, "
+        + "v.viewCount AS viewCount, v.likeCount AS likeCount "
+        + "FROM CachedVideo v WHERE v.id > :afterId ORDER BY v.id")
+    List<VideoSearchFields> findSearchFieldsAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * Campi per il riepilogo statistiche, a blocchi ordinati per id (keyset)
+     */
+    @Query("SELECT v.id AS id, v.videoId AS videoId, v.viewCount AS viewCount, v.likeCount AS likeCount, "
+        + "v.commentCount AS commentCount, v.expiresAt AS expiresAt "
+        + "FROM CachedVideo v WHERE v.id > :afterId ORDER BY v.id")
+    List<VideoSummaryFields> findSummaryFieldsAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * Righe dell'export statistiche, a blocchi ordinati per id (keyset)
+     */
+    @Query("SELECT v.id AS id, v.videoId AS videoId, v.title AS title, v.channelTitle AS channelTitle, "
+        + "v.viewCount AS viewCount, v.likeCount AS likeCount, v.commentCount AS commentCount, "
+        + "v.thumbnailUrl AS thumbnailUrl, v.duration AS duration, v.createdAt AS createdAt, v.expiresAt AS expiresAt "
+        + "FROM CachedVideo v WHERE v.id > :afterId ORDER BY v.id")
+    List<VideoStatisticsRow> findStatisticsAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
@@ -0,0 +1,53 @@
+package efohum.com.youtubeproxy.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import efohum.com.youtubeproxy.entity.QuotaUsage;
+
+@Repository
+public interface QuotaUsageRepository extends JpaRepository<QuotaUsage, Long> {
+    
+    List<QuotaUsage> findByUsageDay(LocalDate usageDay);
+    
+    /**
+     * Riserva cost unità solo se la spesa non supera limit: 0 righe aggiornate se la quota non basta.
+     * Il controllo e l'incremento sono un unico UPDATE, quindi valgono anche tra più istanze
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE QuotaUsage u SET u.spent = u.spent + :cost "
+            + "WHERE u.usageDay = :day AND u.keyId = :keyId AND u.spent <= :limit")
+    int reserve(@Param("day") LocalDate day, @Param("keyId") String keyId, @Param("cost") long cost,
+            @Param("limit") long limit);
+    
+    /**
+     * Key esaurita secondo YouTube: la spesa sale almeno al budget
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE QuotaUsage u SET u.spent = :budget "
+            + "WHERE u.usageDay = :day AND u.keyId = :keyId AND u.spent < :budget")
+    int exhaust(@Param("day") LocalDate day, @Param("keyId") String keyId, @Param("budget") long budget);
+    
+    /**
+     * Unità prenotate e non usate restituite allo spegnimento
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE QuotaUsage u SET u.spent = u.spent - :units "
+            + "WHERE u.usageDay = :day AND u.keyId = :keyId AND u.spent >= :units")
+    int release(@Param("day") LocalDate day, @Param("keyId") String keyId, @Param("units") long units);
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM QuotaUsage u WHERE u.usageDay < :day")
+    int deleteBefore(@Param("day") LocalDate day);
+}
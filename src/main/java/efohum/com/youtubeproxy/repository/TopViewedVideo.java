@@ -0,0 +1,23 @@
+package efohum.com.youtubeproxy.repository;
+
+/**
+ * Proiezione di una riga della classifica dei video più visti (senza responseJson)
+ */
+public interface TopViewedVideo {
+
+    String getVideoId();
+
+    String getTitle();
+
+    String getChannelId();
+
+    String getChannelTitle();
+
+    String getCategory();
+
+    Long getViewCount();
+
+    Long getLikeCount();
+
+    String getThumbnailUrl();
+}
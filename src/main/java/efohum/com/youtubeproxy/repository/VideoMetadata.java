@@ -0,0 +1,29 @@
+package efohum.com.youtubeproxy.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tutte le colonne di un video tranne responseJson: per le letture che non restituiscono la risposta
+ * di YouTube (statistiche, ricostruzione delle search, upsert dei video estratti da una search).
+ * CachedVideo non deve implementarla: Spring Data restituirebbe l'entità invece della proiezione
+ */
+public interface VideoMetadata extends VideoSearchFields {
+
+    String getThumbnailUrl();
+
+    Long getCommentCount();
+
+    Long getFavoriteCount();
+
+    String getDuration();
+
+    String getCategory();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getExpiresAt();
+
+    default boolean isExpired() {
+        return LocalDateTime.now().isAfter(getExpiresAt());
+    }
+}
@@ -0,0 +1,25 @@
+package efohum.com.youtubeproxy.repository;
+
+/**
+ * Proiezione dei soli campi usati dall'indice di ricerca (senza responseJson)
+ */
+public interface VideoSearchFields {
+
+    Long getId();
+
+    String getVideoId();
+
+    String getTitle();
+
+    String getDescription();
+
+    String getChannelId();
+
+    String getChannelTitle();
+
+    String getPublishedAt();
+
+    Long getViewCount();
+
+    Long getLikeCount();
+}
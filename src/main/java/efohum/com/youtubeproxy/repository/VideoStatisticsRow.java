@@ -0,0 +1,31 @@
+package efohum.com.youtubeproxy.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proiezione di una riga dell'export statistiche dei video (senza responseJson)
+ */
+public interface VideoStatisticsRow {
+
+    Long getId();
+
+    String getVideoId();
+
+    String getTitle();
+
+    String getChannelTitle();
+
+    Long getViewCount();
+
+    Long getLikeCount();
+
+    Long getCommentCount();
+
+    String getThumbnailUrl();
+
+    String getDuration();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getExpiresAt();
+}
@@ -0,0 +1,21 @@
+package efohum.com.youtubeproxy.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proiezione dei soli campi usati dal riepilogo statistiche (senza responseJson)
+ */
+public interface VideoSummaryFields {
+
+    Long getId();
+
+    String getVideoId();
+
+    Long getViewCount();
+
+    Long getLikeCount();
+
+    Long getCommentCount();
+
+    LocalDateTime getExpiresAt();
+}
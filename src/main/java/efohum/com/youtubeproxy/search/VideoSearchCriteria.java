@@ -0,0 +1,59 @@
+package efohum.com.youtubeproxy.search;
+
+import java.time.Instant;
+import java.util.Objects;
+
+import lombok.Value;
+
+/**
+ * Parametri di search.list applicabili ai video nel DB: testo, canale, intervallo di pubblicazione e ordinamento
+ */
+@Value
+public class VideoSearchCriteria {
+
+    String query; // null = nessun filtro sul testo
+    String channelId;
+    Instant publishedAfter; // incluso, come in YouTube
+    Instant publishedBefore; // escluso
+    Order order;
+
+    public static VideoSearchCriteria forQuery(String query) {
+        return new VideoSearchCriteria(query, null, null, null, Order.RELEVANCE);
+    }
+
+    /**
+     * Impronta stabile tra riavvii e repliche (hashCode di un enum non lo è), usata nei pageToken
+     */
+    public int fingerprint() {
+        return Objects.hash(query, channelId, publishedAfter, publishedBefore, order.name());
+    }
+
+    public enum Order {
+        RELEVANCE,
+        DATE,
+        VIEW_COUNT,
+        RATING,
+        TITLE;
+
+        /**
+         * Valore del parametro order di YouTube; relevance se assente o non applicabile ai video (videoCount)
+         */
+        public static Order fromParameter(String order) {
+            if (order == null) {
+                return RELEVANCE;
+            }
+            switch (order) {
+                case "date":
+                    return DATE;
+                case "viewCount":
+                    return VIEW_COUNT;
+                case "rating":
+                    return RATING;
+                case "title":
+                    return TITLE;
+                default:
+                    return RELEVANCE;
+            }
+        }
+    }
+}
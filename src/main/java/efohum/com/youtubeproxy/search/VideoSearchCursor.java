@@ -0,0 +1,62 @@
+package efohum.com.youtubeproxy.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+import lombok.Value;
+
+/**
+ * Posizione di un video nell'ordinamento di una ricerca: i valori su cui si ordina più il videoId,
+ * che rende l'ordine totale.
+ *
+ * Serializzata nel nextPageToken delle risposte ricostruite: la pagina successiva riparte dall'indice
+ * subito dopo questa posizione, senza stato sul server e senza ricalcolare le pagine precedenti.
+ * Il token porta anche l'impronta dei criteri, così non viene usato con una search diversa.
+ */
+@Value
+public class VideoSearchCursor {
+
+    // Prefisso dei token generati dal proxy: YouTube non li conosce e non vanno inoltrati
+    private static final String TOKEN_PREFIX = "db";
+    private static final String VERSION = "1";
+
+    int penalty;
+    long publishedAt;
+    long viewCount;
+    long likeCount;
+    String title;
+    String videoId;
+
+    public static boolean isPageToken(String token) {
+        return token != null && token.startsWith(TOKEN_PREFIX);
+    }
+
+    public String toPageToken(VideoSearchCriteria criteria) {
+        String value = String.join("|", VERSION, Integer.toString(criteria.fingerprint()), Integer.toString(penalty),
+                Long.toString(publishedAt), Long.toString(viewCount), Long.toString(likeCount), videoId, title);
+        return TOKEN_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cursore di un pageToken generato per gli stessi criteri; vuoto se il token non è valido o è di un'altra search
+     */
+    public static Optional<VideoSearchCursor> fromPageToken(String token, VideoSearchCriteria criteria) {
+        if (!isPageToken(token)) {
+            return Optional.empty();
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token.substring(TOKEN_PREFIX.length())),
+                    StandardCharsets.UTF_8);
+            String[] fields = value.split("\\|", 8);
+            if (fields.length != 8 || !VERSION.equals(fields[0])
+                    || Integer.parseInt(fields[1]) != criteria.fingerprint()) {
+                return Optional.empty();
+            }
+            return Optional.of(new VideoSearchCursor(Integer.parseInt(fields[2]), Long.parseLong(fields[3]),
+                    Long.parseLong(fields[4]), Long.parseLong(fields[5]), fields[7], fields[6]));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,673 @@
+package efohum.com.youtubeproxy.search;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoSearchFields;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Indice invertito in memoria dei video nel DB (parola → documenti), usato per ricostruire le search
+ * senza scorrere tutta la tabella cached_videos.
+ *
+ * - Costruito all'avvio a blocchi (solo i campi di ricerca, senza responseJson) e aggiornato
+ *   a ogni salvataggio o cancellazione di un CachedVideo (VideoSearchIndexListener)
+ * - Ogni parola della query viene espansa nelle parole del dizionario che la contengono: uguali, che iniziano
+ *   con essa, che la contengono (sottostringa) o che ne differiscono per 1-2 errori di battitura
+ *   (distanza di edit con trasposizioni). Sottostringhe e refusi vengono cercati con un indice di trigrammi
+ *   sulle parole del dizionario e verificati singolarmente
+ * - Un video corrisponde se contiene un'espansione di ogni parola, in qualsiasi ordine
+ * - Indici secondari per channelId, data di pubblicazione (epoch millis, ordinato) e viewCount (ordinato)
+ *
+ * I candidati vengono presi dalla lista più piccola (parola più selettiva o canale) e ordinati con un heap
+ * limitato a K; se le liste sono grandi e l'ordinamento richiesto ha un indice ordinato (date, viewCount)
+ * si scorre quell'indice dall'alto fermandosi ai primi K video che rispettano i filtri.
+ */
+@Component
+@Slf4j
+public class VideoSearchIndex implements SmartInitializingSingleton {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    // Penalità di una parola espansa: più bassa = corrispondenza migliore
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int SUBSTRING = 2;
+    private static final int TYPO = 2; // + distanza di edit
+
+    private final CachedVideoRepository videoRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Parola → documenti (id crescenti, quindi già ordinati)
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<String, Integer> documentByVideoId = new HashMap<>();
+    private int deadDocuments;
+    // Dizionario delle parole e trigrammi (con ^ e $ ai bordi) → parole che li contengono
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Postings> trigramIndex = new HashMap<>();
+    // Indici secondari
+    private final Map<String, Postings> byChannel = new HashMap<>();
+    private final NavigableMap<Long, Postings> byPublishedAt = new TreeMap<>();
+    private final NavigableMap<Long, Postings> byViewCount = new TreeMap<>();
+
+    public VideoSearchIndex(CachedVideoRepository videoRepository) {
+        this.videoRepository = videoRepository;
+    }
+
+    /**
+     * Costruzione all'avvio, prima che il server accetti richieste
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        long start = System.currentTimeMillis();
+        long lastId = 0L;
+        List<VideoSearchFields> batch;
+        do {
+            batch = videoRepository.findSearchFieldsAfter(lastId, PageRequest.of(0, BUILD_BATCH_SIZE));
+            for (VideoSearchFields video : batch) {
+                index(video);
+                lastId = video.getId();
+            }
+        } while (batch.size() == BUILD_BATCH_SIZE);
+        log.info("Indice di ricerca costruito: {} video, {} parole in {} ms",
+                size(), tokenCount(), System.currentTimeMillis() - start);
+    }
+
+    public void index(CachedVideo video) {
+        put(video.getVideoId(), video.getTitle(), video.getDescription(), video.getChannelId(),
+                video.getChannelTitle(), video.getPublishedAt(), video.getViewCount(), video.getLikeCount());
+    }
+
+    public void index(VideoSearchFields video) {
+        put(video.getVideoId(), video.getTitle(), video.getDescription(), video.getChannelId(),
+                video.getChannelTitle(), video.getPublishedAt(), video.getViewCount(), video.getLikeCount());
+    }
+
+    /**
+     * Aggiunge o aggiorna un video; se nessun campo indicizzato cambia il documento resta lo stesso
+     */
+    private void put(String videoId, String title, String description, String channelId, String channelTitle,
+            String publishedAt, Long viewCount, Long likeCount) {
+        if (videoId == null) {
+            return;
+        }
+        TreeSet<String> words = new TreeSet<>();
+        words.addAll(tokenize(title));
+        words.addAll(tokenize(description));
+        words.addAll(tokenize(channelTitle));
+        Document candidate = new Document(videoId, title == null ? "" : title, channelId, parseEpochMillis(publishedAt),
+                viewCount == null ? 0L : viewCount, likeCount == null ? 0L : likeCount, words.toArray(String[]::new));
+        lock.writeLock().lock();
+        try {
+            Integer current = documentByVideoId.get(videoId);
+            if (current != null) {
+                if (documents.get(current).sameAs(candidate)) {
+                    return;
+                }
+                kill(current);
+            }
+            int id = documents.size();
+            String[] tokens = candidate.tokens;
+            for (int i = 0; i < tokens.length; i++) {
+                // Istanza condivisa della parola già presente nel dizionario
+                String token = postings.ceilingKey(tokens[i]);
+                if (!tokens[i].equals(token)) {
+                    token = tokens[i];
+                    postings.put(token, new Postings());
+                    addToDictionary(token);
+                }
+                postings.get(token).add(id);
+                tokens[i] = token;
+            }
+            addToSecondaryIndexes(candidate, id);
+            documents.add(candidate);
+            documentByVideoId.put(videoId, id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String videoId) {
+        lock.writeLock().lock();
+        try {
+            Integer current = documentByVideoId.remove(videoId);
+            if (current != null) {
+                kill(current);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            documentByVideoId.clear();
+            dictionary.clear();
+            trigramIndex.clear();
+            byChannel.clear();
+            byPublishedAt.clear();
+            byViewCount.clear();
+            deadDocuments = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * I primi limit videoId che rispettano testo e filtri, nell'ordine richiesto
+     */
+    public List<String> search(VideoSearchCriteria criteria, int limit) {
+        List<String> result = new ArrayList<>();
+        for (VideoSearchCursor hit : search(criteria, null, limit)) {
+            result.add(hit.getVideoId());
+        }
+        return result;
+    }
+
+    /**
+     * I primi limit video dopo la posizione after (null = dall'inizio), con la loro posizione nell'ordinamento
+     */
+    public List<VideoSearchCursor> search(VideoSearchCriteria criteria, VideoSearchCursor after, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        long from = criteria.getPublishedAfter() == null ? Long.MIN_VALUE : criteria.getPublishedAfter().toEpochMilli();
+        long to = criteria.getPublishedBefore() == null ? Long.MAX_VALUE : criteria.getPublishedBefore().toEpochMilli();
+        boolean dateFilter = criteria.getPublishedAfter() != null || criteria.getPublishedBefore() != null;
+        Comparator<VideoSearchCursor> order = comparator(criteria.getOrder());
+        lock.readLock().lock();
+        try {
+            // Lista di candidati più piccola tra le parole della query e il canale
+            Set<String> words = new TreeSet<>(tokenize(criteria.getQuery()));
+            List<Map<String, Integer>> expansions = new ArrayList<>();
+            Collection<Postings> candidates = null;
+            long candidatesCost = Long.MAX_VALUE;
+            for (String word : words) {
+                Map<String, Integer> expansion = expand(word);
+                long cost = 0;
+                for (String token : expansion.keySet()) {
+                    cost += postings.get(token).size;
+                }
+                if (cost == 0) {
+                    return List.of();
+                }
+                if (cost < candidatesCost) {
+                    candidates = new ArrayList<>();
+                    for (String token : expansion.keySet()) {
+                        candidates.add(postings.get(token));
+                    }
+                    candidatesCost = cost;
+                }
+                expansions.add(expansion);
+            }
+            if (criteria.getChannelId() != null) {
+                Postings channel = byChannel.get(criteria.getChannelId());
+                if (channel == null) {
+                    return List.of();
+                }
+                if (channel.size < candidatesCost) {
+                    candidates = List.of(channel);
+                    candidatesCost = channel.size;
+                }
+            }
+
+            Predicate<Document> filters = document -> document.alive
+                    && (criteria.getChannelId() == null || criteria.getChannelId().equals(document.channelId))
+                    && (!dateFilter || (document.publishedAt >= from && document.publishedAt < to));
+            Function<Document, VideoSearchCursor> position = document -> {
+                if (!filters.test(document)) {
+                    return null;
+                }
+                int penalty = document.penalty(expansions);
+                if (penalty < 0) {
+                    return null;
+                }
+                VideoSearchCursor hit = document.position(penalty);
+                return after == null || order.compare(hit, after) > 0 ? hit : null;
+            };
+
+            // Indice ordinato da scorrere dall'alto, se esiste per l'ordinamento richiesto;
+            // con un cursore si parte direttamente dalla sua chiave
+            NavigableMap<Long, Postings> sorted = null;
+            if (criteria.getOrder() == VideoSearchCriteria.Order.VIEW_COUNT) {
+                sorted = after == null ? byViewCount.descendingMap() : byViewCount.headMap(after.getViewCount(), true).descendingMap();
+            } else if (criteria.getOrder() == VideoSearchCriteria.Order.DATE
+                    || (criteria.getOrder() == VideoSearchCriteria.Order.RELEVANCE && expansions.isEmpty())) {
+                sorted = after == null || after.getPublishedAt() >= to
+                        ? byPublishedAt.subMap(from, true, to, false).descendingMap()
+                        : byPublishedAt.subMap(from, true, after.getPublishedAt(), true).descendingMap();
+            }
+
+            // Scorrere l'indice ordinato costa circa limit * documenti / candidati
+            if (sorted != null && (candidates == null
+                    || (double) candidatesCost * candidatesCost > (double) limit * documentByVideoId.size())) {
+                return walk(sorted.values(), position, order, limit);
+            }
+            if (candidates == null) {
+                // Nessun testo né canale: solo l'intervallo di date, ordinato con l'heap
+                candidates = byPublishedAt.subMap(from, true, to, false).values();
+            }
+            return top(candidates, position, order, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Candidati ordinati con un heap limitato a limit (in cima il peggiore dei migliori)
+     */
+    private List<VideoSearchCursor> top(Collection<Postings> candidates, Function<Document, VideoSearchCursor> position,
+            Comparator<VideoSearchCursor> order, int limit) {
+        PriorityQueue<VideoSearchCursor> top = new PriorityQueue<>(limit + 1, order.reversed());
+        BitSet seen = new BitSet(documents.size());
+        for (Postings list : candidates) {
+            for (int i = 0; i < list.size; i++) {
+                int id = list.ids[i];
+                if (seen.get(id)) {
+                    continue;
+                }
+                seen.set(id);
+                VideoSearchCursor hit = position.apply(documents.get(id));
+                if (hit != null) {
+                    top.offer(hit);
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+        }
+        List<VideoSearchCursor> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(top.poll());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Liste già nell'ordine della chiave richiesta: si ferma ai primi limit documenti validi.
+     * I documenti con la stessa chiave vengono ordinati tra loro con l'ordinamento completo
+     */
+    private List<VideoSearchCursor> walk(Collection<Postings> sorted, Function<Document, VideoSearchCursor> position,
+            Comparator<VideoSearchCursor> order, int limit) {
+        List<VideoSearchCursor> result = new ArrayList<>(limit);
+        List<VideoSearchCursor> sameKey = new ArrayList<>();
+        for (Postings list : sorted) {
+            sameKey.clear();
+            for (int i = 0; i < list.size; i++) {
+                VideoSearchCursor hit = position.apply(documents.get(list.ids[i]));
+                if (hit != null) {
+                    sameKey.add(hit);
+                }
+            }
+            sameKey.sort(order);
+            for (VideoSearchCursor hit : sameKey) {
+                result.add(hit);
+                if (result.size() == limit) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ordinamento totale: a parità dei valori richiesti decidono la data e infine il videoId
+     */
+    private static Comparator<VideoSearchCursor> comparator(VideoSearchCriteria.Order order) {
+        Comparator<VideoSearchCursor> newestFirst = Comparator.comparingLong(VideoSearchCursor::getPublishedAt).reversed()
+                .thenComparing(VideoSearchCursor::getVideoId);
+        switch (order) {
+            case DATE:
+                return newestFirst;
+            case VIEW_COUNT:
+                return Comparator.comparingLong(VideoSearchCursor::getViewCount).reversed().thenComparing(newestFirst);
+            case RATING:
+                return Comparator.comparingLong(VideoSearchCursor::getLikeCount).reversed().thenComparing(newestFirst);
+            case TITLE:
+                return Comparator.comparing(VideoSearchCursor::getTitle, String.CASE_INSENSITIVE_ORDER)
+                        .thenComparing(VideoSearchCursor::getTitle).thenComparing(newestFirst);
+            default:
+                return Comparator.comparingInt(VideoSearchCursor::getPenalty).thenComparing(newestFirst);
+        }
+    }
+
+    /**
+     * Parole del dizionario che corrispondono a una parola della query, con la relativa penalità
+     */
+    private Map<String, Integer> expand(String word) {
+        Map<String, Integer> expansion = new HashMap<>();
+        for (String token : prefixRange(word).keySet()) {
+            expansion.put(token, token.length() == word.length() ? EXACT : PREFIX);
+        }
+
+        // Sottostringa: ogni parola che la contiene ha anche il suo trigramma più raro
+        if (word.length() >= 3) {
+            Postings rarest = null;
+            for (String trigram : trigrams(word, false)) {
+                Postings list = trigramIndex.get(trigram);
+                if (list == null) {
+                    rarest = null;
+                    break;
+                }
+                if (rarest == null || list.size < rarest.size) {
+                    rarest = list;
+                }
+            }
+            if (rarest != null) {
+                for (int i = 0; i < rarest.size; i++) {
+                    String token = dictionary.get(rarest.ids[i]);
+                    if (token.contains(word)) {
+                        expansion.putIfAbsent(token, SUBSTRING);
+                    }
+                }
+            }
+        }
+
+        // Refusi: ogni edit cambia al massimo 4 trigrammi (una trasposizione), quindi una parola a distanza k
+        // ha almeno uno dei 4k+1 trigrammi più rari della query. Per le parole corte si usano tutti
+        // i trigrammi: un refuso che li cambia tutti non viene trovato
+        int maxEdits = maxEdits(word.length());
+        if (maxEdits > 0) {
+            List<String> grams = trigrams(word, true);
+            grams.sort(Comparator.comparingInt(trigram -> trigramIndex.containsKey(trigram) ? trigramIndex.get(trigram).size : 0));
+            for (String trigram : grams.subList(0, Math.min(grams.size(), 4 * maxEdits + 1))) {
+                Postings list = trigramIndex.get(trigram);
+                for (int i = 0; list != null && i < list.size; i++) {
+                    String token = dictionary.get(list.ids[i]);
+                    if (!expansion.containsKey(token) && Math.abs(token.length() - word.length()) <= maxEdits) {
+                        int distance = editDistance(word, token, maxEdits);
+                        if (distance <= maxEdits) {
+                            expansion.put(token, TYPO + distance);
+                        }
+                    }
+                }
+            }
+        }
+        return expansion;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentByVideoId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("videos", documentByVideoId.size());
+            result.put("words", postings.size());
+            result.put("trigrams", trigramIndex.size());
+            result.put("deadDocuments", deadDocuments);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private int tokenCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private NavigableMap<String, Postings> prefixRange(String prefix) {
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private void addToDictionary(String word) {
+        int id = dictionary.size();
+        dictionary.add(word);
+        for (String trigram : trigrams(word, true)) {
+            trigramIndex.computeIfAbsent(trigram, key -> new Postings()).add(id);
+        }
+    }
+
+    private void addToSecondaryIndexes(Document document, int id) {
+        if (document.channelId != null) {
+            byChannel.computeIfAbsent(document.channelId, key -> new Postings()).add(id);
+        }
+        byPublishedAt.computeIfAbsent(document.publishedAt, key -> new Postings()).add(id);
+        byViewCount.computeIfAbsent(document.viewCount, key -> new Postings()).add(id);
+    }
+
+    /**
+     * publishedAt di YouTube (RFC 3339) in epoch millis; Long.MIN_VALUE se assente o non valido
+     */
+    static long parseEpochMillis(String publishedAt) {
+        if (publishedAt == null || publishedAt.isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return OffsetDateTime.parse(publishedAt).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Trigrammi distinti di una parola; con padded anche quelli di inizio (^) e fine ($) parola
+     */
+    static List<String> trigrams(String word, boolean padded) {
+        String text = padded ? "^" + word + "$" : word;
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            result.add(text.substring(i, i + 3));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Errori di battitura tollerati: nessuno sotto le 4 lettere, 1 fino a 7, 2 oltre
+     */
+    private static int maxEdits(int length) {
+        if (length < 4) {
+            return 0;
+        }
+        return length < 8 ? 1 : 2;
+    }
+
+    /**
+     * Distanza di edit con trasposizioni di lettere adiacenti (optimal string alignment);
+     * si ferma appena supera max e in quel caso restituisce max + 1
+     */
+    static int editDistance(String a, String b, int max) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], previous2[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    /**
+     * Il documento resta nelle liste fino alla compattazione: le ricerche lo saltano
+     */
+    private void kill(int id) {
+        documents.get(id).alive = false;
+        deadDocuments++;
+        if (deadDocuments > 1000 && deadDocuments > documents.size() / 4) {
+            compact();
+        }
+    }
+
+    /**
+     * Ricostruisce liste e id dei documenti senza quelli aggiornati o rimossi
+     */
+    private void compact() {
+        List<Document> alive = new ArrayList<>(documents.size() - deadDocuments);
+        for (Document document : documents) {
+            if (document.alive) {
+                alive.add(document);
+            }
+        }
+        postings.clear();
+        documents.clear();
+        documentByVideoId.clear();
+        dictionary.clear();
+        trigramIndex.clear();
+        byChannel.clear();
+        byPublishedAt.clear();
+        byViewCount.clear();
+        for (Document document : alive) {
+            int id = documents.size();
+            for (String token : document.tokens) {
+                Postings list = postings.get(token);
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(token, list);
+                    addToDictionary(token);
+                }
+                list.add(id);
+            }
+            addToSecondaryIndexes(document, id);
+            documents.add(document);
+            documentByVideoId.put(document.videoId, id);
+        }
+        log.debug("Indice di ricerca compattato: {} documenti rimossi", deadDocuments);
+        deadDocuments = 0;
+    }
+
+    private static final class Document {
+
+        private final String videoId;
+        private final String title;
+        private final String channelId;
+        private final long publishedAt; // epoch millis
+        private final long viewCount;
+        private final long likeCount;
+        private final String[] tokens; // ordinate e distinte
+        private boolean alive = true;
+
+        private Document(String videoId, String title, String channelId, long publishedAt, long viewCount,
+                long likeCount, String[] tokens) {
+            this.videoId = videoId;
+            this.title = title;
+            this.channelId = channelId;
+            this.publishedAt = publishedAt;
+            this.viewCount = viewCount;
+            this.likeCount = likeCount;
+            this.tokens = tokens;
+        }
+
+        private boolean sameAs(Document other) {
+            return title.equals(other.title) && Objects.equals(channelId, other.channelId)
+                    && publishedAt == other.publishedAt && viewCount == other.viewCount
+                    && likeCount == other.likeCount && Arrays.equals(tokens, other.tokens);
+        }
+
+        private VideoSearchCursor position(int penalty) {
+            return new VideoSearchCursor(penalty, publishedAt, viewCount, likeCount, title, videoId);
+        }
+
+        /**
+         * Somma delle migliori penalità per ogni parola della query; -1 se una parola non ha corrispondenze
+         */
+        private int penalty(List<Map<String, Integer>> expansions) {
+            int total = 0;
+            for (Map<String, Integer> expansion : expansions) {
+                int best = Integer.MAX_VALUE;
+                for (String token : tokens) {
+                    Integer penalty = expansion.get(token);
+                    if (penalty != null && penalty < best) {
+                        best = penalty;
+                    }
+                }
+                if (best == Integer.MAX_VALUE) {
+                    return -1;
+                }
+                total += best;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Lista di id di documento in un array di int (nessun boxing)
+     */
+    private static final class Postings {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
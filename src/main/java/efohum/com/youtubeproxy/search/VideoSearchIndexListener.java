@@ -0,0 +1,39 @@
+package efohum.com.youtubeproxy.search;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.AfterCommit;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Tiene aggiornato l'indice di ricerca a ogni insert, update o delete di un CachedVideo.
+ *
+ * Istanziato da Hibernate tramite il bean container di Spring: l'indice viene risolto solo al primo evento
+ * (dipende a sua volta dal repository) ed è assente nei test JPA che non lo caricano.
+ * Le modifiche vengono applicate all'indice solo dopo il commit della transazione (subito se non ce n'è una
+ * attiva): un blocco di scrittura annullato non lascia nell'indice video che nel DB non esistono,
+ * né toglie video la cui cancellazione è stata annullata.
+ */
+public class VideoSearchIndexListener {
+
+    private final ObjectProvider<VideoSearchIndex> searchIndex;
+
+    public VideoSearchIndexListener(ObjectProvider<VideoSearchIndex> searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(CachedVideo video) {
+        AfterCommit.run(() -> searchIndex.ifAvailable(index -> index.index(video)));
+    }
+
+    @PostRemove
+    public void onRemove(CachedVideo video) {
+        String videoId = video.getVideoId();
+        AfterCommit.run(() -> searchIndex.ifAvailable(index -> index.remove(videoId)));
+    }
+}
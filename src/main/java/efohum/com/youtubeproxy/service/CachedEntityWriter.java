@@ -0,0 +1,202 @@
+package efohum.com.youtubeproxy.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import efohum.com.youtubeproxy.entity.CachedSearchResult;
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.AfterCommit;
+import efohum.com.youtubeproxy.repository.CachedSearchResultRepository;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoMetadata;
+import efohum.com.youtubeproxy.statistics.VideoStatisticsSummary;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Upsert delle risposte salvate, eseguiti dalla scrittura differita (WriteBehindQueue).
+ *
+ * Ogni scrittura può essere eseguita più volte con la stessa entità: prima in un blocco e, se il blocco
+ * fallisce, da sola. Dopo il rollback l'entità conserva l'id assegnato dall'INSERT annullato (o copiato
+ * dalla riga esistente), quindi l'id viene sempre riletto per chiave a ogni tentativo: null se la riga
+ * non c'è, così il save torna a essere un INSERT invece del merge di un id inesistente.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+class CachedEntityWriter {
+
+    private final CachedSearchResultRepository searchResultRepository;
+    private final CachedVideoRepository videoRepository;
+    private final ObjectProvider<VideoStatisticsSummary> statisticsSummary;
+
+    /**
+     * Upsert per queryKey
+     */
+    void upsertSearch(CachedSearchResult result) {
+        Long id = searchResultRepository.findByQueryKey(result.getQueryKey())
+            .map(CachedSearchResult::getId)
+            .orElse(null);
+        result.setId(id);
+        if (id != null) {
+            log.info("Aggiornamento cache search esistente: queryKey={}, query='{}'",
+                result.getQueryKey(), result.getQuery());
+        } else {
+            log.info("Nuova cache search: queryKey={}, query='{}', maxResults={}",
+                result.getQueryKey(), result.getQuery(), result.getMaxResults());
+        }
+        searchResultRepository.save(result);
+        log.info("Cache search salvata con successo: id={}, query='{}', totalResults={}",
+            result.getId(), result.getQuery(), result.getTotalResults());
+    }
+
+    /**
+     * Upsert per videoId
+     */
+    void upsertVideo(CachedVideo video) {
+        Long id = videoRepository.findByVideoId(video.getVideoId())
+            .map(CachedVideo::getId)
+            .orElse(null);
+        video.setId(id);
+        if (id != null) {
+            log.info("Aggiornamento cache video esistente: videoId={}, title='{}'",
+                video.getVideoId(), video.getTitle());
+        } else {
+            log.info("Nuova cache video: videoId={}, title='{}'",
+                video.getVideoId(), video.getTitle());
+        }
+        videoRepository.save(video);
+        log.info("Cache video salvata: id={}, videoId={}, title='{}', views={}, likes={}",
+            video.getId(), video.getVideoId(), video.getTitle(),
+            video.getViewCount(), video.getLikeCount());
+    }
+
+    /**
+     * Search confermata da YouTube (304): UPDATE per queryKey della sola scadenza e dell'etag.
+     * Se nel frattempo la riga è stata eliminata (es. /cache/clear) non viene ricreata
+     */
+    void revalidateSearch(CachedSearchResult result) {
+        if (searchResultRepository.revalidate(result.getQueryKey(), result.getExpiresAt(), result.getUpstreamEtag()) == 0) {
+            log.info("Cache search non più presente, scadenza non estesa: queryKey={}", result.getQueryKey());
+        }
+    }
+
+    /**
+     * Video confermato da YouTube (304): UPDATE per videoId della sola scadenza e dell'etag.
+     * L'UPDATE non passa dai listener JPA, quindi il riepilogo statistiche viene aggiornato qui dopo il commit
+     */
+    void revalidateVideo(CachedVideo video) {
+        if (videoRepository.revalidate(video.getVideoId(), video.getExpiresAt(), video.getUpstreamEtag()) == 0) {
+            log.info("Cache video non più presente, scadenza non estesa: videoId={}", video.getVideoId());
+            return;
+        }
+        AfterCommit.run(() -> statisticsSummary.ifAvailable(summary -> summary.onSave(video)));
+    }
+
+    /**
+     * Upsert di un blocco di video con un'unica lettura IN degli id esistenti e un solo saveAll
+     */
+    void upsertVideos(List<CachedVideo> videos) {
+        Map<String, Long> ids = new HashMap<>();
+        videoRepository.findByVideoIdIn(videos.stream().map(CachedVideo::getVideoId).collect(Collectors.toList()))
+            .forEach(existing -> ids.put(existing.getVideoId(), existing.getId()));
+        videos.forEach(video -> video.setId(ids.get(video.getVideoId())));
+        videoRepository.saveAll(videos);
+    }
+
+    /**
+     * Salva i video estratti da una risposta search (item per videoId):
+     * una sola query IN sui metadati (senza responseJson) per i video già presenti, poi le entità complete
+     * dei soli video con lo snippet cambiato e un unico saveAll (batch JDBC) per nuovi e modificati.
+     * Le entità vengono create a ogni tentativo, quindi un nuovo tentativo non riusa id annullati
+     */
+    void upsertSearchVideos(Map<String, JsonNode> itemsById) {
+        // Video già presenti nel database, con un'unica query IN sui soli metadati
+        Map<String, VideoMetadata> existing = new HashMap<>();
+        videoRepository.findMetadataByVideoIdIn(itemsById.keySet())
+            .forEach(video -> existing.put(video.getVideoId(), video));
+
+        // Nuovi video e video esistenti con lo snippet cambiato: solo questi vengono caricati come entità
+        List<CachedVideo> toInsert = new ArrayList<>();
+        Map<Long, JsonNode> changed = new HashMap<>();
+        itemsById.forEach((videoId, item) -> {
+            JsonNode snippet = item.path("snippet");
+            VideoMetadata current = existing.get(videoId);
+            if (current == null) {
+                CachedVideo video = new CachedVideo();
+                video.setVideoId(videoId);
+                applySnippet(video, snippet);
+                toInsert.add(video);
+            } else if (!snippet.isMissingNode() && snippetChanged(current, snippet)) {
+                changed.put(current.getId(), snippet);
+            }
+        });
+        List<CachedVideo> toSave = new ArrayList<>(toInsert);
+        if (!changed.isEmpty()) {
+            for (CachedVideo video : videoRepository.findAllById(changed.keySet())) {
+                applySnippet(video, changed.get(video.getId()));
+                toSave.add(video);
+            }
+        }
+
+        // Salva nuovi e modificati in un'unica chiamata
+        if (!toSave.isEmpty()) {
+            videoRepository.saveAll(toSave);
+        }
+        log.debug("Video salvati da search: {}", itemsById.keySet());
+        log.info("Video dalla search: {} nuovi, {} aggiornati, {} invariati",
+            toInsert.size(), changed.size(), existing.size() - changed.size());
+    }
+
+    /**
+     * Copia nel video i metadati base dello snippet di una search.
+     * Nota: Le statistiche (views, likes, ecc.) NON sono disponibili nella search API
+     * Verranno popolate quando si chiama getVideoDetails() con part=statistics
+     */
+    private static void applySnippet(CachedVideo video, JsonNode snippet) {
+        if (snippet.isMissingNode()) {
+            return;
+        }
+        video.setTitle(snippet.path("title").asText(null));
+        video.setDescription(snippet.path("description").asText(null));
+        video.setChannelId(snippet.path("channelId").asText(null));
+        video.setChannelTitle(snippet.path("channelTitle").asText(null));
+        video.setPublishedAt(snippet.path("publishedAt").asText(null));
+        String thumbnailUrl = extractThumbnailUrl(snippet);
+        if (thumbnailUrl != null) {
+            video.setThumbnailUrl(thumbnailUrl);
+        }
+    }
+
+    private static boolean snippetChanged(VideoMetadata current, JsonNode snippet) {
+        String thumbnailUrl = extractThumbnailUrl(snippet);
+        return !Objects.equals(snippet.path("title").asText(null), current.getTitle())
+            || !Objects.equals(snippet.path("description").asText(null), current.getDescription())
+            || !Objects.equals(snippet.path("channelId").asText(null), current.getChannelId())
+            || !Objects.equals(snippet.path("channelTitle").asText(null), current.getChannelTitle())
+            || !Objects.equals(snippet.path("publishedAt").asText(null), current.getPublishedAt())
+            || (thumbnailUrl != null && !thumbnailUrl.equals(current.getThumbnailUrl()));
+    }
+
+    /**
+     * URL della thumbnail migliore dello snippet (high, medium, default); null se assente
+     */
+    private static String extractThumbnailUrl(JsonNode snippet) {
+        JsonNode thumbnails = snippet.path("thumbnails");
+        for (String size : new String[] { "high", "medium", "default" }) {
+            if (thumbnails.has(size)) {
+                return thumbnails.path(size).path("url").asText(null);
+            }
+        }
+        return null;
+    }
+}
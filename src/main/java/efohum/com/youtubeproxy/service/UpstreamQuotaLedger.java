@@ -0,0 +1,84 @@
+package efohum.com.youtubeproxy.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import efohum.com.youtubeproxy.entity.QuotaUsage;
+import efohum.com.youtubeproxy.repository.QuotaUsageRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Registro nel database della quota spesa per giorno e per API key (tabella youtube_quota_usage).
+ *
+ * Ogni prenotazione di un blocco è un UPDATE condizionale: due istanze che usano lo stesso database non possono
+ * superare insieme il budget di una key, e dopo un riavvio la spesa del giorno riparte da quella registrata.
+ */
+@Component
+@RequiredArgsConstructor
+class UpstreamQuotaLedger {
+
+    // Le righe dei giorni precedenti servono solo per consultazione
+    private static final int RETENTION_DAYS = 7;
+
+    private final QuotaUsageRepository repository;
+
+    /**
+     * Spesa registrata nel giorno per ogni key (keyId → unità), creando le righe mancanti a 0
+     */
+    Map<String, Long> load(LocalDate day, Collection<String> keyIds) {
+        Map<String, Long> spent = new HashMap<>();
+        repository.findByUsageDay(day).forEach(usage -> spent.put(usage.getKeyId(), usage.getSpent()));
+        for (String keyId : keyIds) {
+            if (!spent.containsKey(keyId)) {
+                try {
+                    repository.save(new QuotaUsage(null, day, keyId, 0L));
+                } catch (DataIntegrityViolationException e) {
+                    // Creata nel frattempo da un'altra istanza: la spesa verrà letta alla prossima sincronizzazione
+                }
+                spent.put(keyId, 0L);
+            }
+        }
+        return spent;
+    }
+
+    /**
+     * Prenota units unità se la spesa della key non supera limit; false se un'altra istanza l'ha già consumata
+     * (o se la riga del giorno non esiste ancora)
+     */
+    boolean reserve(LocalDate day, String keyId, long units, long limit) {
+        return repository.reserve(day, keyId, units, limit) == 1;
+    }
+
+    void release(LocalDate day, String keyId, long units) {
+        repository.release(day, keyId, units);
+    }
+
+    void exhaust(LocalDate day, String keyId, long budget) {
+        repository.exhaust(day, keyId, budget);
+    }
+
+    void purgeBefore(LocalDate day) {
+        repository.deleteBefore(day.minusDays(RETENTION_DAYS));
+    }
+
+    /**
+     * Identificativo della key nel registro: SHA-256 esadecimale, la key in chiaro non viene salvata
+     */
+    static String keyId(String apiKey) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package efohum.com.youtubeproxy.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Contabilità della quota giornaliera delle API YouTube, consultata prima di ogni chiamata upstream.
+ *
+ * - search.list costa 100 unità, videos.list 1 unità (indipendentemente dal numero di ID)
+ * - Ogni API key (youtube.api.key + youtube.api.keys) ha il proprio budget giornaliero:
+ *   ogni chiamata usa la key con più quota residua
+ * - Sotto la soglia di riserva le search vengono rifiutate, così la quota residua resta ai video (costo 1)
+ * - Una key che riceve quotaExceeded resta ferma fino al reset, a mezzanotte del fuso di YouTube (America/Los_Angeles)
+ *
+ * Una chiamata rifiutata non fallisce: il servizio risponde dal database (dati scaduti o risposta ricostruita).
+ *
+ * La spesa è registrata nel database per giorno e per key (UpstreamQuotaLedger): all'avvio riparte da quella
+ * del giorno, quindi un riavvio non azzera la quota e più repliche che usano lo stesso database condividono
+ * un unico budget per key. Repliche con database separati (es. H2 su file locale) hanno ciascuna il proprio budget.
+ *
+ * Con il registro l'istanza non scrive a ogni chiamata: prenota dal database blocchi di youtube.quota.lease-units
+ * unità (UPDATE condizionale) e li consuma in memoria. Le chiamate al database avvengono fuori dal lock,
+ * quindi una prenotazione in corso su una key non ferma le chiamate servite dalle altre key o dal blocco già
+ * prenotato. Le unità prenotate e non usate risultano spese per le altre istanze e vengono restituite
+ * allo spegnimento. Se il database non risponde il blocco viene concesso con la sola contabilità in memoria.
+ */
+@Component
+@Slf4j
+public class UpstreamQuotaScheduler {
+
+    public enum Operation {
+        SEARCH(100),
+        VIDEOS(1);
+
+        private final int cost;
+
+        Operation(int cost) {
+            this.cost = cost;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+    }
+
+    static final long DEFAULT_LEASE_UNITS = 200;
+
+    // Attesa massima di una prenotazione in corso sulla stessa key prima di riprovare
+    private static final long LEASE_WAIT_MS = 1000;
+
+    private final long dailyBudget;
+    private final long searchReserve;
+    private final long leaseUnits;
+    private final ZoneId resetZone;
+    private final Clock clock;
+    private final UpstreamQuotaLedger ledger; // null: contabilità solo in memoria
+
+    private LocalDate day;
+    private LocalDate purgedDay;
+    private final Map<String, KeyQuota> keys = new LinkedHashMap<>();
+    private final Map<Operation, Long> refused = new HashMap<>();
+
+    @Autowired
+    public UpstreamQuotaScheduler(
+            @Value("${youtube.api.key:}") String apiKey,
+            @Value("${youtube.api.keys:}") String apiKeys,
+            @Value("${youtube.quota.daily-budget:10000}") long dailyBudget,
+            @Value("${youtube.quota.search-reserve-percent:20}") int searchReservePercent,
+            @Value("${youtube.quota.reset-zone:America/Los_Angeles}") String resetZone,
+            @Value("${youtube.quota.lease-units:200}") long leaseUnits,
+            UpstreamQuotaLedger ledger) {
+        this(parseKeys(apiKey, apiKeys), dailyBudget, searchReservePercent, ZoneId.of(resetZone), Clock.systemUTC(),
+                ledger, leaseUnits);
+    }
+
+    /**
+     * Contabilità solo in memoria
+     */
+    UpstreamQuotaScheduler(String apiKey, String apiKeys, long dailyBudget, int searchReservePercent,
+            String resetZone) {
+        this(parseKeys(apiKey, apiKeys), dailyBudget, searchReservePercent, ZoneId.of(resetZone), Clock.systemUTC(),
+                null, DEFAULT_LEASE_UNITS);
+    }
+
+    UpstreamQuotaScheduler(List<String> apiKeys, long dailyBudget, int searchReservePercent, ZoneId resetZone, Clock clock) {
+        this(apiKeys, dailyBudget, searchReservePercent, resetZone, clock, null, DEFAULT_LEASE_UNITS);
+    }
+
+    UpstreamQuotaScheduler(List<String> apiKeys, long dailyBudget, int searchReservePercent, ZoneId resetZone, Clock clock,
+            UpstreamQuotaLedger ledger, long leaseUnits) {
+        this.dailyBudget = dailyBudget;
+        this.searchReserve = dailyBudget * searchReservePercent / 100;
+        this.leaseUnits = Math.max(1, leaseUnits);
+        this.resetZone = resetZone;
+        this.clock = clock;
+        this.ledger = ledger;
+        this.day = LocalDate.now(clock.withZone(resetZone));
+        apiKeys.forEach(key -> keys.put(key, new KeyQuota(ledger == null ? null : UpstreamQuotaLedger.keyId(key))));
+        synchronizeLedger();
+        log.info("Quota YouTube: {} API key, budget giornaliero={} unità per key, riserva per i video={} unità, reset a mezzanotte {}",
+                keys.size(), dailyBudget, searchReserve, resetZone);
+        if (ledger != null && !keys.isEmpty()) {
+            log.info("Quota YouTube già spesa oggi ({}): {} unità", day, keys.values().stream().mapToLong(KeyQuota::spent).sum());
+        }
+    }
+
+    private static List<String> parseKeys(String apiKey, String apiKeys) {
+        return Stream.concat(Stream.of(apiKey), Arrays.stream(apiKeys.split(",")))
+                .map(String::trim)
+                .filter(key -> !key.isEmpty() && !key.startsWith("${"))
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    public boolean hasKeys() {
+        return !keys.isEmpty();
+    }
+
+    /**
+     * Riserva la quota per una chiamata sulla key con più quota residua; null se la chiamata non va fatta.
+     * La scelta della key avviene sotto il lock, l'eventuale prenotazione di un nuovo blocco fuori
+     */
+    public String acquire(Operation operation) {
+        // Per ogni key al massimo un rifiuto del registro (con rilettura) e una prenotazione riuscita
+        int rounds = 2 * keys.size() + 1;
+        for (int round = 0; round < rounds; round++) {
+            Step step = nextStep(operation);
+            if (step.lease == null) {
+                return step.key;
+            }
+            completeLease(step.lease);
+        }
+        return refuse(operation);
+    }
+
+    /**
+     * Consuma la quota in memoria se possibile, altrimenti indica il blocco da prenotare.
+     * Una key con una prenotazione già in corso viene saltata; se è l'unica possibile si attende il suo esito
+     */
+    private synchronized Step nextStep(Operation operation) {
+        while (true) {
+            rollOver();
+            long ceiling = ceiling(operation);
+            List<Map.Entry<String, KeyQuota>> candidates = new ArrayList<>(keys.entrySet());
+            candidates.sort(Map.Entry.comparingByValue(Comparator.comparingLong(KeyQuota::spent)));
+            boolean leasing = false;
+            for (Map.Entry<String, KeyQuota> entry : candidates) {
+                KeyQuota quota = entry.getValue();
+                if (ceiling - quota.spent() < operation.getCost()) {
+                    continue;
+                }
+                if (ledger == null || quota.leased >= operation.getCost()) {
+                    quota.consume(operation, ledger != null);
+                    return new Step(entry.getKey(), null);
+                }
+                if (quota.leasing) {
+                    leasing = true;
+                    continue;
+                }
+                // Blocco intero se c'è margine, altrimenti solo quanto manca per questa chiamata
+                long units = Math.max(operation.getCost() - quota.leased, Math.min(leaseUnits, ceiling - quota.reserved));
+                quota.leasing = true;
+                return new Step(null, new Lease(entry.getKey(), quota, day, units, ceiling - units));
+            }
+            if (!leasing) {
+                return new Step(refuse(operation), null);
+            }
+            try {
+                wait(LEASE_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Step(refuse(operation), null);
+            }
+        }
+    }
+
+    /**
+     * Prenota il blocco nel registro (fuori dal lock); se un'altra istanza ha già consumato la quota
+     * rilegge la spesa di tutte le key
+     */
+    private void completeLease(Lease lease) {
+        Boolean granted;
+        try {
+            granted = ledger.reserve(lease.day, lease.quota.id, lease.units, lease.limit);
+        } catch (DataAccessException e) {
+            log.warn("Registro della quota non disponibile, blocco concesso in memoria: {}", e.getMessage());
+            granted = null;
+        }
+        Map<String, Long> stored = Boolean.FALSE.equals(granted) ? loadLedger(lease.day) : null;
+        synchronized (this) {
+            lease.quota.leasing = false;
+            // Dopo il reset di mezzanotte la key ha un nuovo KeyQuota: il blocco del giorno prima non vale più
+            if (keys.get(lease.key) == lease.quota) {
+                if (!Boolean.FALSE.equals(granted)) {
+                    lease.quota.reserved += lease.units;
+                    lease.quota.leased += lease.units;
+                } else if (stored != null) {
+                    merge(stored);
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    private synchronized String refuse(Operation operation) {
+        refused.merge(operation, 1L, Long::sum);
+        log.warn("Quota YouTube insufficiente per {}: residuo {} unità su {}", operation, remaining(), dailyBudget * keys.size());
+        return null;
+    }
+
+    /**
+     * Spesa massima della key dopo la chiamata: le search devono lasciare la riserva ai video
+     */
+    private long ceiling(Operation operation) {
+        return operation == Operation.SEARCH ? dailyBudget - searchReserve : dailyBudget;
+    }
+
+    /**
+     * Allinea la spesa in memoria a quella registrata nel database (che include le altre istanze);
+     * la lettura avviene fuori dal lock
+     */
+    private void synchronizeLedger() {
+        if (ledger == null || keys.isEmpty()) {
+            return;
+        }
+        LocalDate current;
+        synchronized (this) {
+            current = day;
+        }
+        Map<String, Long> stored = loadLedger(current);
+        if (stored != null) {
+            synchronized (this) {
+                if (current.equals(day)) {
+                    merge(stored);
+                }
+            }
+        }
+    }
+
+    /**
+     * Spesa registrata nel giorno (keyId → unità), eliminando una volta al giorno le righe vecchie; null se il
+     * database non risponde
+     */
+    private Map<String, Long> loadLedger(LocalDate current) {
+        try {
+            Map<String, Long> stored = ledger.load(current, keys.values().stream().map(quota -> quota.id).collect(Collectors.toList()));
+            if (!current.equals(purgedDay)) {
+                ledger.purgeBefore(current);
+                purgedDay = current;
+            }
+            return stored;
+        } catch (DataAccessException e) {
+            log.warn("Registro della quota non disponibile, uso la spesa in memoria: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void merge(Map<String, Long> stored) {
+        keys.values().forEach(quota -> quota.reserved = Math.max(quota.reserved, stored.getOrDefault(quota.id, 0L)));
+    }
+
+    /**
+     * YouTube ha risposto quotaExceeded per questa key: resta ferma fino al prossimo reset
+     */
+    public void markExhausted(String apiKey) {
+        KeyQuota quota;
+        LocalDate current;
+        synchronized (this) {
+            rollOver();
+            quota = keys.get(apiKey);
+            if (quota == null) {
+                return;
+            }
+            quota.reserved = Math.max(quota.reserved, dailyBudget);
+            quota.leased = 0;
+            quota.quotaExceeded++;
+            current = day;
+        }
+        if (ledger != null) {
+            try {
+                ledger.exhaust(current, quota.id, dailyBudget);
+            } catch (DataAccessException e) {
+                log.warn("Registro della quota non disponibile: {}", e.getMessage());
+            }
+        }
+        log.warn("Quota esaurita per la API key {}, ferma fino a {}", mask(apiKey), nextReset());
+    }
+
+    /**
+     * Restituisce al registro le unità prenotate e non usate, così restano disponibili alle altre istanze
+     */
+    @PreDestroy
+    public void releaseLeases() {
+        if (ledger == null) {
+            return;
+        }
+        Map<String, Long> unused = new HashMap<>();
+        LocalDate current;
+        synchronized (this) {
+            current = day;
+            keys.values().stream().filter(quota -> quota.leased > 0).forEach(quota -> {
+                unused.put(quota.id, quota.leased);
+                quota.reserved -= quota.leased;
+                quota.leased = 0;
+            });
+        }
+        try {
+            unused.forEach((keyId, units) -> ledger.release(current, keyId, units));
+        } catch (DataAccessException e) {
+            log.warn("Quota prenotata non restituita al registro: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        synchronizeLedger();
+        synchronized (this) {
+            return statistics();
+        }
+    }
+
+    private Map<String, Object> statistics() {
+        rollOver();
+        long spent = keys.values().stream().mapToLong(KeyQuota::spent).sum();
+        List<Map<String, Object>> perKey = new ArrayList<>();
+        keys.forEach((key, quota) -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("key", mask(key));
+            stats.put("spent", quota.spent());
+            stats.put("remaining", Math.max(0, dailyBudget - quota.spent()));
+            stats.put("leased", quota.leased);
+            stats.put("searchCalls", quota.calls.getOrDefault(Operation.SEARCH, 0L));
+            stats.put("videosCalls", quota.calls.getOrDefault(Operation.VIDEOS, 0L));
+            stats.put("quotaExceeded", quota.quotaExceeded);
+            perKey.add(stats);
+        });
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("dailyBudget", dailyBudget * keys.size());
+        result.put("spent", spent);
+        result.put("remaining", remaining());
+        result.put("searchReserve", searchReserve);
+        result.put("searchCalls", totalCalls(Operation.SEARCH));
+        result.put("videosCalls", totalCalls(Operation.VIDEOS));
+        result.put("refusedSearches", refused.getOrDefault(Operation.SEARCH, 0L));
+        result.put("refusedVideos", refused.getOrDefault(Operation.VIDEOS, 0L));
+        result.put("resetAt", nextReset().toString());
+        result.put("shared", ledger != null);
+        result.put("keys", perKey);
+        return result;
+    }
+
+    private long remaining() {
+        return keys.values().stream().mapToLong(quota -> Math.max(0, dailyBudget - quota.spent())).sum();
+    }
+
+    private long totalCalls(Operation operation) {
+        return keys.values().stream().mapToLong(quota -> quota.calls.getOrDefault(operation, 0L)).sum();
+    }
+
+    private void rollOver() {
+        LocalDate today = LocalDate.now(clock.withZone(resetZone));
+        if (!today.equals(day)) {
+            log.info("Nuovo giorno di quota YouTube ({}): spese {} unità il {}",
+                    today, keys.values().stream().mapToLong(KeyQuota::spent).sum(), day);
+            day = today;
+            keys.replaceAll((key, quota) -> new KeyQuota(quota.id));
+            refused.clear();
+            // La riga del nuovo giorno viene creata al primo rifiuto del registro, fuori dal lock
+        }
+    }
+
+    private Instant nextReset() {
+        return day.plusDays(1).atStartOfDay(resetZone).toInstant();
+    }
+
+    private static String mask(String apiKey) {
+        return apiKey.length() <= 6 ? "***" : apiKey.substring(0, 6) + "***";
+    }
+
+    private static class KeyQuota {
+        private final String id; // identificativo nel registro (SHA-256 della key)
+        private long reserved; // spesa nota della key, comprese le unità prenotate da questa istanza
+        private long leased; // unità prenotate nel registro e non ancora usate
+        private boolean leasing; // prenotazione nel registro in corso
+        private long quotaExceeded;
+        private final Map<Operation, Long> calls = new HashMap<>();
+
+        private KeyQuota(String id) {
+            this.id = id;
+        }
+
+        private long spent() {
+            return reserved - leased;
+        }
+
+        private void consume(Operation operation, boolean fromLease) {
+            if (fromLease) {
+                leased -= operation.getCost();
+            } else {
+                reserved += operation.getCost();
+            }
+            calls.merge(operation, 1L, Long::sum);
+        }
+    }
+
+    private record Step(String key, Lease lease) {
+    }
+
+    private record Lease(String key, KeyQuota quota, LocalDate day, long units, long limit) {
+    }
+}
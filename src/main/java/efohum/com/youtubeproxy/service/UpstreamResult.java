@@ -0,0 +1,23 @@
+package efohum.com.youtubeproxy.service;
+
+/**
+ * Esito di una chiamata a YouTube:
+ *
+ * - Body: risposta 200 con il JSON da salvare
+ * - NotModified: 304 alla richiesta condizionale, la risposta salvata è ancora valida
+ * - NoQuota: nessuna API key con quota sufficiente, la chiamata non è stata fatta
+ */
+sealed interface UpstreamResult {
+
+    UpstreamResult NOT_MODIFIED = new NotModified();
+    UpstreamResult NO_QUOTA = new NoQuota();
+
+    record Body(String json) implements UpstreamResult {
+    }
+
+    record NotModified() implements UpstreamResult {
+    }
+
+    record NoQuota() implements UpstreamResult {
+    }
+}
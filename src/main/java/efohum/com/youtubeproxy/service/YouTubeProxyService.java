@@ -2,26 +2,50 @@ package efohum.com.youtubeproxy.service;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import efohum.com.youtubeproxy.cache.BackgroundRefresher;
+import efohum.com.youtubeproxy.cache.CachedPayload;
+import efohum.com.youtubeproxy.cache.LocalResponseCache;
+import efohum.com.youtubeproxy.cache.RedisResponseCache;
+import efohum.com.youtubeproxy.cache.SingleFlight;
 import efohum.com.youtubeproxy.entity.CachedSearchResult;
 import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.WriteBehindQueue;
 import efohum.com.youtubeproxy.repository.CachedSearchResultRepository;
 import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoMetadata;
+import efohum.com.youtubeproxy.search.VideoSearchCriteria;
+import efohum.com.youtubeproxy.search.VideoSearchCursor;
+import efohum.com.youtubeproxy.search.VideoSearchIndex;
+import efohum.com.youtubeproxy.service.UpstreamQuotaScheduler.Operation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Service
 @RequiredArgsConstructor
@@ -30,18 +54,30 @@ public class YouTubeProxyService {
     
     private final CachedSearchResultRepository searchResultRepository;
     private final CachedVideoRepository videoRepository;
-    private final WebClient.Builder webClientBuilder;
+    private final LocalResponseCache localCache;
+    private final RedisResponseCache sharedCache;
+    private final BackgroundRefresher backgroundRefresher;
+    private final UpstreamQuotaScheduler quotaScheduler;
+    private final WriteBehindQueue writeBehindQueue;
+    private final CachedEntityWriter cachedEntityWriter;
+    private final VideoSearchIndex videoSearchIndex;
+    private final WebClient youtubeWebClient;
     private final ObjectMapper objectMapper;
     
-    @Value("${youtube.api.key}")
-    private String apiKey;
+    // Coalescing dei MISS concorrenti: una sola chiamata upstream e una sola scrittura per chiave
+    private final SingleFlight<String> searchFlights = new SingleFlight<>();
+    private final SingleFlight<String> videoFlights = new SingleFlight<>();
     
-    @Value("${youtube.api.base-url}")
-    private String baseUrl;
+    // Limite di ID per singola chiamata videos.list
+    private static final int MAX_IDS_PER_VIDEOS_CALL = 50;
     
     @Value("${api.youtube.proxyonly:false}")
     private boolean proxyOnlyMode;
     
+    // Oltre expiresAt (soft TTL) la risposta viene ancora servita per questo tempo mentre si aggiorna in background
+    @Value("${cache.stale-while-revalidate-seconds:21600}")
+    private long staleWhileRevalidateSeconds;
+    
     /**
      * Verifica se la chiave API è configurata e il proxy-only mode è disabilitato
      */
@@ -51,7 +87,7 @@ public class YouTubeProxyService {
             log.debug("Proxy-only mode attivo: uso solo cache/database");
             return false;
         }
-        return apiKey != null && !apiKey.isEmpty() && !apiKey.equals("${YOUTUBE_API_KEY}");
+        return quotaScheduler.hasKeys();
     }
     
     /**
@@ -61,143 +97,770 @@ public class YouTubeProxyService {
         // Genera chiave univoca per la query
         String queryKey = generateQueryKey(params);
         
+        // Pagina successiva di una risposta ricostruita: YouTube non conosce il token, si legge dall'indice
+        if (VideoSearchCursor.isPageToken(params.get("pageToken"))) {
+            return serveSearchFromDatabase(queryKey, params, Optional.empty());
+        }
+        
+        // Cerca nella cache L1 in memoria (nessun accesso al DB)
+        Optional<CachedPayload> local = localCache.getSearch(queryKey);
+        if (local.isPresent()) {
+            if (local.get().isExpired()) {
+                log.debug("Cache L1 STALE per search query: {}", queryKey);
+                scheduleSearchRefresh(queryKey, params);
+            } else {
+                log.debug("Cache L1 HIT per search query: {}", queryKey);
+            }
+            return local.get().getJson();
+        }
+        
+        // Le richieste concorrenti per la stessa query attendono il primo caricamento
+        return searchFlights.execute(queryKey, () -> loadSearch(queryKey, params));
+    }
+    
+    /**
+     * Risposta search presente nella cache L1 (con la forma gzip già calcolata), senza contarla come accesso
+     */
+    public Optional<CachedPayload> peekCachedSearch(Map<String, String> params) {
+        return localCache.peekSearch(generateQueryKey(params));
+    }
+    
+    /**
+     * Carica una ricerca da Redis, dal DB o dall'API di YouTube (eseguito una sola volta per queryKey)
+     */
+    private String loadSearch(String queryKey, Map<String, String> params) {
+        // Cerca nella cache L2 condivisa tra le repliche (Redis)
+        Optional<CachedPayload> shared = sharedCache.getSearch(queryKey);
+        if (shared.isPresent()) {
+            return serveSharedSearch(queryKey, params, shared.get());
+        }
+        
         // Cerca nel DB
         Optional<CachedSearchResult> cached = searchResultRepository.findByQueryKey(queryKey);
+        String stored = serveStoredSearch(queryKey, params, cached);
+        if (stored != null) {
+            return stored;
+        }
+        
+        // Se non trovato o scaduto oltre la finestra stale, chiama l'API di YouTube
+        log.info("Cache MISS per search query: {}, chiamata API YouTube", queryKey);
+        return fetchAndStoreSearch(queryKey, params, cached);
+    }
+    
+    /**
+     * Versione non bloccante di searchVideos (modalità reattiva): Redis e YouTube vengono composti
+     * senza bloccare il thread della richiesta, gli accessi JPA girano sullo scheduler boundedElastic
+     */
+    public Mono<String> searchVideosReactive(Map<String, String> params) {
+        String queryKey = generateQueryKey(params);
+        
+        if (VideoSearchCursor.isPageToken(params.get("pageToken"))) {
+            return Mono.fromCallable(() -> serveSearchFromDatabase(queryKey, params, Optional.empty()))
+                .subscribeOn(Schedulers.boundedElastic());
+        }
+        
+        Optional<CachedPayload> local = localCache.getSearch(queryKey);
+        if (local.isPresent()) {
+            if (local.get().isExpired()) {
+                scheduleSearchRefresh(queryKey, params);
+            }
+            return Mono.just(local.get().getJson());
+        }
+        
+        // suppressCancel: un client che si disconnette non annulla il caricamento condiviso
+        return Mono.fromFuture(() -> searchFlights.executeAsync(queryKey,
+            () -> loadSearchReactive(queryKey, params).toFuture()), true);
+    }
+    
+    private Mono<String> loadSearchReactive(String queryKey, Map<String, String> params) {
+        return sharedCache.getSearchAsync(queryKey)
+            .map(shared -> serveSharedSearch(queryKey, params, shared))
+            .switchIfEmpty(Mono.fromCallable(() -> searchResultRepository.findByQueryKey(queryKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(cached -> {
+                    String stored = serveStoredSearch(queryKey, params, cached);
+                    if (stored != null) {
+                        return Mono.just(stored);
+                    }
+                    log.info("Cache MISS per search query: {}, chiamata API YouTube", queryKey);
+                    String etag = searchRevalidationEtag(cached);
+                    return callUpstreamReactive(Operation.SEARCH, key -> upstreamGet(searchRequest(params, key), etag))
+                        .publishOn(Schedulers.boundedElastic())
+                        .map(result -> applySearchResult(queryKey, params, cached, result));
+                }));
+    }
+    
+    /**
+     * HIT sulla cache Redis: popola la cache L1 e pianifica il refresh se la risposta è stale
+     */
+    private String serveSharedSearch(String queryKey, Map<String, String> params, CachedPayload shared) {
+        log.info("Cache Redis HIT per search query: {}", queryKey);
+        localCache.putSearch(queryKey, shared);
+        if (shared.isExpired()) {
+            scheduleSearchRefresh(queryKey, params);
+        }
+        return shared.getJson();
+    }
+    
+    /**
+     * Risposta servibile dal DB (fresca, stale entro la finestra o modalità solo database);
+     * null se serve una chiamata a YouTube
+     */
+    private String serveStoredSearch(String queryKey, Map<String, String> params, Optional<CachedSearchResult> cached) {
         if (cached.isPresent() && !cached.get().isExpired()) {
             log.info("Cache HIT per search query: {}", queryKey);
+            CachedPayload payload = CachedPayload.of(cached.get());
+            localCache.putSearch(queryKey, payload);
+            sharedCache.putSearch(queryKey, payload);
+            return cached.get().getResponseJson();
+        }
+        
+        // Scaduta ma entro la finestra stale-while-revalidate: rispondi subito e aggiorna in background
+        if (cached.isPresent() && isApiKeyConfigured() && isServableStale(CachedPayload.of(cached.get()))) {
+            log.info("Cache STALE per search query: {}, refresh in background", queryKey);
+            CachedPayload payload = CachedPayload.of(cached.get());
+            localCache.putSearch(queryKey, payload);
+            sharedCache.putSearch(queryKey, payload);
+            scheduleSearchRefresh(queryKey, params);
             return cached.get().getResponseJson();
         }
         
         // Se la chiave API non è configurata, usa solo il database
         if (!isApiKeyConfigured()) {
             log.warn("API key non configurata. Modalità solo database attiva.");
-            if (cached.isPresent()) {
-                log.info("Restituisco dati scaduti dalla cache per query: {}", queryKey);
-                return cached.get().getResponseJson();
-            }
-            
-            // Prova a ricostruire una risposta parziale dai video salvati nel DB
-            log.info("Tentativo di ricostruzione risposta dai video nel database per query: {}", queryKey);
-            String reconstructedResponse = reconstructSearchResponse(params, cached.orElse(null));
-            if (reconstructedResponse != null) {
-                log.info("Risposta ricostruita con successo da {} video nel database", 
-                    countVideosInResponse(reconstructedResponse));
-                return reconstructedResponse;
-            }
-            
-            // Se non ci sono dati, restituisci una risposta vuota valida invece di errore
-            log.warn("Nessun dato disponibile nel database per query: {}. Restituisco risposta vuota.", queryKey);
-            return createEmptySearchResponse();
+            return serveSearchFromDatabase(queryKey, params, cached);
         }
         
-        // Se non trovato o scaduto, chiama l'API di YouTube
-        log.info("Cache MISS per search query: {}, chiamata API YouTube", queryKey);
-        String response = callYouTubeSearchApi(params);
+        return null;
+    }
+    
+    /**
+     * Risposta senza chiamare YouTube (API key assente o quota esaurita):
+     * dati scaduti, risposta ricostruita dai video nel DB o risposta vuota
+     */
+    private String serveSearchFromDatabase(String queryKey, Map<String, String> params, Optional<CachedSearchResult> cached) {
+        if (cached.isPresent()) {
+            log.info("Restituisco dati scaduti dalla cache per query: {}", queryKey);
+            return cached.get().getResponseJson();
+        }
         
-        // Salva nel DB
+        // Prova a ricostruire una risposta parziale dai video salvati nel DB
+        log.info("Tentativo di ricostruzione risposta dai video nel database per query: {}", queryKey);
+        String reconstructedResponse = reconstructSearchResponse(params, cached.orElse(null));
+        if (reconstructedResponse != null) {
+            log.info("Risposta ricostruita con successo da {} video nel database", 
+                countVideosInResponse(reconstructedResponse));
+            return reconstructedResponse;
+        }
+        
+        // Se non ci sono dati, restituisci una risposta vuota valida invece di errore
+        log.warn("Nessun dato disponibile nel database per query: {}. Restituisco risposta vuota.", queryKey);
+        return createEmptySearchResponse();
+    }
+    
+    /**
+     * Chiama l'API search.list e salva la risposta nel DB e nelle cache.
+     * Con una risposta già salvata invia il suo etag: se YouTube risponde 304 viene estesa solo la scadenza.
+     * Senza quota sufficiente (o se YouTube risponde quotaExceeded) risponde dal database
+     */
+    private String fetchAndStoreSearch(String queryKey, Map<String, String> params, Optional<CachedSearchResult> cached) {
+        String etag = searchRevalidationEtag(cached);
+        UpstreamResult result = callUpstream(Operation.SEARCH, key -> upstreamGet(searchRequest(params, key), etag));
+        return applySearchResult(queryKey, params, cached, result);
+    }
+    
+    /**
+     * Nuova risposta salvata, risposta salvata revalidata (304) o, senza quota, risposta dal database
+     */
+    private String applySearchResult(String queryKey, Map<String, String> params, Optional<CachedSearchResult> cached,
+            UpstreamResult result) {
+        if (result instanceof UpstreamResult.Body body) {
+            return storeSearch(queryKey, params, body.json());
+        }
+        if (result instanceof UpstreamResult.NotModified) {
+            return revalidateSearch(queryKey, cached.get());
+        }
+        return serveSearchFromDatabase(queryKey, params, cached);
+    }
+    
+    /**
+     * etag da inviare come If-None-Match: solo se c'è una risposta salvata da servire in caso di 304
+     */
+    private static String searchRevalidationEtag(Optional<CachedSearchResult> cached) {
+        return cached.filter(result -> result.getResponseJson() != null)
+            .map(CachedSearchResult::getUpstreamEtag)
+            .orElse(null);
+    }
+    
+    /**
+     * YouTube ha confermato la risposta salvata (304): nuova scadenza nelle cache e nel DB,
+     * senza rileggere il JSON né riscriverlo (UPDATE di expires_at e upstream_etag per queryKey)
+     */
+    private String revalidateSearch(String queryKey, CachedSearchResult cached) {
+        log.info("Search non modificata su YouTube (304) per query: {}, scadenza estesa", queryKey);
+        cached.revalidate();
+        CachedPayload payload = CachedPayload.of(cached);
+        localCache.putSearch(queryKey, payload);
+        sharedCache.putSearch(queryKey, payload);
+        writeBehindQueue.submit("search:" + queryKey, () -> cachedEntityWriter.revalidateSearch(cached));
+        return cached.getResponseJson();
+    }
+    
+    /**
+     * Aggiorna subito le cache con la risposta search.list e accoda il salvataggio nel DB (write-behind)
+     */
+    private String storeSearch(String queryKey, Map<String, String> params, String response) {
         CachedSearchResult newCache = new CachedSearchResult();
         newCache.setQueryKey(queryKey);
         newCache.setResponseJson(response);
+        newCache.onCreate();
         
         // Estrai e salva metadati dalla risposta
         extractAndSaveSearchMetadata(response, params, newCache);
         
-        boolean isUpdate = cached.isPresent();
-        if (isUpdate) {
-            newCache.setId(cached.get().getId());
-            log.info("Aggiornamento cache search esistente: queryKey={}, query='{}'", 
-                queryKey, newCache.getQuery());
-        } else {
-            log.info("Nuova cache search: queryKey={}, query='{}', maxResults={}", 
-                queryKey, newCache.getQuery(), newCache.getMaxResults());
-        }
+        CachedPayload payload = CachedPayload.of(newCache);
+        localCache.putSearch(queryKey, payload);
+        sharedCache.putSearch(queryKey, payload);
         
-        searchResultRepository.save(newCache);
-        log.info("Cache search salvata con successo: id={}, query='{}', totalResults={}",
-            newCache.getId(), newCache.getQuery(), newCache.getTotalResults());
+        // Upsert per queryKey: l'id della riga esistente viene letto al momento della scrittura
+        writeBehindQueue.submit("search:" + queryKey, () -> cachedEntityWriter.upsertSearch(newCache));
         
-        // Estrai e salva i singoli video dalla risposta
-        extractAndSaveVideosFromSearch(response);
+        // Estrai e salva i singoli video dalla risposta (un solo saveAll per nuovi e modificati)
+        Map<String, JsonNode> videoItems = extractVideoItemsFromSearch(response);
+        if (!videoItems.isEmpty()) {
+            writeBehindQueue.submit("search-videos:" + queryKey, () -> cachedEntityWriter.upsertSearchVideos(videoItems));
+        }
         
         return response;
     }
     
+    /**
+     * Pianifica la rivalidazione in background di una ricerca scaduta (al massimo una per queryKey).
+     * Viene pianificata anche da dentro il caricamento in primo piano (loadSearch): il refresh non passa
+     * da searchFlights, altrimenti si accoderebbe a quel caricamento e riceverebbe la risposta stale
+     * senza chiamare YouTube. Il refresh unico per chiave lo garantisce già BackgroundRefresher
+     */
+    private void scheduleSearchRefresh(String queryKey, Map<String, String> params) {
+        if (!isApiKeyConfigured()) {
+            return;
+        }
+        Map<String, String> refreshParams = new HashMap<>(params);
+        backgroundRefresher.schedule("search:" + queryKey, () -> {
+            log.info("Refresh in background per search query: {}", queryKey);
+            fetchAndStoreSearch(queryKey, refreshParams, searchResultRepository.findByQueryKey(queryKey));
+        });
+    }
+    
     /**
      * Ottiene dettagli di un video con cache
      */
     public String getVideoDetails(String videoId, Map<String, String> params) {
+        // id=a,b,c: ogni video viene servito dalla propria cache e solo i mancanti vanno a YouTube
+        if (videoId != null && videoId.contains(",")) {
+            return getMultipleVideoDetails(parseVideoIds(videoId), params);
+        }
+        
+        // Cerca nella cache L1 in memoria (nessun accesso al DB)
+        Optional<CachedPayload> local = localCache.getVideo(videoId);
+        if (local.isPresent()) {
+            if (local.get().isExpired()) {
+                log.debug("Cache L1 STALE per video: {}", videoId);
+                scheduleVideoRefresh(videoId, params);
+            } else {
+                log.debug("Cache L1 HIT per video: {}", videoId);
+            }
+            return local.get().getJson();
+        }
+        
+        // Le richieste concorrenti per lo stesso video attendono il primo caricamento
+        return videoFlights.execute(videoId, () -> loadVideo(videoId, params));
+    }
+    
+    /**
+     * Risposta di un singolo video presente nella cache L1, senza contarla come accesso
+     */
+    public Optional<CachedPayload> peekCachedVideo(String videoId) {
+        if (videoId == null || videoId.contains(",")) {
+            return Optional.empty();
+        }
+        return localCache.peekVideo(videoId);
+    }
+    
+    /**
+     * Carica un video da Redis, dal DB o dall'API di YouTube (eseguito una sola volta per videoId)
+     */
+    private String loadVideo(String videoId, Map<String, String> params) {
+        // Cerca nella cache L2 condivisa tra le repliche (Redis)
+        Optional<CachedPayload> shared = sharedCache.getVideo(videoId);
+        if (shared.isPresent()) {
+            return serveSharedVideo(videoId, params, shared.get());
+        }
+        
         // Cerca nel DB
         Optional<CachedVideo> cached = videoRepository.findByVideoId(videoId);
+        String stored = serveStoredVideo(videoId, params, cached);
+        if (stored != null) {
+            return stored;
+        }
+        
+        // Se non trovato o scaduto oltre la finestra stale, chiama l'API di YouTube
+        log.info("Cache MISS per video: {}, chiamata API YouTube", videoId);
+        return fetchAndStoreVideo(videoId, params, cached);
+    }
+    
+    /**
+     * Versione non bloccante di getVideoDetails (modalità reattiva).
+     * Le richieste multi-ID, che combinano più letture JPA, girano interamente sullo scheduler boundedElastic
+     */
+    public Mono<String> getVideoDetailsReactive(String videoId, Map<String, String> params) {
+        if (videoId != null && videoId.contains(",")) {
+            return Mono.fromCallable(() -> getMultipleVideoDetails(parseVideoIds(videoId), params))
+                .subscribeOn(Schedulers.boundedElastic());
+        }
+        
+        Optional<CachedPayload> local = localCache.getVideo(videoId);
+        if (local.isPresent()) {
+            if (local.get().isExpired()) {
+                scheduleVideoRefresh(videoId, params);
+            }
+            return Mono.just(local.get().getJson());
+        }
+        
+        return Mono.fromFuture(() -> videoFlights.executeAsync(videoId,
+            () -> loadVideoReactive(videoId, params).toFuture()), true);
+    }
+    
+    private Mono<String> loadVideoReactive(String videoId, Map<String, String> params) {
+        return sharedCache.getVideoAsync(videoId)
+            .map(shared -> serveSharedVideo(videoId, params, shared))
+            .switchIfEmpty(Mono.fromCallable(() -> videoRepository.findByVideoId(videoId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(cached -> {
+                    String stored = serveStoredVideo(videoId, params, cached);
+                    if (stored != null) {
+                        return Mono.just(stored);
+                    }
+                    log.info("Cache MISS per video: {}, chiamata API YouTube", videoId);
+                    String etag = videoRevalidationEtag(cached);
+                    return callUpstreamReactive(Operation.VIDEOS, key -> upstreamGet(videosRequest(videoId, params, key), etag))
+                        .publishOn(Schedulers.boundedElastic())
+                        .map(result -> applyVideoResult(videoId, cached, result));
+                }));
+    }
+    
+    /**
+     * HIT sulla cache Redis: popola la cache L1 e pianifica il refresh se la risposta è stale
+     */
+    private String serveSharedVideo(String videoId, Map<String, String> params, CachedPayload shared) {
+        log.info("Cache Redis HIT per video: {}", videoId);
+        localCache.putVideo(videoId, shared);
+        if (shared.isExpired()) {
+            scheduleVideoRefresh(videoId, params);
+        }
+        return shared.getJson();
+    }
+    
+    /**
+     * Risposta servibile dal DB (fresca, stale entro la finestra o modalità solo database);
+     * null se serve una chiamata a YouTube
+     */
+    private String serveStoredVideo(String videoId, Map<String, String> params, Optional<CachedVideo> cached) {
         if (cached.isPresent() && !cached.get().isExpired()) {
             log.info("Cache HIT per video: {}", videoId);
+            CachedPayload payload = CachedPayload.of(cached.get());
+            localCache.putVideo(videoId, payload);
+            sharedCache.putVideo(videoId, payload);
+            return cached.get().getResponseJson();
+        }
+        
+        // Scaduto ma entro la finestra stale-while-revalidate: rispondi subito e aggiorna in background
+        if (cached.isPresent() && isApiKeyConfigured() && isServableStale(CachedPayload.of(cached.get()))) {
+            log.info("Cache STALE per video: {}, refresh in background", videoId);
+            CachedPayload payload = CachedPayload.of(cached.get());
+            localCache.putVideo(videoId, payload);
+            sharedCache.putVideo(videoId, payload);
+            scheduleVideoRefresh(videoId, params);
             return cached.get().getResponseJson();
         }
         
         // Se la chiave API non è configurata, usa solo il database
         if (!isApiKeyConfigured()) {
             log.warn("API key non configurata. Modalità solo database attiva.");
-            if (cached.isPresent()) {
-                log.info("Restituisco dati scaduti dalla cache per video: {}", videoId);
-                return cached.get().getResponseJson();
-            }
-            log.warn("Video {} non disponibile nel database. Restituisco risposta vuota.", videoId);
-            return createEmptyVideoResponse();
+            return serveVideoFromDatabase(videoId, cached);
         }
         
-        // Se non trovato o scaduto, chiama l'API di YouTube
-        log.info("Cache MISS per video: {}, chiamata API YouTube", videoId);
-        String response = callYouTubeVideosApi(videoId, params);
-        
-        // Salva nel DB
+        return null;
+    }
+    
+    /**
+     * Risposta senza chiamare YouTube (API key assente o quota esaurita): dati scaduti o risposta vuota
+     */
+    private String serveVideoFromDatabase(String videoId, Optional<CachedVideo> cached) {
+        if (cached.isPresent() && cached.get().getResponseJson() != null) {
+            log.info("Restituisco dati scaduti dalla cache per video: {}", videoId);
+            return cached.get().getResponseJson();
+        }
+        log.warn("Video {} non disponibile nel database. Restituisco risposta vuota.", videoId);
+        return createEmptyVideoResponse();
+    }
+    
+    /**
+     * Chiama l'API videos e salva la risposta nel DB e nelle cache; con una risposta già salvata
+     * invia il suo etag e con 304 estende solo la scadenza
+     */
+    private String fetchAndStoreVideo(String videoId, Map<String, String> params, Optional<CachedVideo> cached) {
+        String etag = videoRevalidationEtag(cached);
+        UpstreamResult result = callUpstream(Operation.VIDEOS, key -> upstreamGet(videosRequest(videoId, params, key), etag));
+        return applyVideoResult(videoId, cached, result);
+    }
+    
+    /**
+     * Nuovo video salvato, video salvato revalidato (304) o, senza quota, risposta dal database
+     */
+    private String applyVideoResult(String videoId, Optional<CachedVideo> cached, UpstreamResult result) {
+        if (result instanceof UpstreamResult.Body body) {
+            return storeVideo(videoId, body.json());
+        }
+        if (result instanceof UpstreamResult.NotModified) {
+            return revalidateVideo(videoId, cached.get());
+        }
+        return serveVideoFromDatabase(videoId, cached);
+    }
+    
+    private static String videoRevalidationEtag(Optional<CachedVideo> cached) {
+        return cached.filter(video -> video.getResponseJson() != null)
+            .map(CachedVideo::getUpstreamEtag)
+            .orElse(null);
+    }
+    
+    /**
+     * YouTube ha confermato il video salvato (304): nuova scadenza nelle cache e nel DB
+     * (UPDATE di expires_at e upstream_etag per videoId)
+     */
+    private String revalidateVideo(String videoId, CachedVideo cached) {
+        log.info("Video non modificato su YouTube (304): {}, scadenza estesa", videoId);
+        cached.revalidate();
+        CachedPayload payload = CachedPayload.of(cached);
+        localCache.putVideo(videoId, payload);
+        sharedCache.putVideo(videoId, payload);
+        writeBehindQueue.submit("video:" + videoId, () -> cachedEntityWriter.revalidateVideo(cached));
+        return cached.getResponseJson();
+    }
+    
+    /**
+     * Aggiorna subito le cache con la risposta videos.list e accoda il salvataggio nel DB (write-behind)
+     */
+    private String storeVideo(String videoId, String response) {
         CachedVideo newCache = new CachedVideo();
         newCache.setVideoId(videoId);
         newCache.setResponseJson(response);
+        newCache.onCreate();
         // Estrai e salva le statistiche dal JSON
         extractVideoMetadata(response, newCache);
         
-        boolean isUpdate = cached.isPresent();
-        if (isUpdate) {
-            newCache.setId(cached.get().getId());
-            log.info("Aggiornamento cache video esistente: videoId={}, title='{}'", 
-                videoId, newCache.getTitle());
-        } else {
-            log.info("Nuova cache video: videoId={}, title='{}'", 
-                videoId, newCache.getTitle());
+        CachedPayload payload = CachedPayload.of(newCache);
+        localCache.putVideo(videoId, payload);
+        sharedCache.putVideo(videoId, payload);
+        submitVideoUpsert(newCache);
+        return response;
+    }
+    
+    /**
+     * Accoda l'upsert di un video per videoId: l'id della riga esistente viene letto al momento della scrittura
+     */
+    private void submitVideoUpsert(CachedVideo video) {
+        writeBehindQueue.submit("video:" + video.getVideoId(), () -> cachedEntityWriter.upsertVideo(video));
+    }
+    
+    /**
+     * Pianifica la rivalidazione in background di un video scaduto (al massimo una per videoId);
+     * come per la search il refresh non passa da videoFlights
+     */
+    private void scheduleVideoRefresh(String videoId, Map<String, String> params) {
+        if (!isApiKeyConfigured()) {
+            return;
         }
+        Map<String, String> refreshParams = new HashMap<>(params);
+        backgroundRefresher.schedule("video:" + videoId, () -> {
+            log.info("Refresh in background per video: {}", videoId);
+            fetchAndStoreVideo(videoId, refreshParams, videoRepository.findByVideoId(videoId));
+        });
+    }
+    
+    /**
+     * Ottiene i dettagli di più video: i video freschi (o stale entro la finestra) vengono presi dalla cache,
+     * i mancanti richiesti a YouTube con una sola chiamata videos.list ogni 50 ID (1 unità di quota ciascuna).
+     * La risposta combinata mantiene l'ordine degli ID richiesti.
+     */
+    private String getMultipleVideoDetails(List<String> videoIds, Map<String, String> params) {
+        Map<String, JsonNode> items = new HashMap<>();
+        List<String> missing = new ArrayList<>();
         
-        videoRepository.save(newCache);
-        log.info("Cache video salvata: id={}, videoId={}, title='{}', views={}, likes={}",
-            newCache.getId(), newCache.getVideoId(), newCache.getTitle(), 
-            newCache.getViewCount(), newCache.getLikeCount());
-        return response;
+        // Cache L1 per ogni ID, poi un unico MGET su Redis per quelli assenti in memoria
+        Map<String, CachedPayload> local = new HashMap<>();
+        for (String videoId : videoIds) {
+            localCache.getVideo(videoId).ifPresent(payload -> local.put(videoId, payload));
+        }
+        Map<String, CachedPayload> shared = sharedCache.getVideos(videoIds.stream()
+            .filter(videoId -> !local.containsKey(videoId))
+            .distinct()
+            .collect(Collectors.toList()));
+        shared.forEach(localCache::putVideo);
+        for (String videoId : videoIds) {
+            Optional<CachedPayload> payload = Optional.ofNullable(local.getOrDefault(videoId, shared.get(videoId)));
+            if (payload.isPresent() && addFirstItem(items, videoId, payload.get())) {
+                if (payload.get().isExpired()) {
+                    scheduleVideoRefresh(videoId, params);
+                }
+            } else {
+                missing.add(videoId);
+            }
+        }
+        
+        // Un'unica query IN sul DB per gli ID non presenti in memoria
+        Map<String, CachedVideo> stored = new HashMap<>();
+        if (!missing.isEmpty()) {
+            videoRepository.findByVideoIdIn(missing).forEach(video -> stored.put(video.getVideoId(), video));
+        }
+        List<String> toFetch = new ArrayList<>();
+        for (String videoId : missing) {
+            CachedVideo video = stored.get(videoId);
+            CachedPayload payload = video != null ? CachedPayload.of(video) : null;
+            boolean usable = payload != null && payload.getJson() != null
+                && (!payload.isExpired() || !isApiKeyConfigured() || isServableStale(payload));
+            if (usable && addFirstItem(items, videoId, payload)) {
+                localCache.putVideo(videoId, payload);
+                sharedCache.putVideo(videoId, payload);
+                if (payload.isExpired()) {
+                    scheduleVideoRefresh(videoId, params);
+                }
+            } else {
+                toFetch.add(videoId);
+            }
+        }
+        
+        log.info("Richiesta multi-video: {} ID, {} dalla cache, {} da YouTube",
+            videoIds.size(), videoIds.size() - toFetch.size(), toFetch.size());
+        
+        if (!toFetch.isEmpty()) {
+            if (isApiKeyConfigured()) {
+                for (int from = 0; from < toFetch.size(); from += MAX_IDS_PER_VIDEOS_CALL) {
+                    List<String> chunk = toFetch.subList(from, Math.min(from + MAX_IDS_PER_VIDEOS_CALL, toFetch.size()));
+                    items.putAll(fetchAndStoreVideos(chunk, params, stored));
+                }
+            } else {
+                log.warn("API key non configurata. {} video non disponibili nel database", toFetch.size());
+            }
+        }
+        
+        return buildVideoListResponse(videoIds, items);
+    }
+    
+    /**
+     * Chiama videos.list per un blocco di ID (max 50) e salva ogni video come risposta a sé stante
+     */
+    private Map<String, JsonNode> fetchAndStoreVideos(List<String> videoIds, Map<String, String> params,
+            Map<String, CachedVideo> stored) {
+        Map<String, JsonNode> result = new HashMap<>();
+        UpstreamResult response = callUpstream(Operation.VIDEOS,
+            key -> upstreamGet(videosRequest(String.join(",", videoIds), params, key), null));
+        if (!(response instanceof UpstreamResult.Body body)) {
+            addStoredItems(result, videoIds, stored);
+            return result;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(body.json());
+            List<CachedVideo> toSave = new ArrayList<>();
+            for (JsonNode item : root.path("items")) {
+                String videoId = item.path("id").asText(null);
+                if (videoId == null || videoId.isEmpty()) {
+                    continue;
+                }
+                result.put(videoId, item);
+                
+                // Risposta per singolo video, riutilizzabile dalle richieste id=videoId
+                ObjectNode single = objectMapper.createObjectNode();
+                single.put("kind", root.path("kind").asText("youtube#videoListResponse"));
+                single.put("etag", item.path("etag").asText(root.path("etag").asText("")));
+                single.putArray("items").add(item);
+                ObjectNode pageInfo = single.putObject("pageInfo");
+                pageInfo.put("totalResults", 1);
+                pageInfo.put("resultsPerPage", 1);
+                
+                CachedVideo video = new CachedVideo();
+                video.setVideoId(videoId);
+                video.setResponseJson(objectMapper.writeValueAsString(single));
+                video.onCreate();
+                extractVideoMetadata(video.getResponseJson(), video);
+                // L'etag di YouTube vale per la lista richiesta, non per la risposta a singolo video
+                video.setUpstreamEtag(null);
+                toSave.add(video);
+            }
+            for (CachedVideo video : toSave) {
+                CachedPayload payload = CachedPayload.of(video);
+                localCache.putVideo(video.getVideoId(), payload);
+                sharedCache.putVideo(video.getVideoId(), payload);
+            }
+            // Una sola scrittura differita per il blocco, con un'unica lettura IN degli id esistenti
+            writeBehindQueue.submit("videos:" + String.join(",", videoIds), () -> cachedEntityWriter.upsertVideos(toSave));
+            log.info("Multi-video: {} video richiesti a YouTube, {} in salvataggio", videoIds.size(), toSave.size());
+        } catch (Exception e) {
+            log.error("Errore nel salvataggio della risposta multi-video: {}", e.getMessage(), e);
+        }
+        return result;
+    }
+    
+    /**
+     * Quota esaurita: usa i dati scaduti presenti nel DB per i video indicati
+     */
+    private void addStoredItems(Map<String, JsonNode> items, List<String> videoIds, Map<String, CachedVideo> stored) {
+        for (String videoId : videoIds) {
+            CachedVideo video = stored.get(videoId);
+            if (video != null && video.getResponseJson() != null) {
+                addFirstItem(items, videoId, CachedPayload.of(video));
+            }
+        }
     }
     
     /**
-     * Chiama l'API search.list di YouTube
+     * Aggiunge alla mappa il primo item della risposta cachata; false se la risposta non contiene item
      */
-    private String callYouTubeSearchApi(Map<String, String> params) {
-        WebClient webClient = webClientBuilder.baseUrl(baseUrl).build();
+    private boolean addFirstItem(Map<String, JsonNode> items, String videoId, CachedPayload payload) {
+        try {
+            JsonNode first = objectMapper.readTree(payload.getJson()).path("items").path(0);
+            if (first.isMissingNode()) {
+                return false;
+            }
+            items.put(videoId, first);
+            return true;
+        } catch (Exception e) {
+            log.warn("Risposta cachata non leggibile per video {}: {}", videoId, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Ricompone una risposta videos.list con gli item nell'ordine degli ID richiesti
+     */
+    private String buildVideoListResponse(List<String> videoIds, Map<String, JsonNode> items) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("kind", "youtube#videoListResponse");
+        response.put("etag", "combined-" + Integer.toHexString(String.join(",", videoIds).hashCode()));
+        
+        ArrayNode itemsNode = response.putArray("items");
+        for (String videoId : videoIds) {
+            JsonNode item = items.get(videoId);
+            if (item != null) {
+                itemsNode.add(item);
+            }
+        }
+        
+        ObjectNode pageInfo = response.putObject("pageInfo");
+        pageInfo.put("totalResults", itemsNode.size());
+        pageInfo.put("resultsPerPage", itemsNode.size());
         
-        WebClient.RequestHeadersSpec<?> request = webClient.get()
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (Exception e) {
+            log.error("Errore nella composizione della risposta multi-video: {}", e.getMessage());
+            return createEmptyVideoResponse();
+        }
+    }
+    
+    /**
+     * Divide il parametro id=a,b,c in ID distinti, mantenendo l'ordine della richiesta
+     */
+    private List<String> parseVideoIds(String ids) {
+        return Arrays.stream(ids.split(","))
+            .map(String::trim)
+            .filter(id -> !id.isEmpty())
+            .distinct()
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Una risposta scaduta può essere servita se è entro la finestra stale-while-revalidate (hard TTL)
+     */
+    private boolean isServableStale(CachedPayload payload) {
+        return payload.getJson() != null && !payload.isExpired(staleWhileRevalidateSeconds);
+    }
+    
+    /**
+     * YouTube segnala la quota giornaliera esaurita con 403 e reason quotaExceeded
+     */
+    private boolean isQuotaExceeded(Throwable error) {
+        return error instanceof WebClientResponseException response
+            && response.getStatusCode().value() == 403
+            && response.getResponseBodyAsString().contains("quotaExceeded");
+    }
+    
+    /**
+     * Contatori del coalescing delle richieste concorrenti
+     */
+    public Map<String, Object> getCoalescingStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("search", searchFlights.getStatistics());
+        result.put("video", videoFlights.getStatistics());
+        return result;
+    }
+    
+    /**
+     * Esegue la chiamata con la API key che ha più quota residua; se YouTube risponde quotaExceeded
+     * la key viene fermata fino al reset e la chiamata riprovata con la successiva.
+     * Restituisce NoQuota se nessuna key ha quota sufficiente
+     */
+    private UpstreamResult callUpstream(Operation operation, Function<String, Mono<UpstreamResult>> call) {
+        String key;
+        while ((key = quotaScheduler.acquire(operation)) != null) {
+            try {
+                return call.apply(key).block();
+            } catch (WebClientResponseException e) {
+                if (!isQuotaExceeded(e)) {
+                    throw e;
+                }
+                quotaScheduler.markExhausted(key);
+            }
+        }
+        return UpstreamResult.NO_QUOTA;
+    }
+    
+    /**
+     * Versione non bloccante di callUpstream. acquire e markExhausted possono accedere al registro della quota
+     * nel DB: girano su boundedElastic, anche quando l'errore quotaExceeded arriva sul thread di Netty
+     */
+    private Mono<UpstreamResult> callUpstreamReactive(Operation operation, Function<String, Mono<UpstreamResult>> call) {
+        return Mono.defer(() -> {
+            String key = quotaScheduler.acquire(operation);
+            if (key == null) {
+                return Mono.just(UpstreamResult.NO_QUOTA);
+            }
+            return call.apply(key)
+                .publishOn(Schedulers.boundedElastic())
+                .onErrorResume(this::isQuotaExceeded, e -> {
+                    quotaScheduler.markExhausted(key);
+                    return callUpstreamReactive(operation, call);
+                });
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    /**
+     * Richiesta all'API search.list di YouTube
+     */
+    private WebClient.RequestHeadersSpec<?> searchRequest(Map<String, String> params, String apiKey) {
+        return youtubeWebClient.get()
                 .uri(uriBuilder -> {
                     uriBuilder.path("/search");
                     params.forEach(uriBuilder::queryParam);
                     uriBuilder.queryParam("key", apiKey);
                     return uriBuilder.build();
                 });
-        
-        return request.retrieve()
-                .bodyToMono(String.class)
-                .block();
     }
     
     /**
-     * Chiama l'API videos di YouTube
+     * Richiesta all'API videos di YouTube
      */
-    private String callYouTubeVideosApi(String videoId, Map<String, String> params) {
-        WebClient webClient = webClientBuilder.baseUrl(baseUrl).build();
-        
-        WebClient.RequestHeadersSpec<?> request = webClient.get()
+    private WebClient.RequestHeadersSpec<?> videosRequest(String videoId, Map<String, String> params, String apiKey) {
+        return youtubeWebClient.get()
                 .uri(uriBuilder -> {
                     uriBuilder.path("/videos");
                     uriBuilder.queryParam("id", videoId);
@@ -205,10 +868,25 @@ public class YouTubeProxyService {
                     uriBuilder.queryParam("key", apiKey);
                     return uriBuilder.build();
                 });
-        
-        return request.retrieve()
-                .bodyToMono(String.class)
-                .block();
+    }
+    
+    /**
+     * Esegue la richiesta; con un etag la invia condizionale (If-None-Match) e un 304 Not Modified
+     * diventa NotModified, senza corpo da scaricare. Gli errori restano WebClientResponseException
+     */
+    private Mono<UpstreamResult> upstreamGet(WebClient.RequestHeadersSpec<?> request, String etag) {
+        if (etag == null) {
+            return request.retrieve().bodyToMono(String.class).map(UpstreamResult.Body::new);
+        }
+        return request.header(HttpHeaders.IF_NONE_MATCH, etag).exchangeToMono(response -> {
+            if (response.statusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+                return response.releaseBody().thenReturn(UpstreamResult.NOT_MODIFIED);
+            }
+            if (response.statusCode().isError()) {
+                return response.<UpstreamResult>createError();
+            }
+            return response.bodyToMono(String.class).map(UpstreamResult.Body::new);
+        });
     }
     
     /**
@@ -255,6 +933,7 @@ public class YouTubeProxyService {
     private void extractVideoMetadata(String responseJson, CachedVideo video) {
         try {
             JsonNode root = objectMapper.readTree(responseJson);
+            video.setUpstreamEtag(root.path("etag").asText(null));
             JsonNode items = root.path("items");
             
             if (items.isArray() && items.size() > 0) {
@@ -313,20 +992,14 @@ public class YouTubeProxyService {
     }
     
     /**
-     * Estrae i video dal JSON di una ricerca e li salva nel database
+     * Item della risposta search per videoId, nell'ordine della ricerca (un ID ripetuto vale una volta);
+     * vuoto se il JSON non contiene item video
      */
-    private void extractAndSaveVideosFromSearch(String searchResponseJson) {
+    private Map<String, JsonNode> extractVideoItemsFromSearch(String searchResponseJson) {
+        Map<String, JsonNode> itemsById = new LinkedHashMap<>();
         try {
-            JsonNode root = objectMapper.readTree(searchResponseJson);
-            JsonNode items = root.path("items");
-            
-            if (!items.isArray()) {
-                return;
-            }
-            
-            int savedCount = 0;
+            JsonNode items = objectMapper.readTree(searchResponseJson).path("items");
             for (JsonNode item : items) {
-                // Estrai ID del video
                 JsonNode idNode = item.path("id");
                 String videoId = null;
                 
@@ -336,60 +1009,14 @@ public class YouTubeProxyService {
                     videoId = idNode.asText();
                 }
                 
-                if (videoId == null || videoId.isEmpty()) {
-                    continue;
-                }
-                
-                // Verifica se il video esiste già nel database
-                Optional<CachedVideo> existing = videoRepository.findByVideoId(videoId);
-                CachedVideo video;
-                
-                if (existing.isPresent()) {
-                    video = existing.get();
-                    log.debug("Aggiornamento video esistente: {}", videoId);
-                } else {
-                    video = new CachedVideo();
-                    video.setVideoId(videoId);
-                    log.debug("Nuovo video trovato: {}", videoId);
-                }
-                
-                // Estrai snippet (metadati base disponibili nella ricerca)
-                JsonNode snippet = item.path("snippet");
-                if (!snippet.isMissingNode()) {
-                    video.setTitle(snippet.path("title").asText(null));
-                    video.setDescription(snippet.path("description").asText(null));
-                    video.setChannelId(snippet.path("channelId").asText(null));
-                    video.setChannelTitle(snippet.path("channelTitle").asText(null));
-                    video.setPublishedAt(snippet.path("publishedAt").asText(null));
-                    
-                    // Estrai thumbnail URL
-                    JsonNode thumbnails = snippet.path("thumbnails");
-                    if (thumbnails.has("high")) {
-                        video.setThumbnailUrl(thumbnails.path("high").path("url").asText(null));
-                    } else if (thumbnails.has("medium")) {
-                        video.setThumbnailUrl(thumbnails.path("medium").path("url").asText(null));
-                    } else if (thumbnails.has("default")) {
-                        video.setThumbnailUrl(thumbnails.path("default").path("url").asText(null));
-                    }
+                if (videoId != null && !videoId.isEmpty()) {
+                    itemsById.putIfAbsent(videoId, item);
                 }
-                
-                // Nota: Le statistiche (views, likes, ecc.) NON sono disponibili nella search API
-                // Verranno popolate quando si chiama getVideoDetails() con part=statistics
-                
-                // Salva il video nel database
-                videoRepository.save(video);
-                log.info("Video salvato da search: videoId={}, title='{}', channel='{}'",
-                    video.getVideoId(), video.getTitle(), video.getChannelTitle());
-                savedCount++;
             }
-            
-            log.info("=== RIEPILOGO SALVATAGGIO VIDEO DALLA SEARCH ===");
-            log.info("  Totale video estratti e salvati: {}", savedCount);
-            log.info("================================================");
-            
         } catch (Exception e) {
             log.error("Errore nell'estrazione dei video dalla ricerca: {}", e.getMessage(), e);
         }
+        return itemsById;
     }
     
     /**
@@ -410,6 +1037,7 @@ public class YouTubeProxyService {
             }
             
             // Estrai metadati dalla risposta
+            cache.setUpstreamEtag(root.path("etag").asText(null));
             cache.setNextPageToken(root.path("nextPageToken").asText(null));
             cache.setPrevPageToken(root.path("prevPageToken").asText(null));
             cache.setRegionCode(root.path("regionCode").asText(null));
@@ -435,14 +1063,23 @@ public class YouTubeProxyService {
     
     /**
      * Ricostruisce una risposta di ricerca dai video salvati nel database
-     * ATTENZIONE: Questa è una risposta PARZIALE basata sui dati disponibili
+     * ATTENZIONE: Questa è una risposta PARZIALE basata sui dati disponibili.
+     * Se ci sono altri risultati emette un nextPageToken con la posizione dell'ultimo video (VideoSearchCursor):
+     * la pagina successiva riparte da lì nell'indice
      */
     private String reconstructSearchResponse(Map<String, String> params, CachedSearchResult expiredCache) {
         try {
             // Estrai parametri della query
             String query = params.get("q");
-            if (query == null || query.trim().isEmpty()) {
-                log.warn("Query parameter 'q' mancante, impossibile ricostruire risposta");
+            String channelId = params.get("channelId");
+            if ((query == null || query.trim().isEmpty()) && (channelId == null || channelId.isEmpty())) {
+                log.warn("Parametri 'q' e 'channelId' mancanti, impossibile ricostruire risposta");
+                return null;
+            }
+            // Nel DB ci sono solo video: una search di soli canali o playlist non si può ricostruire
+            String type = params.get("type");
+            if (type != null && !type.contains("video")) {
+                log.warn("type={} non ricostruibile dai video nel database", type);
                 return null;
             }
             
@@ -456,13 +1093,35 @@ public class YouTubeProxyService {
                 log.warn("maxResults non valido, uso default: 5");
             }
             
-            // Cerca video nel DB che corrispondono alla query
-            List<CachedVideo> matchingVideos = findVideosMatchingQuery(query, maxResults);
+            VideoSearchCriteria criteria = new VideoSearchCriteria(query, channelId,
+                    parseInstant(params, "publishedAfter"), parseInstant(params, "publishedBefore"),
+                    VideoSearchCriteria.Order.fromParameter(params.get("order")));
+            
+            // Pagina successiva di una risposta ricostruita
+            VideoSearchCursor after = null;
+            String pageToken = params.get("pageToken");
+            if (pageToken != null) {
+                Optional<VideoSearchCursor> cursor = VideoSearchCursor.fromPageToken(pageToken, criteria);
+                if (cursor.isEmpty()) {
+                    log.warn("pageToken non valido per {}: {}", criteria, pageToken);
+                    return null;
+                }
+                after = cursor.get();
+            }
+            
+            // Cerca video nel DB che corrispondono a query e filtri (uno in più per sapere se c'è un'altra pagina)
+            Map<VideoSearchCursor, VideoMetadata> matches = findVideosMatching(criteria, after, maxResults + 1);
             
-            if (matchingVideos.isEmpty()) {
-                log.warn("Nessun video trovato nel database per la query: {}", query);
+            if (matches.isEmpty()) {
+                log.warn("Nessun video trovato nel database per {}", criteria);
                 return null;
             }
+            List<VideoSearchCursor> positions = new ArrayList<>(matches.keySet());
+            boolean hasNextPage = positions.size() > maxResults;
+            if (hasNextPage) {
+                positions = positions.subList(0, maxResults);
+            }
+            List<VideoMetadata> matchingVideos = positions.stream().map(matches::get).collect(Collectors.toList());
             
             // Costruisci un JSON compatibile con YouTube API
             ObjectNode response = objectMapper.createObjectNode();
@@ -474,6 +1133,10 @@ public class YouTubeProxyService {
                 response.put("regionCode", expiredCache.getRegionCode());
             }
             
+            if (hasNextPage) {
+                response.put("nextPageToken", positions.get(positions.size() - 1).toPageToken(criteria));
+            }
+            
             // PageInfo
             ObjectNode pageInfo = response.putObject("pageInfo");
             pageInfo.put("totalResults", matchingVideos.size());
@@ -481,7 +1144,7 @@ public class YouTubeProxyService {
             
             // Items array
             ArrayNode items = response.putArray("items");
-            for (CachedVideo video : matchingVideos) {
+            for (VideoMetadata video : matchingVideos) {
                 ObjectNode item = items.addObject();
                 item.put("kind", "youtube#searchResult");
                 item.put("etag", "reconstructed");
@@ -512,7 +1175,8 @@ public class YouTubeProxyService {
             }
             
             String result = objectMapper.writeValueAsString(response);
-            log.info("Risposta ricostruita con {} video dal database (PARZIALE - no pagination)", matchingVideos.size());
+            log.info("Risposta ricostruita con {} video dal database (PARZIALE, altra pagina: {})",
+                matchingVideos.size(), hasNextPage);
             return result;
             
         } catch (Exception e) {
@@ -522,45 +1186,47 @@ public class YouTubeProxyService {
     }
     
     /**
-     * Trova video nel database che corrispondono alla query di ricerca
-     * Confronto case-insensitive e normalizzato (senza spazi multipli)
+     * Data RFC 3339 di un parametro (publishedAfter, publishedBefore); null se assente o non valida
      */
-    private List<CachedVideo> findVideosMatchingQuery(String query, int maxResults) {
-        // Normalizza la query: lowercase e spazi singoli
-        String queryNormalized = query.toLowerCase().trim().replaceAll("\\s+", " ");
-        
-        log.debug("Ricerca video con query normalizzata: '{}'", queryNormalized);
-        
-        // Cerca video che contengono la query nel titolo, descrizione o channel
-        return videoRepository.findAll().stream()
-            .filter(v -> {
-                if (v.getTitle() != null && normalizeForSearch(v.getTitle()).contains(queryNormalized)) {
-                    return true;
-                }
-                if (v.getDescription() != null && normalizeForSearch(v.getDescription()).contains(queryNormalized)) {
-                    return true;
-                }
-                if (v.getChannelTitle() != null && normalizeForSearch(v.getChannelTitle()).contains(queryNormalized)) {
-                    return true;
-                }
-                return false;
-            })
-            // Ordina per data di pubblicazione (più recenti prima)
-            .sorted((v1, v2) -> {
-                String date1 = v1.getPublishedAt() != null ? v1.getPublishedAt() : "";
-                String date2 = v2.getPublishedAt() != null ? v2.getPublishedAt() : "";
-                return date2.compareTo(date1);
-            })
-            .limit(maxResults)
-            .collect(Collectors.toList());
+    private Instant parseInstant(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            log.warn("{} non valido, ignorato: {}", name, value);
+            return null;
+        }
     }
     
     /**
-     * Normalizza una stringa per la ricerca: lowercase e spazi singoli
+     * Trova video nel database che corrispondono a query e filtri della search.
+     * L'indice in memoria tollera maiuscole, ordine delle parole, sottostringhe e refusi, applica canale
+     * e intervallo di pubblicazione e ordina i risultati come richiesto (order); dal DB vengono letti solo i loro
+     * metadati (senza responseJson).
+     * Restituisce i video dopo la posizione after (null = prima pagina) con la loro posizione, in ordine
      */
-    private String normalizeForSearch(String text) {
-        if (text == null) return "";
-        return text.toLowerCase().trim().replaceAll("\\s+", " ");
+    private Map<VideoSearchCursor, VideoMetadata> findVideosMatching(VideoSearchCriteria criteria, VideoSearchCursor after,
+            int maxResults) {
+        log.debug("Ricerca video nell'indice: {}", criteria);
+        
+        List<VideoSearchCursor> hits = videoSearchIndex.search(criteria, after, maxResults);
+        Map<VideoSearchCursor, VideoMetadata> result = new LinkedHashMap<>();
+        if (hits.isEmpty()) {
+            return result;
+        }
+        Map<String, VideoMetadata> loaded = new HashMap<>();
+        videoRepository.findMetadataByVideoIdIn(hits.stream().map(VideoSearchCursor::getVideoId).collect(Collectors.toList()))
+            .forEach(video -> loaded.put(video.getVideoId(), video));
+        for (VideoSearchCursor hit : hits) {
+            VideoMetadata video = loaded.get(hit.getVideoId());
+            if (video != null) {
+                result.put(hit, video);
+            }
+        }
+        return result;
     }
     
     /**
@@ -0,0 +1,111 @@
+package efohum.com.youtubeproxy.statistics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoStatisticsRow;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Export delle statistiche di tutti i video (GET /api/statistics/videos) con memoria costante.
+ *
+ * Le righe vengono lette a blocchi con keyset sull'id (solo i campi esportati, senza responseJson)
+ * e scritte subito sulla risposta, come array JSON o come NDJSON (un oggetto per riga).
+ * In alternativa una singola pagina dopo afterId, con l'id da cui riprendere.
+ */
+@Component
+@RequiredArgsConstructor
+public class VideoStatisticsExporter {
+
+    static final int BATCH_SIZE = 500;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final CachedVideoRepository videoRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Una pagina di al massimo limit righe dopo afterId; limit va da 1 a MAX_PAGE_SIZE (validato dal controller)
+     */
+    public List<VideoStatisticsRow> page(long afterId, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit fuori intervallo: " + limit);
+        }
+        return videoRepository.findStatisticsAfter(afterId, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Scrive le righe di una pagina come array JSON
+     */
+    public void writePage(List<VideoStatisticsRow> rows, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            LocalDateTime now = LocalDateTime.now();
+            for (VideoStatisticsRow row : rows) {
+                writeRow(generator, row, now);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Scrive tutte le righe dopo afterId, un blocco alla volta; ogni blocco viene inviato al client prima di leggere il successivo
+     */
+    public void writeAll(long afterId, boolean ndjson, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            if (!ndjson) {
+                generator.writeStartArray();
+            }
+            long lastId = afterId;
+            List<VideoStatisticsRow> batch;
+            do {
+                batch = videoRepository.findStatisticsAfter(lastId, PageRequest.of(0, BATCH_SIZE));
+                LocalDateTime now = LocalDateTime.now();
+                for (VideoStatisticsRow row : batch) {
+                    writeRow(generator, row, now);
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                    lastId = row.getId();
+                }
+                generator.flush();
+            } while (batch.size() == BATCH_SIZE);
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    private static void writeRow(JsonGenerator generator, VideoStatisticsRow row, LocalDateTime now) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", row.getId());
+        generator.writeStringField("videoId", row.getVideoId());
+        generator.writeStringField("title", row.getTitle());
+        generator.writeStringField("channelTitle", row.getChannelTitle());
+        writeNumber(generator, "viewCount", row.getViewCount());
+        writeNumber(generator, "likeCount", row.getLikeCount());
+        writeNumber(generator, "commentCount", row.getCommentCount());
+        generator.writeStringField("thumbnailUrl", row.getThumbnailUrl());
+        generator.writeStringField("duration", row.getDuration());
+        generator.writeStringField("cachedAt", row.getCreatedAt() != null ? row.getCreatedAt().toString() : null);
+        generator.writeBooleanField("expired", row.getExpiresAt() != null && now.isAfter(row.getExpiresAt()));
+        generator.writeEndObject();
+    }
+
+    private static void writeNumber(JsonGenerator generator, String name, Long value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(name);
+        } else {
+            generator.writeNumberField(name, value);
+        }
+    }
+}
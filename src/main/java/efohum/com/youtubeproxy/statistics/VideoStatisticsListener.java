@@ -0,0 +1,36 @@
+package efohum.com.youtubeproxy.statistics;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.AfterCommit;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Tiene aggiornato il riepilogo statistiche a ogni insert, update o delete di un CachedVideo.
+ *
+ * Come VideoSearchIndexListener: il riepilogo viene risolto al primo evento ed è assente nei test JPA,
+ * e le modifiche vengono applicate solo dopo il commit, così un blocco di scrittura annullato non altera i totali.
+ */
+public class VideoStatisticsListener {
+
+    private final ObjectProvider<VideoStatisticsSummary> summary;
+
+    public VideoStatisticsListener(ObjectProvider<VideoStatisticsSummary> summary) {
+        this.summary = summary;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(CachedVideo video) {
+        AfterCommit.run(() -> summary.ifAvailable(statistics -> statistics.onSave(video)));
+    }
+
+    @PostRemove
+    public void onRemove(CachedVideo video) {
+        String videoId = video.getVideoId();
+        AfterCommit.run(() -> summary.ifAvailable(statistics -> statistics.onRemove(videoId)));
+    }
+}
@@ -0,0 +1,219 @@
+package efohum.com.youtubeproxy.statistics;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoSummaryFields;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Riepilogo delle statistiche dei video nel DB (GET /api/statistics/summary) mantenuto in modo incrementale,
+ * senza leggere la tabella a ogni richiesta.
+ *
+ * - Totali per video validi e scaduti, somme di view, like e commenti dei soli validi
+ * - Aggiornato a ogni insert, update o delete di un CachedVideo (VideoStatisticsListener): per ogni video
+ *   si tiene il contributo corrente, così un update sottrae il vecchio e somma il nuovo
+ * - La scadenza non genera eventi: i video validi sono in una coda per expiresAt e quelli scaduti
+ *   vengono spostati alla lettura successiva
+ * - Gli eventi arrivano dopo il commit, quindi le scritture annullate non alterano i totali
+ * - Costruito all'avvio e riconciliato periodicamente con il DB (scritture fuori da JPA)
+ */
+@Component
+@Slf4j
+public class VideoStatisticsSummary implements SmartInitializingSingleton {
+
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    private final CachedVideoRepository videoRepository;
+    private final Clock clock;
+
+    private final Map<String, Contribution> contributions = new HashMap<>();
+    // Video validi per scadenza; le voci superate da un update o da un delete vengono scartate all'uscita
+    private final PriorityQueue<Contribution> expirations = new PriorityQueue<>(
+            (a, b) -> a.expiresAt.compareTo(b.expiresAt));
+    private long validVideos;
+    private long totalViews;
+    private long totalLikes;
+    private long totalComments;
+    private long reconciliations;
+    private long lastDrift;
+
+    @Autowired
+    public VideoStatisticsSummary(CachedVideoRepository videoRepository) {
+        this(videoRepository, Clock.systemDefaultZone());
+    }
+
+    VideoStatisticsSummary(CachedVideoRepository videoRepository, Clock clock) {
+        this.videoRepository = videoRepository;
+        this.clock = clock;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reconcile();
+    }
+
+    public synchronized void onSave(CachedVideo video) {
+        if (video.getVideoId() == null || video.getExpiresAt() == null) {
+            return;
+        }
+        put(new Contribution(video.getVideoId(), value(video.getViewCount()), value(video.getLikeCount()),
+                value(video.getCommentCount()), video.getExpiresAt()));
+    }
+
+    public synchronized void onRemove(String videoId) {
+        Contribution removed = contributions.remove(videoId);
+        if (removed != null) {
+            subtract(removed);
+        }
+    }
+
+    /**
+     * Riepilogo corrente: costo proporzionale ai soli video scaduti dall'ultima lettura
+     */
+    public synchronized Map<String, Object> getSummary() {
+        expire();
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("totalCachedVideos", contributions.size());
+        summary.put("validCachedVideos", validVideos);
+        summary.put("expiredCachedVideos", contributions.size() - validVideos);
+        summary.put("totalViews", totalViews);
+        summary.put("totalLikes", totalLikes);
+        summary.put("totalComments", totalComments);
+        return summary;
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("videos", contributions.size());
+        result.put("reconciliations", reconciliations);
+        result.put("lastDrift", lastDrift);
+        return result;
+    }
+
+    /**
+     * Ricalcola gli aggregati dal DB (solo i campi del riepilogo, a blocchi) e sostituisce quelli correnti.
+     * Gli eventi arrivati durante la lettura possono andare persi: li corregge la riconciliazione successiva
+     */
+    @Scheduled(initialDelayString = "${statistics.summary.reconcile-interval-ms:600000}",
+            fixedDelayString = "${statistics.summary.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+        Map<String, Contribution> fromDatabase = new HashMap<>();
+        long lastId = 0L;
+        List<VideoSummaryFields> batch;
+        do {
+            batch = videoRepository.findSummaryFieldsAfter(lastId, PageRequest.of(0, BUILD_BATCH_SIZE));
+            for (VideoSummaryFields video : batch) {
+                if (video.getExpiresAt() != null) {
+                    fromDatabase.put(video.getVideoId(), new Contribution(video.getVideoId(), value(video.getViewCount()),
+                            value(video.getLikeCount()), value(video.getCommentCount()), video.getExpiresAt()));
+                }
+                lastId = video.getId();
+            }
+        } while (batch.size() == BUILD_BATCH_SIZE);
+
+        synchronized (this) {
+            long drift = 0;
+            for (Contribution contribution : fromDatabase.values()) {
+                if (!contribution.sameAs(contributions.get(contribution.videoId))) {
+                    drift++;
+                }
+            }
+            for (String videoId : contributions.keySet()) {
+                if (!fromDatabase.containsKey(videoId)) {
+                    drift++;
+                }
+            }
+            contributions.clear();
+            expirations.clear();
+            validVideos = 0;
+            totalViews = 0;
+            totalLikes = 0;
+            totalComments = 0;
+            fromDatabase.values().forEach(this::put);
+            reconciliations++;
+            lastDrift = drift;
+            if (drift > 0 && reconciliations > 1) {
+                log.warn("Riepilogo statistiche riconciliato: {} video non allineati su {}", drift, contributions.size());
+            }
+        }
+        log.debug("Riepilogo statistiche ricalcolato dal DB: {} video in {} ms",
+                fromDatabase.size(), System.currentTimeMillis() - start);
+    }
+
+    private void put(Contribution contribution) {
+        Contribution previous = contributions.put(contribution.videoId, contribution);
+        if (previous != null) {
+            subtract(previous);
+        }
+        if (contribution.expiresAt.isAfter(LocalDateTime.now(clock))) {
+            contribution.valid = true;
+            validVideos++;
+            totalViews += contribution.views;
+            totalLikes += contribution.likes;
+            totalComments += contribution.comments;
+            expirations.add(contribution);
+        }
+    }
+
+    private void subtract(Contribution contribution) {
+        if (contribution.valid) {
+            contribution.valid = false;
+            validVideos--;
+            totalViews -= contribution.views;
+            totalLikes -= contribution.likes;
+            totalComments -= contribution.comments;
+        }
+    }
+
+    /**
+     * Sposta tra gli scaduti i video validi con expiresAt superato
+     */
+    private void expire() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        while (!expirations.isEmpty() && !expirations.peek().expiresAt.isAfter(now)) {
+            subtract(expirations.poll());
+        }
+    }
+
+    private static long value(Long count) {
+        return count == null ? 0L : count;
+    }
+
+    private static final class Contribution {
+
+        private final String videoId;
+        private final long views;
+        private final long likes;
+        private final long comments;
+        private final LocalDateTime expiresAt;
+        private boolean valid;
+
+        private Contribution(String videoId, long views, long likes, long comments, LocalDateTime expiresAt) {
+            this.videoId = videoId;
+            this.views = views;
+            this.likes = likes;
+            this.comments = comments;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean sameAs(Contribution other) {
+            return other != null && views == other.views && likes == other.likes && comments == other.comments
+                    && Objects.equals(expiresAt, other.expiresAt);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+-- Indici per la classifica dei video più visti (GET /api/statistics/top-viewed)
+-- La query ordina per view_count decrescente con LIMIT: l'indice evita di leggere e ordinare tutta la tabella
+
+CREATE INDEX IF NOT EXISTS idx_video_view_count ON cached_videos(view_count DESC);
+CREATE INDEX IF NOT EXISTS idx_video_channel_view_count ON cached_videos(channel_id, view_count DESC);
+CREATE INDEX IF NOT EXISTS idx_video_category_view_count ON cached_videos(category, view_count DESC);
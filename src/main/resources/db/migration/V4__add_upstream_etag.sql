@@ -0,0 +1,5 @@
+-- etag delle risposte YouTube: inviato come If-None-Match al refresh,
+-- con 304 Not Modified viene estesa solo la scadenza senza riscrivere response_json
+
+ALTER TABLE cached_search_results ADD COLUMN IF NOT EXISTS upstream_etag VARCHAR(255);
+ALTER TABLE cached_videos ADD COLUMN IF NOT EXISTS upstream_etag VARCHAR(255);
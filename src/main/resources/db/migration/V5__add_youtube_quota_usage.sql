@@ -0,0 +1,10 @@
+-- Quota YouTube spesa per giorno (ora del Pacifico) e per API key (SHA-256, la key non viene salvata):
+-- all'avvio la spesa del giorno riparte da qui e le repliche sullo stesso database condividono il budget
+
+CREATE TABLE IF NOT EXISTS youtube_quota_usage (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    usage_day DATE NOT NULL,
+    key_id VARCHAR(64) NOT NULL,
+    spent BIGINT NOT NULL,
+    CONSTRAINT uk_quota_usage_day_key UNIQUE (usage_day, key_id)
+);
@@ -0,0 +1,118 @@
+package efohum.com.youtubeproxy.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+import efohum.com.youtubeproxy.entity.ApiKey;
+import efohum.com.youtubeproxy.repository.ApiKeyRepository;
+
+class ApiKeyCacheTest {
+
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    // Conta le transazioni aperte senza un database
+    private final TransactionOperations countingTransactions = new TransactionOperations() {
+        @Override
+        public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+            transactions.incrementAndGet();
+            return action.doInTransaction(new SimpleTransactionStatus());
+        }
+    };
+
+    private ApiKeyRepository apiKeyRepository;
+    private ApiKeyCache apiKeyCache;
+
+    @BeforeEach
+    void setUp() {
+        apiKeyRepository = mock(ApiKeyRepository.class);
+        apiKeyCache = new ApiKeyCache(apiKeyRepository, countingTransactions, 60);
+    }
+
+    @Test
+    void testRepeatedValidationReadsTheKeyOnceAndBatchesLastUsed() {
+        // Arrange
+        when(apiKeyRepository.findByKeyValueAndIsActiveTrue("key-a")).thenReturn(Optional.of(apiKey(1L, null)));
+        when(apiKeyRepository.findByKeyValueAndIsActiveTrue("key-b")).thenReturn(Optional.of(apiKey(2L, null)));
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            assertTrue(apiKeyCache.validate("key-a"));
+        }
+        assertTrue(apiKeyCache.validate("key-b"));
+        apiKeyCache.flushLastUsed();
+        apiKeyCache.flushLastUsed();
+
+        // Assert: una lettura per key, un UPDATE per key in un'unica transazione, nessuna save dell'entità
+        verify(apiKeyRepository, times(1)).findByKeyValueAndIsActiveTrue("key-a");
+        verify(apiKeyRepository, times(1)).updateLastUsedAt(eq(1L), any(LocalDateTime.class));
+        verify(apiKeyRepository, times(1)).updateLastUsedAt(eq(2L), any(LocalDateTime.class));
+        verify(apiKeyRepository, never()).save(any());
+        assertEquals(1, transactions.get());
+        assertEquals(0, apiKeyCache.getStatistics().get("pendingLastUsed"));
+    }
+
+    @Test
+    void testInvalidateMakesDeactivationAndDeletionImmediate() {
+        // Arrange
+        when(apiKeyRepository.findByKeyValueAndIsActiveTrue("key-a"))
+                .thenReturn(Optional.of(apiKey(1L, null)))
+                .thenReturn(Optional.empty());
+        when(apiKeyRepository.findByKeyValueAndIsActiveTrue("key-b"))
+                .thenReturn(Optional.of(apiKey(2L, null)))
+                .thenReturn(Optional.empty());
+        assertTrue(apiKeyCache.validate("key-a"));
+        assertTrue(apiKeyCache.validate("key-b"));
+
+        // Act: disattivazione per valore, eliminazione per id
+        apiKeyCache.invalidate("key-a");
+        apiKeyCache.invalidate(2L);
+
+        // Assert
+        assertFalse(apiKeyCache.validate("key-a"));
+        assertFalse(apiKeyCache.validate("key-b"));
+    }
+
+    @Test
+    void testUnknownAndExpiredKeysAreRejectedWithoutRecordingUse() {
+        // Arrange
+        when(apiKeyRepository.findByKeyValueAndIsActiveTrue(anyString())).thenReturn(Optional.empty());
+        when(apiKeyRepository.findByKeyValueAndIsActiveTrue("expired"))
+                .thenReturn(Optional.of(apiKey(3L, LocalDateTime.now().minusMinutes(1))));
+
+        // Act
+        boolean unknown = apiKeyCache.validate("unknown");
+        boolean unknownAgain = apiKeyCache.validate("unknown");
+        boolean expired = apiKeyCache.validate("expired");
+        apiKeyCache.flushLastUsed();
+
+        // Assert: anche l'esito negativo resta in memoria
+        assertFalse(unknown);
+        assertFalse(unknownAgain);
+        assertFalse(expired);
+        verify(apiKeyRepository, times(1)).findByKeyValueAndIsActiveTrue("unknown");
+        verify(apiKeyRepository, never()).updateLastUsedAt(any(), any());
+        assertEquals(0, transactions.get());
+    }
+
+    private static ApiKey apiKey(Long id, LocalDateTime expiresAt) {
+        ApiKey apiKey = new ApiKey();
+        apiKey.setId(id);
+        apiKey.setIsActive(true);
+        apiKey.setExpiresAt(expiresAt);
+        return apiKey;
+    }
+}
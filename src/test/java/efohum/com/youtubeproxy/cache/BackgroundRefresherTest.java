@@ -0,0 +1,89 @@
+package efohum.com.youtubeproxy.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.mock.env.MockEnvironment;
+
+class BackgroundRefresherTest {
+
+    @Test
+    void testSameKeyIsScheduledOnlyOnceWhilePending() {
+        // Arrange: executor manuale, i task restano in coda finché non vengono eseguiti
+        List<Runnable> queued = new ArrayList<>();
+        BackgroundRefresher refresher = new BackgroundRefresher(queued::add);
+
+        // Act
+        boolean first = refresher.schedule("search:key", () -> { });
+        boolean second = refresher.schedule("search:key", () -> { });
+        boolean other = refresher.schedule("video:key", () -> { });
+
+        // Assert
+        assertTrue(first);
+        assertFalse(second);
+        assertTrue(other);
+        assertEquals(2, queued.size());
+        assertEquals(1L, refresher.getStatistics().get("deduplicated"));
+    }
+
+    @Test
+    void testKeyIsReleasedAfterRefreshEvenOnFailure() {
+        // Arrange
+        BackgroundRefresher refresher = new BackgroundRefresher(Runnable::run);
+
+        // Act
+        refresher.schedule("search:key", () -> {
+            throw new IllegalStateException("upstream down");
+        });
+
+        // Assert
+        assertEquals(1L, refresher.getStatistics().get("failed"));
+        assertEquals(0, refresher.getStatistics().get("pending"));
+        assertTrue(refresher.schedule("search:key", () -> { }));
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void testVirtualThreadModeKeepsTheSameLimits() throws Exception {
+        // Arrange: 1 refresh in esecuzione + 1 in attesa
+        MockEnvironment environment = new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true");
+        BackgroundRefresher refresher = new BackgroundRefresher(1, 1, environment);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> threadName = new AtomicReference<>();
+
+        // Act
+        boolean first = refresher.schedule("search:a", () -> {
+            threadName.set(Thread.currentThread().getName());
+            await(release);
+        });
+        boolean second = refresher.schedule("search:b", () -> { });
+        boolean third = refresher.schedule("search:c", () -> { });
+        release.countDown();
+
+        // Assert
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+        assertEquals(1L, refresher.getStatistics().get("rejected"));
+        while ((int) refresher.getStatistics().get("pending") > 0) {
+            Thread.sleep(5);
+        }
+        assertTrue(threadName.get().startsWith("cache-refresh-"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
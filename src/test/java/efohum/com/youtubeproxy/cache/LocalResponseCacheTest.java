@@ -0,0 +1,119 @@
+package efohum.com.youtubeproxy.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+class LocalResponseCacheTest {
+
+    private static CachedPayload payload(String json, LocalDateTime expiresAt) {
+        return new CachedPayload(json, LocalDateTime.now(), expiresAt);
+    }
+
+    @Test
+    void testPutAndGetSearch() {
+        // Arrange
+        LocalResponseCache cache = new LocalResponseCache(100, 1_000_000, 0, true);
+        cache.putSearch("key", payload("{\"items\": []}", LocalDateTime.now().plusHours(1)));
+
+        // Act & Assert
+        assertTrue(cache.getSearch("key").isPresent());
+        assertEquals("{\"items\": []}", cache.getSearch("key").get().getJson());
+        assertTrue(cache.getVideo("key").isEmpty());
+    }
+
+    @Test
+    void testExpiredPayloadIsNotCached() {
+        // Arrange
+        LocalResponseCache cache = new LocalResponseCache(100, 1_000_000, 0, true);
+
+        // Act
+        cache.putVideo("video", payload("{}", LocalDateTime.now().minusSeconds(1)));
+
+        // Assert
+        assertTrue(cache.getVideo("video").isEmpty());
+    }
+
+    @Test
+    void testPayloadWithoutJsonIsNotCached() {
+        // Arrange
+        LocalResponseCache cache = new LocalResponseCache(100, 1_000_000, 0, true);
+
+        // Act
+        cache.putVideo("video", payload(null, LocalDateTime.now().plusHours(1)));
+
+        // Assert
+        assertTrue(cache.getVideo("video").isEmpty());
+    }
+
+    @Test
+    void testInvalidateSearchesKeepsVideos() {
+        // Arrange
+        LocalResponseCache cache = new LocalResponseCache(100, 1_000_000, 0, true);
+        cache.putSearch("query", payload("{}", LocalDateTime.now().plusHours(1)));
+        cache.putVideo("video", payload("{}", LocalDateTime.now().plusHours(1)));
+
+        // Act
+        cache.invalidateSearches();
+
+        // Assert
+        assertTrue(cache.getSearch("query").isEmpty());
+        assertTrue(cache.getVideo("video").isPresent());
+    }
+
+    @Test
+    void testInvalidateAll() {
+        // Arrange
+        LocalResponseCache cache = new LocalResponseCache(100, 1_000_000, 0, true);
+        cache.putSearch("query", payload("{}", LocalDateTime.now().plusHours(1)));
+        cache.putVideo("video", payload("{}", LocalDateTime.now().plusHours(1)));
+
+        // Act
+        cache.invalidateAll();
+
+        // Assert
+        assertTrue(cache.getSearch("query").isEmpty());
+        assertTrue(cache.getVideo("video").isEmpty());
+    }
+
+    @Test
+    void testStalePayloadIsKeptWithinWindow() {
+        // Arrange
+        LocalResponseCache cache = new LocalResponseCache(100, 1_000_000, 3600, true);
+
+        // Act
+        cache.putSearch("query", payload("{}", LocalDateTime.now().minusMinutes(5)));
+
+        // Assert: restituito ma marcato come scaduto, il chiamante lo rivalida
+        assertTrue(cache.getSearch("query").isPresent());
+        assertTrue(cache.getSearch("query").get().isExpired());
+    }
+
+    @Test
+    void testGzipBodyIsComputedOnFillAndReused() throws IOException {
+        // Arrange
+        LocalResponseCache cache = new LocalResponseCache(100, 1_000_000, 0, true);
+        String json = "{\"items\": [" + "{\"kind\": \"youtube#video\"},".repeat(50) + "{}]}";
+        CachedPayload payload = payload(json, LocalDateTime.now().plusHours(1));
+
+        // Act
+        cache.putVideo("video", payload);
+        CachedPayload cached = cache.peekVideo("video").orElseThrow();
+
+        // Assert: stessa forma compressa a ogni richiesta, conteggiata nel peso; peek non conta come hit
+        byte[] gzip = cached.gzip();
+        assertSame(gzip, cached.gzip());
+        assertEquals(json.length() * 2 + gzip.length, cached.weight());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            assertEquals(json, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(0L, ((java.util.Map<?, ?>) cache.getStatistics().get("video")).get("hitCount"));
+    }
+}
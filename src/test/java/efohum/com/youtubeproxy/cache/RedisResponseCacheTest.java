@@ -0,0 +1,173 @@
+package efohum.com.youtubeproxy.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test di integrazione contro un server Redis avviato localmente
+ * (REDIS_HOST / REDIS_PORT, default localhost:6379). Vengono saltati se Redis non è raggiungibile.
+ *
+ * Esempio: docker run --rm -p 6379:6379 redis:7
+ */
+class RedisResponseCacheTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+    private static boolean redisAvailable;
+
+    private RedisResponseCache cache;
+
+    @BeforeAll
+    static void connect() {
+        String host = System.getenv().getOrDefault("REDIS_HOST", "localhost");
+        int port = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        try {
+            ReactiveRedisConnection connection = connectionFactory.getReactiveConnection();
+            redisAvailable = "PONG".equals(connection.ping().block(Duration.ofSeconds(2)));
+            connection.close();
+        } catch (Exception e) {
+            redisAvailable = false;
+        }
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        cache = new RedisResponseCache(redisTemplate, new ObjectMapper());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "keyPrefix", "youtubeproxy-test:");
+        ReflectionTestUtils.setField(cache, "timeoutMs", 2000L);
+    }
+
+    @Test
+    void testEncodeDecodeRoundTrip() throws Exception {
+        // Arrange
+        LocalDateTime createdAt = LocalDateTime.now().withNano(0);
+        CachedPayload payload = new CachedPayload("{\"items\": []}", createdAt, createdAt.plusHours(1));
+
+        // Act
+        CachedPayload decoded = cache.decode(cache.encode(payload));
+
+        // Assert
+        assertEquals(payload, decoded);
+    }
+
+    @Test
+    void testDisabledCacheIsAlwaysMiss() {
+        // Arrange
+        ReflectionTestUtils.setField(cache, "enabled", false);
+
+        // Act & Assert
+        assertTrue(cache.getSearch("any").isEmpty());
+    }
+
+    @Test
+    void testPutAndGetWithNativeTtl() {
+        assumeTrue(redisAvailable, "Redis locale non disponibile");
+
+        // Arrange
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(10);
+        cache.putSearch("query", new CachedPayload("{\"items\": [1]}", LocalDateTime.now(), expiresAt));
+
+        // Act: la scrittura è asincrona, attendi che sia visibile
+        CachedPayload found = null;
+        for (int i = 0; i < 50 && found == null; i++) {
+            found = cache.getSearch("query").orElse(null);
+            sleep(20);
+        }
+
+        // Assert
+        assertNotNull(found);
+        assertEquals("{\"items\": [1]}", found.getJson());
+        Long ttlSeconds = redisTemplate.getExpire("youtubeproxy-test:search:query")
+                .block(Duration.ofSeconds(2)).toSeconds();
+        assertTrue(ttlSeconds > 0 && ttlSeconds <= 600);
+    }
+
+    @Test
+    void testInvalidateSearchesKeepsVideos() {
+        assumeTrue(redisAvailable, "Redis locale non disponibile");
+
+        // Arrange
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(10);
+        redisTemplate.opsForValue().set("youtubeproxy-test:search:q1", encodeQuietly(expiresAt)).block();
+        redisTemplate.opsForValue().set("youtubeproxy-test:video:v1", encodeQuietly(expiresAt)).block();
+
+        // Act
+        cache.invalidateSearches();
+
+        // Assert
+        assertTrue(cache.getSearch("q1").isEmpty());
+        assertTrue(cache.getVideo("v1").isPresent());
+        cache.invalidateVideos();
+        assertTrue(cache.getVideo("v1").isEmpty());
+    }
+
+    @Test
+    void testGetVideosReadsAllIdsWithOneRoundTrip() {
+        assumeTrue(redisAvailable, "Redis locale non disponibile");
+
+        // Arrange: v1 valido, v2 assente
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(10);
+        redisTemplate.opsForValue().set("youtubeproxy-test:video:v1", encodeQuietly(expiresAt)).block();
+        redisTemplate.delete("youtubeproxy-test:video:v2").block();
+
+        // Act
+        Map<String, CachedPayload> found = cache.getVideos(List.of("v1", "v2"));
+
+        // Assert
+        assertEquals(Set.of("v1"), found.keySet());
+        assertEquals(1L, cache.getStatistics().get("hitCount"));
+        assertEquals(1L, cache.getStatistics().get("missCount"));
+    }
+
+    @Test
+    void testDisabledCacheReturnsNoVideos() {
+        // Arrange
+        ReflectionTestUtils.setField(cache, "enabled", false);
+
+        // Act & Assert
+        assertTrue(cache.getVideos(List.of("v1", "v2")).isEmpty());
+    }
+
+    private String encodeQuietly(LocalDateTime expiresAt) {
+        try {
+            return cache.encode(new CachedPayload("{}", LocalDateTime.now(), expiresAt));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
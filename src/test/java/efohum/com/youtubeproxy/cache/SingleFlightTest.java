@@ -0,0 +1,105 @@
+package efohum.com.youtubeproxy.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsAreCollapsed() throws Exception {
+        // Arrange
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act: il primo caricamento resta bloccato finché tutti i chiamanti sono in attesa
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "value";
+        })));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 7; i++) {
+            results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                loads.incrementAndGet();
+                return "other";
+            })));
+        }
+        while ((long) singleFlight.getStatistics().get("collapsed") < 7) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        // Assert
+        for (Future<String> result : results) {
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1L, singleFlight.getStatistics().get("executions"));
+        assertEquals(7L, singleFlight.getStatistics().get("collapsed"));
+        assertFalse(singleFlight.isInFlight("key"));
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testFailureIsPropagatedAndKeyReleased() {
+        // Arrange
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("key", () -> {
+            throw new IllegalStateException("upstream down");
+        }));
+        assertFalse(singleFlight.isInFlight("key"));
+        assertEquals("retry", singleFlight.execute("key", () -> "retry"));
+    }
+
+    @Test
+    void testAsyncCallsShareTheSameLoad() throws Exception {
+        // Arrange
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act: nessun thread resta bloccato in attesa del caricamento
+        CompletableFuture<String> first = singleFlight.executeAsync("key", () -> {
+            loads.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<String> second = singleFlight.executeAsync("key", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        assertTrue(singleFlight.isInFlight("key"));
+        upstream.complete("value");
+
+        // Assert
+        assertEquals("value", first.get(5, TimeUnit.SECONDS));
+        assertEquals("value", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertFalse(singleFlight.isInFlight("key"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package efohum.com.youtubeproxy.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.sun.net.httpserver.HttpServer;
+
+import reactor.netty.resources.ConnectionProvider;
+
+class WebClientConfigTest {
+
+    private HttpServer server;
+    private ConnectionProvider connectionProvider;
+    private UpstreamPoolMetrics metrics;
+    private WebClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Finto upstream in HTTP/1.1 non cifrato che risponde sempre in gzip
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/videos", exchange -> {
+            byte[] body = "{\"items\": []}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        WebClientConfig config = new WebClientConfig();
+        metrics = config.upstreamPoolMetrics();
+        connectionProvider = config.youtubeConnectionProvider(metrics, 10, 10, 1000, 30, 300);
+        client = config.youtubeWebClient(config.webClientBuilder(), connectionProvider,
+                "http://127.0.0.1:" + server.getAddress().getPort(), 1000, 2000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionProvider.dispose();
+        server.stop(0);
+    }
+
+    @Test
+    void testGzipResponseIsDecodedAndConnectionReturnedToPool() throws Exception {
+        // Act
+        String body = client.get().uri("/videos").retrieve().bodyToMono(String.class).block(Duration.ofSeconds(5));
+
+        // Assert: fallback a HTTP/1.1 su connessione in chiaro, connessione tornata idle nel pool
+        assertEquals("{\"items\": []}", body);
+        assertEquals(1, metrics.getStatistics().size());
+        // Il rilascio della connessione avviene in modo asincrono dopo la fine del body
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Integer.valueOf(0).equals(pool().get("active")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool().get("active"));
+        assertEquals(10, pool().get("maxConnections"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> pool() {
+        return (Map<String, Object>) metrics.getStatistics().values().iterator().next();
+    }
+}
@@ -0,0 +1,89 @@
+package efohum.com.youtubeproxy.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import efohum.com.youtubeproxy.cache.CachedPayload;
+
+class CachedResponsesTest {
+
+    private final CachedPayload cached = new CachedPayload("{\"items\": []}", LocalDateTime.now(),
+            LocalDateTime.now().plusHours(1));
+
+    @Test
+    void testCachedResponseIsSentAsPrecompressedGzip() {
+        // Arrange
+        cached.gzip();
+
+        // Act
+        ResponseEntity<?> response = CachedResponses.ok(cached.getJson(), "br, gzip;q=0.8", null, Optional.of(cached));
+
+        // Assert: il corpo è la forma gzip della cache, non una nuova compressione
+        assertSame(cached.gzip(), response.getBody());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(cached.gzip().length, response.getHeaders().getContentLength());
+        assertTrue(response.getHeaders().getFirst(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    void testPlainJsonWithoutGzipOrForADifferentBody() {
+        // Act
+        ResponseEntity<?> noGzip = CachedResponses.ok(cached.getJson(), "gzip;q=0, br", null, Optional.of(cached));
+        ResponseEntity<?> noHeader = CachedResponses.ok(cached.getJson(), null, null, Optional.of(cached));
+        ResponseEntity<?> reconstructed = CachedResponses.ok("{\"items\": [1]}", "gzip", cached.etag(), Optional.of(cached));
+        ResponseEntity<?> notCached = CachedResponses.ok("{}", "gzip", null, Optional.empty());
+
+        // Assert
+        assertEquals(cached.getJson(), noGzip.getBody());
+        assertEquals(cached.getJson(), noHeader.getBody());
+        assertEquals("{\"items\": [1]}", reconstructed.getBody());
+        assertEquals("{}", notCached.getBody());
+        assertNull(reconstructed.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertNull(reconstructed.getHeaders().getETag());
+        assertEquals(HttpStatus.OK, reconstructed.getStatusCode());
+    }
+
+    @Test
+    void testMatchingIfNoneMatchReturnsNotModifiedWithMaxAge() {
+        // Arrange: scade tra un'ora
+        String etag = cached.etag();
+
+        // Act
+        ResponseEntity<?> notModified = CachedResponses.ok(cached.getJson(), "gzip", "\"other\", " + etag,
+                Optional.of(cached));
+        ResponseEntity<?> strongForm = CachedResponses.ok(cached.getJson(), null, etag.substring(2), Optional.of(cached));
+        ResponseEntity<?> changed = CachedResponses.ok(cached.getJson(), null, "W/\"other\"", Optional.of(cached));
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertNull(notModified.getBody());
+        assertEquals(etag, notModified.getHeaders().getETag());
+        String cacheControl = notModified.getHeaders().getCacheControl();
+        long maxAge = Long.parseLong(cacheControl.substring("max-age=".length()));
+        assertTrue(maxAge > 3500 && maxAge <= 3600, cacheControl);
+        assertEquals(HttpStatus.NOT_MODIFIED, strongForm.getStatusCode());
+        assertEquals(HttpStatus.OK, changed.getStatusCode());
+        assertEquals(etag, changed.getHeaders().getETag());
+        assertEquals(cached.getJson(), changed.getBody());
+    }
+
+    @Test
+    void testStalePayloadMustBeRevalidated() {
+        // Arrange: scaduta, servita nella finestra stale-while-revalidate
+        CachedPayload stale = new CachedPayload("{}", LocalDateTime.now().minusHours(2), LocalDateTime.now().minusMinutes(1));
+
+        // Act
+        ResponseEntity<?> response = CachedResponses.ok(stale.getJson(), null, null, Optional.of(stale));
+
+        // Assert
+        assertEquals("no-cache", response.getHeaders().getCacheControl());
+        assertEquals(stale.etag(), response.getHeaders().getETag());
+    }
+}
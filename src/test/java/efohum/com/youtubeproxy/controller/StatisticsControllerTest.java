@@ -0,0 +1,92 @@
+package efohum.com.youtubeproxy.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoStatisticsRow;
+import efohum.com.youtubeproxy.statistics.VideoStatisticsExporter;
+
+@ExtendWith(MockitoExtension.class)
+class StatisticsControllerTest {
+
+    @Mock
+    private CachedVideoRepository videoRepository;
+
+    @Mock
+    private VideoStatisticsExporter videoStatisticsExporter;
+
+    @InjectMocks
+    private StatisticsController statisticsController;
+
+    @Test
+    void testTopViewedRejectsALimitOutsideTheAllowedRange() {
+        // Act
+        ResponseEntity<List<Map<String, Object>>> tooLarge = statisticsController.getTopViewedVideos(501, null, null);
+        ResponseEntity<List<Map<String, Object>>> zero = statisticsController.getTopViewedVideos(0, null, null);
+
+        // Assert: nessuna classifica troncata in silenzio, nessuna query
+        assertEquals(HttpStatus.BAD_REQUEST, tooLarge.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, zero.getStatusCode());
+        verifyNoInteractions(videoRepository);
+    }
+
+    @Test
+    void testTopViewedReadsExactlyTheRequestedLimit() {
+        // Arrange
+        when(videoRepository.findTopViewed(any(), any())).thenReturn(List.of());
+
+        // Act
+        ResponseEntity<List<Map<String, Object>>> response = statisticsController.getTopViewedVideos(500, null, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(videoRepository).findTopViewed(any(), argThat(page -> page.getPageSize() == 500));
+    }
+
+    @Test
+    void testVideosPageRejectsALimitOutsideTheAllowedRange() {
+        // Act
+        ResponseEntity<StreamingResponseBody> tooLarge = statisticsController.getAllVideosStatistics(0, 1001, "json");
+        ResponseEntity<StreamingResponseBody> zero = statisticsController.getAllVideosStatistics(0, 0, "json");
+
+        // Assert: nessuna pagina ridimensionata in silenzio, nessuna query
+        assertEquals(HttpStatus.BAD_REQUEST, tooLarge.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, zero.getStatusCode());
+        verifyNoInteractions(videoStatisticsExporter);
+    }
+
+    @Test
+    void testVideosPageSetsTheNextIdOnlyWhenFull() {
+        // Arrange
+        VideoStatisticsRow last = mock(VideoStatisticsRow.class);
+        when(last.getId()).thenReturn(42L);
+        when(videoStatisticsExporter.page(0, 2)).thenReturn(List.of(mock(VideoStatisticsRow.class), last));
+        when(videoStatisticsExporter.page(42, 2)).thenReturn(List.of(mock(VideoStatisticsRow.class)));
+
+        // Act
+        ResponseEntity<StreamingResponseBody> full = statisticsController.getAllVideosStatistics(0, 2, "json");
+        ResponseEntity<StreamingResponseBody> partial = statisticsController.getAllVideosStatistics(42, 2, "json");
+
+        // Assert
+        assertEquals("42", full.getHeaders().getFirst("X-Next-After-Id"));
+        assertNull(partial.getHeaders().getFirst("X-Next-After-Id"));
+    }
+}
@@ -81,6 +81,21 @@ class CachedSearchResultTest {
         assertEquals(customExpiry, result.getExpiresAt());
     }
 
+    @Test
+    void testOnUpdate_RestartsWindowWhenTimestampsMissing() {
+        // Arrange: refresh salvato tramite merge senza timestamp
+        CachedSearchResult result = new CachedSearchResult();
+        result.setId(1L);
+        result.setQueryKey("test-key");
+
+        // Act - Simulate @PreUpdate
+        result.onUpdate();
+
+        // Assert
+        assertNotNull(result.getCreatedAt());
+        assertEquals(result.getCreatedAt().plusHours(24), result.getExpiresAt());
+    }
+
     @Test
     void testSettersAndGetters() {
         // Arrange & Act
@@ -0,0 +1,74 @@
+package efohum.com.youtubeproxy.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class PayloadCodecTest {
+
+    @Test
+    void testSearchResponseIsCompressedAndReadBack() {
+        // Arrange
+        PayloadCodec codec = new PayloadCodec(true);
+        String json = searchResponse(25);
+
+        // Act
+        String stored = codec.encode(json);
+
+        // Assert: le risposte YouTube si riducono di molto, anche in base64
+        assertTrue(stored.startsWith(PayloadCodec.DEFLATE_V1));
+        assertTrue(stored.length() * 4 < json.length(), "salvati " + stored.length() + " su " + json.length());
+        assertEquals(json, codec.decode(stored));
+        assertTrue((double) codec.getStatistics().get("compressionRatio") > 4.0);
+    }
+
+    @Test
+    void testPlainRowsAndDisabledCompressionStayReadable() {
+        // Arrange
+        PayloadCodec enabled = new PayloadCodec(true);
+        PayloadCodec disabled = new PayloadCodec(false);
+        String json = searchResponse(3);
+
+        // Act
+        String compressed = enabled.encode(json);
+        String plain = disabled.encode(json);
+
+        // Assert: le righe in chiaro passano invariate e quelle compresse si leggono anche a compressione spenta
+        assertEquals(json, plain);
+        assertEquals(json, enabled.decode(plain));
+        assertEquals(json, disabled.decode(compressed));
+        assertEquals("{}", enabled.encode("{}"));
+        assertNull(enabled.encode(null));
+        assertNull(enabled.decode(null));
+    }
+
+    private static String searchResponse(int items) {
+        StringBuilder json = new StringBuilder("{\n  \"kind\": \"youtube#searchListResponse\",\n"
+                + "  \"etag\": \"q4ibjmYp1KA3RqMF4jFLl6PBwOg\",\n  \"nextPageToken\": \"CBkQAA\",\n"
+                + "  \"regionCode\": \"IT\",\n  \"pageInfo\": {\n    \"totalResults\": 1000000,\n"
+                + "    \"resultsPerPage\": " + items + "\n  },\n  \"items\": [\n");
+        for (int i = 0; i < items; i++) {
+            String videoId = "vid" + Integer.toString(i * 7919, 36) + "xYz";
+            json.append("    {\n      \"kind\": \"youtube#searchResult\",\n      \"etag\": \"etag").append(i * 31)
+                    .append("AbCdEf\",\n      \"id\": {\n        \"kind\": \"youtube#video\",\n        \"videoId\": \"")
+                    .append(videoId).append("\"\n      },\n      \"snippet\": {\n        \"publishedAt\": \"2024-0")
+                    .append(i % 9 + 1).append("-1").append(i % 10).append("T10:00:00Z\",\n        \"channelId\": \"UC")
+                    .append(i % 5).append("abcdefghijklmnopqrstu\",\n        \"title\": \"Video numero ").append(i)
+                    .append(" della ricerca\",\n        \"description\": \"Descrizione del video ").append(i)
+                    .append(" con qualche parola in più\",\n        \"thumbnails\": {\n");
+            String[][] sizes = { { "default", "default", "120", "90" }, { "medium", "mqdefault", "320", "180" },
+                    { "high", "hqdefault", "480", "360" } };
+            for (int s = 0; s < sizes.length; s++) {
+                json.append("          \"").append(sizes[s][0]).append("\": {\n            \"url\": \"https://i.ytimg.com/vi/")
+                        .append(videoId).append('/').append(sizes[s][1]).append(".jpg\",\n            \"width\": ")
+                        .append(sizes[s][2]).append(",\n            \"height\": ").append(sizes[s][3]).append("\n          }")
+                        .append(s < sizes.length - 1 ? ",\n" : "\n");
+            }
+            json.append("        },\n        \"channelTitle\": \"Canale ").append(i % 5)
+                    .append("\",\n        \"liveBroadcastContent\": \"none\",\n        \"publishTime\": \"2024-0")
+                    .append(i % 9 + 1).append("-1").append(i % 10).append("T10:00:00Z\"\n      }\n    }")
+                    .append(i < items - 1 ? ",\n" : "\n");
+        }
+        return json.append("  ]\n}\n").toString();
+    }
+}
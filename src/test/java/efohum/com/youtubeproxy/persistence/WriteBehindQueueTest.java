@@ -0,0 +1,126 @@
+package efohum.com.youtubeproxy.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+class WriteBehindQueueTest {
+
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    // Conta le transazioni aperte senza un database
+    private final TransactionOperations countingTransactions = new TransactionOperations() {
+        @Override
+        public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+            transactions.incrementAndGet();
+            return action.doInTransaction(new SimpleTransactionStatus());
+        }
+    };
+
+    @Test
+    void testWritesForTheSameKeyAreCoalescedAndBatched() throws Exception {
+        // Arrange: il writer resta bloccato sulla prima scrittura mentre le altre si accodano
+        WriteBehindQueue queue = new WriteBehindQueue(countingTransactions, true, 100, 100, 1000);
+        List<String> written = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit("blocker", () -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Act
+        queue.submit("search:a", () -> written.add("a1"));
+        queue.submit("search:b", () -> written.add("b"));
+        queue.submit("search:a", () -> written.add("a2"));
+        release.countDown();
+        queue.shutdown();
+
+        // Assert: solo l'ultima versione di a, dopo b, in un'unica transazione
+        assertEquals(List.of("b", "a2"), written);
+        assertEquals(2, transactions.get());
+        assertEquals(1L, queue.getStatistics().get("coalesced"));
+        assertEquals(3L, queue.getStatistics().get("written"));
+        assertEquals(0, queue.queueDepth());
+    }
+
+    @Test
+    void testFullQueueRunsTheWriteInTheCaller() throws Exception {
+        // Arrange: capacità 1, writer bloccato e coda piena
+        WriteBehindQueue queue = new WriteBehindQueue(countingTransactions, true, 1, 100, 50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit("blocker", () -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        queue.submit("queued", () -> { });
+        List<String> callerThreads = new CopyOnWriteArrayList<>();
+
+        // Act
+        queue.submit("overflow", () -> callerThreads.add(Thread.currentThread().getName()));
+
+        // Assert
+        assertEquals(List.of(Thread.currentThread().getName()), callerThreads);
+        assertEquals(1L, queue.getStatistics().get("blocked"));
+        assertEquals(1L, queue.getStatistics().get("callerRuns"));
+        release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    void testFailedBatchIsRetriedOneWriteAtATime() {
+        // Arrange
+        WriteBehindQueue queue = new WriteBehindQueue(countingTransactions, true, 100, 100, 1000);
+        List<String> written = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit("blocker", () -> await(release));
+        queue.submit("ok", () -> written.add("ok"));
+        queue.submit("broken", () -> {
+            throw new IllegalStateException("constraint violation");
+        });
+
+        // Act
+        release.countDown();
+        queue.shutdown();
+
+        // Assert: la scrittura valida arriva comunque, quella non valida viene contata
+        assertTrue(written.contains("ok"));
+        assertEquals(1L, queue.getStatistics().get("failed"));
+    }
+
+    @Test
+    void testDisabledQueueWritesSynchronously() {
+        // Arrange
+        WriteBehindQueue queue = new WriteBehindQueue(countingTransactions, false, 100, 100, 1000);
+        List<String> written = new CopyOnWriteArrayList<>();
+
+        // Act
+        queue.submit("search:a", () -> written.add("a"));
+
+        // Assert
+        assertEquals(List.of("a"), written);
+        assertEquals(1, transactions.get());
+        assertEquals(0, queue.queueDepth());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
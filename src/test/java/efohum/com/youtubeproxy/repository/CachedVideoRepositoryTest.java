@@ -0,0 +1,134 @@
+package efohum.com.youtubeproxy.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.PayloadCodec;
+import efohum.com.youtubeproxy.persistence.PayloadMigration;
+import jakarta.persistence.EntityManager;
+
+@DataJpaTest(showSql = false)
+@Import(PayloadCodec.class)
+class CachedVideoRepositoryTest {
+
+    @Autowired
+    private CachedVideoRepository videoRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PayloadCodec payloadCodec;
+
+    @Test
+    void testTopViewedSkipsExpiredAndUnknownCounts() {
+        // Arrange
+        LocalDateTime now = LocalDateTime.now();
+        videoRepository.saveAll(List.of(
+                video("a", "UC1", "10", 100L, now.plusHours(1)),
+                video("b", "UC2", "10", 300L, now.plusHours(1)),
+                video("c", "UC1", "20", 200L, now.plusHours(1)),
+                video("expired", "UC1", "10", 999L, now.minusHours(1)),
+                video("unknown", "UC1", "10", null, now.plusHours(1))));
+
+        // Act
+        List<TopViewedVideo> top = videoRepository.findTopViewed(now, PageRequest.of(0, 2));
+        List<TopViewedVideo> channel = videoRepository.findTopViewedByChannel("UC1", now, PageRequest.of(0, 10));
+        List<TopViewedVideo> category = videoRepository.findTopViewedByCategory("10", now, PageRequest.of(0, 10));
+
+        // Assert
+        assertEquals(List.of("b", "c"), top.stream().map(TopViewedVideo::getVideoId).toList());
+        assertEquals(List.of("c", "a"), channel.stream().map(TopViewedVideo::getVideoId).toList());
+        assertEquals(List.of("b", "a"), category.stream().map(TopViewedVideo::getVideoId).toList());
+    }
+
+    @Test
+    void testTopViewedReadsTheViewCountIndexAlreadySorted() {
+        // Act
+        String plan = (String) entityManager.createNativeQuery(
+                "EXPLAIN SELECT video_id FROM cached_videos WHERE view_count IS NOT NULL AND expires_at > CURRENT_TIMESTAMP "
+                        + "ORDER BY view_count DESC LIMIT 10").getSingleResult();
+
+        // Assert
+        assertTrue(plan.contains("IDX_VIDEO_VIEW_COUNT"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    void testMetadataProjectionReadsTheVideoWithoutThePayload() {
+        // Arrange
+        CachedVideo video = video("v1", "UC1", "10", 100L, LocalDateTime.now().plusHours(1));
+        video.setTitle("Vecchio titolo");
+        video.setResponseJson("{\"items\": []}");
+        Long id = videoRepository.save(video).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        // Act
+        List<VideoMetadata> metadata = videoRepository.findMetadataByVideoIdIn(List.of("v1", "missing"));
+
+        // Assert
+        assertEquals(1, metadata.size());
+        assertEquals("Vecchio titolo", metadata.get(0).getTitle());
+        assertEquals(100L, metadata.get(0).getViewCount());
+        assertFalse(metadata.get(0).isExpired());
+        assertEquals(id, videoRepository.findMetadataByVideoId("v1").orElseThrow().getId());
+        assertTrue(videoRepository.findMetadataByVideoId("missing").isEmpty());
+    }
+
+    @Test
+    void testResponseJsonIsCompressedAtRestAndPlainRowsAreMigrated() {
+        // Arrange: una riga salvata da JPA e una riga in chiaro scritta prima della compressione
+        String json = "{\n  \"kind\": \"youtube#videoListResponse\",\n  \"items\": [\n"
+                + "    {\n      \"kind\": \"youtube#video\",\n      \"id\": \"v1\"\n    }\n  ]\n}\n";
+        CachedVideo video = video("v1", "UC1", "10", 1L, LocalDateTime.now().plusHours(1));
+        video.setResponseJson(json);
+        videoRepository.save(video);
+        CachedVideo legacy = video("legacy", "UC1", "10", 1L, LocalDateTime.now().plusHours(1));
+        videoRepository.save(legacy);
+        entityManager.flush();
+        jdbcTemplate.update("UPDATE cached_videos SET response_json = ? WHERE video_id = 'legacy'", json);
+        entityManager.clear();
+
+        // Act
+        String storedBefore = rawResponseJson("legacy");
+        new PayloadMigration(jdbcTemplate, payloadCodec, true, 1).migrate();
+
+        // Assert: nel DB il formato compresso, nelle entità il JSON originale
+        assertTrue(PayloadCodec.isEncoded(rawResponseJson("v1")));
+        assertEquals(json, storedBefore);
+        assertTrue(PayloadCodec.isEncoded(rawResponseJson("legacy")));
+        assertEquals(json, videoRepository.findByVideoId("v1").orElseThrow().getResponseJson());
+        assertEquals(json, videoRepository.findByVideoId("legacy").orElseThrow().getResponseJson());
+    }
+
+    private String rawResponseJson(String videoId) {
+        return jdbcTemplate.queryForObject("SELECT response_json FROM cached_videos WHERE video_id = ?", String.class,
+                videoId);
+    }
+
+    private static CachedVideo video(String videoId, String channelId, String category, Long viewCount,
+            LocalDateTime expiresAt) {
+        CachedVideo video = new CachedVideo();
+        video.setVideoId(videoId);
+        video.setChannelId(channelId);
+        video.setCategory(category);
+        video.setViewCount(viewCount);
+        video.setCreatedAt(LocalDateTime.now());
+        video.setExpiresAt(expiresAt);
+        return video;
+    }
+}
@@ -0,0 +1,41 @@
+package efohum.com.youtubeproxy.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+class VideoSearchCursorTest {
+
+    private final VideoSearchCriteria criteria = new VideoSearchCriteria("spring", "UC1", null, null,
+            VideoSearchCriteria.Order.VIEW_COUNT);
+
+    @Test
+    void testPageTokenRoundTrip() {
+        // Arrange
+        VideoSearchCursor cursor = new VideoSearchCursor(2, 1704067200000L, 150L, 7L, "Spring | Boot àè", "abc-123");
+
+        // Act
+        String token = cursor.toPageToken(criteria);
+        Optional<VideoSearchCursor> decoded = VideoSearchCursor.fromPageToken(token, criteria);
+
+        // Assert
+        assertTrue(VideoSearchCursor.isPageToken(token));
+        assertEquals(Optional.of(cursor), decoded);
+    }
+
+    @Test
+    void testPageTokenOfAnotherSearchOrMalformedIsRejected() {
+        // Arrange
+        String token = new VideoSearchCursor(0, 0L, 0L, 0L, "t", "v1").toPageToken(criteria);
+        VideoSearchCriteria otherSearch = new VideoSearchCriteria("spring", "UC1", null, null,
+                VideoSearchCriteria.Order.DATE);
+
+        // Act & Assert
+        assertTrue(VideoSearchCursor.fromPageToken(token, otherSearch).isEmpty());
+        assertTrue(VideoSearchCursor.fromPageToken("db!!!", criteria).isEmpty());
+        assertTrue(VideoSearchCursor.fromPageToken("CAUQAA", criteria).isEmpty());
+        assertFalse(VideoSearchCursor.isPageToken("CAUQAA"));
+    }
+}
@@ -0,0 +1,114 @@
+package efohum.com.youtubeproxy.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Latenza delle ricerche ricostruite sull'indice con 200.000 video sintetici:
+ * parole esatte, refusi, sottostringhe e ordine invertito.
+ *
+ * mvn -Pbenchmark test
+ */
+@Tag("benchmark")
+@Slf4j
+class VideoSearchIndexBenchmarkTest {
+
+    private static final int VIDEOS = 200_000;
+    private static final int VOCABULARY = 50_000;
+    private static final int ROUNDS = 2_000;
+
+    @Test
+    void benchmarkSearchLatency() {
+        // Arrange: vocabolario di parole pseudo-casuali, 8 nel titolo e 30 nella descrizione di ogni video
+        Random random = new Random(42);
+        String[] vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            vocabulary[i] = randomWord(random);
+        }
+        VideoSearchIndex index = new VideoSearchIndex(mock(CachedVideoRepository.class));
+        long buildStart = System.nanoTime();
+        String sampleTitle = null;
+        for (int i = 0; i < VIDEOS; i++) {
+            String title = words(random, vocabulary, 8);
+            CachedVideo video = new CachedVideo();
+            video.setVideoId("v" + i);
+            video.setPublishedAt(String.format("2024-%02d-%02dT00:00:00Z", 1 + i % 12, 1 + i % 28));
+            video.setTitle(title);
+            video.setDescription(words(random, vocabulary, 30));
+            video.setChannelTitle(vocabulary[random.nextInt(VOCABULARY)]);
+            index.index(video);
+            if (i == VIDEOS / 2) {
+                sampleTitle = title;
+            }
+        }
+        long buildMillis = (System.nanoTime() - buildStart) / 1_000_000;
+
+        // Le due parole più lunghe dello stesso titolo (sotto le 6 lettere uno scambio può cambiare tutti i trigrammi)
+        String[] titleWords = sampleTitle.trim().split(" ");
+        Arrays.sort(titleWords, Comparator.comparingInt(String::length).reversed());
+        String first = titleWords[0];
+        String second = titleWords[1];
+        List<String> queries = List.of(
+                first,
+                first + " " + second,
+                second + " " + first,
+                typo(first),
+                first.substring(1, first.length() - 1),
+                typo(first) + " " + typo(second));
+
+        // Act & Assert
+        log.info("Indice: {} video costruiti in {} ms, {}", VIDEOS, buildMillis, index.getStatistics());
+        for (String query : queries) {
+            for (int i = 0; i < 200; i++) {
+                index.search(VideoSearchCriteria.forQuery(query), 25); // warm-up
+            }
+            long start = System.nanoTime();
+            int results = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                results = index.search(VideoSearchCriteria.forQuery(query), 25).size();
+            }
+            double micros = (System.nanoTime() - start) / 1_000.0 / ROUNDS;
+            log.info("  {} {} µs  {} risultati", String.format("%-30s", "'" + query + "'"), String.format("%8.1f", micros), results);
+            assertTrue(results > 0);
+        }
+    }
+
+    private static String randomWord(Random random) {
+        int length = 4 + random.nextInt(7);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    private static String words(Random random, String[] vocabulary, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+        }
+        return text.toString();
+    }
+
+    // Scambia due lettere centrali
+    private static String typo(String word) {
+        char[] chars = word.toCharArray();
+        int i = chars.length / 2;
+        char swap = chars[i];
+        chars[i] = chars[i - 1];
+        chars[i - 1] = swap;
+        return new String(chars);
+    }
+}
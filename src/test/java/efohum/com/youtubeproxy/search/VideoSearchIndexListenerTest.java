@@ -0,0 +1,78 @@
+package efohum.com.youtubeproxy.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+
+class VideoSearchIndexListenerTest {
+
+    private final VideoSearchIndex index = new VideoSearchIndex(mock(CachedVideoRepository.class));
+    private final VideoSearchIndexListener listener = new VideoSearchIndexListener(
+            new StaticListableBeanFactory(Map.of("videoSearchIndex", index)).getBeanProvider(VideoSearchIndex.class));
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testChangesReachTheIndexOnlyAfterCommit() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        listener.onSave(video("v1"));
+        int beforeCommit = index.size();
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Assert
+        assertEquals(0, beforeCommit);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testRolledBackChangesAreDiscarded() {
+        // Arrange: v1 già nell'indice, la transazione ne annulla la cancellazione e l'insert di v2
+        listener.onSave(video("v1"));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        listener.onRemove(video("v1"));
+        listener.onSave(video("v2"));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // Assert
+        assertEquals(1, index.size());
+        assertEquals(1, index.search(VideoSearchCriteria.forQuery("v1"), 10).size());
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private static CachedVideo video(String videoId) {
+        CachedVideo video = new CachedVideo();
+        video.setVideoId(videoId);
+        video.setTitle("Video " + videoId);
+        video.setPublishedAt("2024-01-01T00:00:00Z");
+        return video;
+    }
+}
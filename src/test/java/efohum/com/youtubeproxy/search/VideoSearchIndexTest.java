@@ -0,0 +1,272 @@
+package efohum.com.youtubeproxy.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoSearchFields;
+
+class VideoSearchIndexTest {
+
+    private final CachedVideoRepository videoRepository = mock(CachedVideoRepository.class);
+    private final VideoSearchIndex index = new VideoSearchIndex(videoRepository);
+
+    @Test
+    void testEveryQueryWordMustStartAnIndexedWord() {
+        // Arrange
+        index("v1", "2024-01-01T00:00:00Z", "Spring Boot Tutorial", "Learn Spring", "Tech Channel");
+        index("v2", "2024-01-02T00:00:00Z", "Advanced Spring", "Deep dive", "Code Academy");
+
+        // Act & Assert: maiuscole e punteggiatura ignorate, l'ultima parola può essere incompleta
+        assertEquals(List.of("v2", "v1"), search("SPRING", 10));
+        assertEquals(List.of("v1"), search("spring boo", 10));
+        assertEquals(List.of("v1"), search("tech, spring!", 10));
+        assertEquals(List.of(), search("spring python", 10));
+    }
+
+    @Test
+    void testToleratesTyposSubstringsAndWordOrder() {
+        // Arrange
+        index("v1", "2024-01-01T00:00:00Z", "Spring Boot Tutorial", null, "Tech Channel");
+        index("v2", "2024-01-02T00:00:00Z", "Kubernetes in production", null, "Cloud Academy");
+
+        // Act & Assert
+        assertEquals(List.of("v1"), search("sprnig", 10));            // trasposizione
+        assertEquals(List.of("v1"), search("tutoral boot", 10));      // lettera mancante, ordine invertito
+        assertEquals(List.of("v2"), search("kubernetse productoin", 10));
+        assertEquals(List.of("v2"), search("bernet", 10));            // sottostringa
+        assertEquals(List.of(), search("spx", 10));                   // sotto le 4 lettere nessun refuso
+    }
+
+    @Test
+    void testExactMatchesRankBeforeFuzzyOnes() {
+        // Arrange: il video con il refuso è più recente
+        index("exact", "2024-01-01T00:00:00Z", "Java streams");
+        index("fuzzy", "2024-06-01T00:00:00Z", "Jaba streams");
+
+        // Act
+        List<String> result = search("java streams", 10);
+
+        // Assert
+        assertEquals(List.of("exact", "fuzzy"), result);
+    }
+
+    @Test
+    void testEditDistanceCountsTranspositionsAsOneEdit() {
+        assertEquals(0, VideoSearchIndex.editDistance("spring", "spring", 2));
+        assertEquals(1, VideoSearchIndex.editDistance("spring", "sprnig", 2));
+        assertEquals(1, VideoSearchIndex.editDistance("spring", "sprint", 2));
+        assertEquals(2, VideoSearchIndex.editDistance("spring", "strong", 2));
+        assertEquals(2, VideoSearchIndex.editDistance("spring", "python", 1)); // oltre il massimo: max + 1
+    }
+
+    @Test
+    void testTopKByPublishedAtNewestFirst() {
+        // Arrange
+        for (int day = 1; day <= 9; day++) {
+            index("v" + day, "2024-01-0" + day + "T00:00:00Z", "Spring " + day);
+        }
+
+        // Act
+        List<String> result = search("spring", 3);
+
+        // Assert
+        assertEquals(List.of("v9", "v8", "v7"), result);
+    }
+
+    @Test
+    void testUpdateAndRemoveAreReflectedImmediately() {
+        // Arrange
+        index("v1", "2024-01-01T00:00:00Z", "Spring Boot");
+
+        // Act
+        index("v1", "2024-01-01T00:00:00Z", "Quarkus");
+        index("v2", "2024-01-02T00:00:00Z", "Quarkus native");
+        index.remove("v2");
+
+        // Assert
+        assertEquals(List.of(), search("spring", 10));
+        assertEquals(List.of("v1"), search("quarkus", 10));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testCompactionKeepsLiveDocuments() {
+        // Arrange: abbastanza aggiornamenti da far compattare l'indice
+        for (int i = 0; i < 3000; i++) {
+            index("v" + (i % 10), String.format("2024-01-01T00:00:%02dZ", i % 10), "title " + i);
+        }
+
+        // Act
+        List<String> result = search("title", 20);
+
+        // Assert
+        assertEquals(10, result.size());
+        assertEquals("v9", result.get(0));
+        assertEquals("v9", search("2999", 20).get(0));
+        assertTrue((int) index.getStatistics().get("deadDocuments") < 1000);
+    }
+
+    @Test
+    void testBuildsFromTheDatabaseInBatches() {
+        // Arrange
+        VideoSearchFields video = mock(VideoSearchFields.class);
+        when(video.getId()).thenReturn(1L);
+        when(video.getVideoId()).thenReturn("v1");
+        when(video.getTitle()).thenReturn("Spring Boot");
+        when(video.getPublishedAt()).thenReturn("2024-01-01T00:00:00Z");
+        when(videoRepository.findSearchFieldsAfter(anyLong(), any())).thenReturn(List.of(video));
+
+        // Act
+        index.afterSingletonsInstantiated();
+
+        // Assert
+        assertEquals(List.of("v1"), search("boot", 10));
+    }
+
+    @Test
+    void testFiltersByChannelAndPublishedRange() {
+        // Arrange
+        index.index(video("v1", "2024-01-01T00:00:00Z", "Spring Boot", "UC1", 10));
+        index.index(video("v2", "2024-02-01T00:00:00Z", "Spring Data", "UC1", 20));
+        index.index(video("v3", "2024-03-01T00:00:00Z", "Spring Cloud", "UC1", 30));
+        index.index(video("v4", "2024-02-15T00:00:00Z", "Spring Batch", "UC2", 40));
+
+        // Act
+        List<String> result = index.search(new VideoSearchCriteria("spring", "UC1",
+                Instant.parse("2024-02-01T00:00:00Z"), Instant.parse("2024-03-01T00:00:00Z"),
+                VideoSearchCriteria.Order.RELEVANCE), 10);
+
+        // Assert: publishedAfter incluso, publishedBefore escluso
+        assertEquals(List.of("v2"), result);
+        assertEquals(List.of(), index.search(new VideoSearchCriteria("spring", "UC9", null, null,
+                VideoSearchCriteria.Order.RELEVANCE), 10));
+    }
+
+    @Test
+    void testChannelWithoutQueryNewestFirst() {
+        // Arrange
+        for (int day = 1; day <= 9; day++) {
+            index.index(video("v" + day, "2024-01-0" + day + "T00:00:00Z", "Video " + day, day % 2 == 0 ? "UC2" : "UC1", day));
+        }
+
+        // Act
+        List<String> result = index.search(new VideoSearchCriteria(null, "UC1", null, null,
+                VideoSearchCriteria.Order.RELEVANCE), 3);
+
+        // Assert
+        assertEquals(List.of("v9", "v7", "v5"), result);
+    }
+
+    @Test
+    void testOrdersByViewCountDateAndTitle() {
+        // Arrange
+        index.index(video("a", "2024-01-03T00:00:00Z", "Spring zeta", "UC1", 5));
+        index.index(video("b", "2024-01-01T00:00:00Z", "Spring alfa", "UC1", 500));
+        index.index(video("c", "2024-01-02T00:00:00Z", "spring Beta", "UC1", 50));
+        index.index(video("d", "2024-01-04T00:00:00Z", "Quarkus", "UC1", 5000));
+
+        // Act
+        List<String> byViews = index.search(criteria("spring", VideoSearchCriteria.Order.VIEW_COUNT), 10);
+        List<String> byDate = index.search(criteria("spring", VideoSearchCriteria.Order.DATE), 10);
+        List<String> byTitle = index.search(criteria("spring", VideoSearchCriteria.Order.TITLE), 10);
+        List<String> topViewed = index.search(criteria(null, VideoSearchCriteria.Order.VIEW_COUNT), 2);
+
+        // Assert
+        assertEquals(List.of("b", "c", "a"), byViews);
+        assertEquals(List.of("a", "c", "b"), byDate);
+        assertEquals(List.of("b", "c", "a"), byTitle);
+        assertEquals(List.of("d", "b"), topViewed);
+    }
+
+    @Test
+    void testStatisticsUpdateMovesTheVideoInTheViewCountOrder() {
+        // Arrange
+        index.index(video("a", "2024-01-01T00:00:00Z", "Spring", "UC1", 10));
+        index.index(video("b", "2024-01-01T00:00:00Z", "Spring", "UC1", 20));
+
+        // Act
+        index.index(video("a", "2024-01-01T00:00:00Z", "Spring", "UC1", 30));
+
+        // Assert
+        assertEquals(List.of("a", "b"), index.search(criteria("spring", VideoSearchCriteria.Order.VIEW_COUNT), 10));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testPagesContinueAfterTheCursorWithoutGapsOrDuplicates() {
+        // Arrange: visualizzazioni ripetute, così le pagine tagliano gruppi con la stessa chiave
+        for (int i = 0; i < 25; i++) {
+            index.index(video("v" + i, String.format("2024-01-%02dT00:00:00Z", 1 + i % 3), "Spring " + i, "UC1", i % 4));
+        }
+
+        for (VideoSearchCriteria.Order order : VideoSearchCriteria.Order.values()) {
+            for (String query : new String[] { "spring", null }) {
+                VideoSearchCriteria criteria = criteria(query, order);
+                if (query == null && order == VideoSearchCriteria.Order.RELEVANCE) {
+                    criteria = new VideoSearchCriteria(null, "UC1", null, null, order);
+                }
+                List<String> all = index.search(criteria, 100);
+
+                // Act
+                List<String> paged = new ArrayList<>();
+                VideoSearchCursor after = null;
+                List<VideoSearchCursor> page;
+                do {
+                    page = index.search(criteria, after, 7);
+                    page.forEach(hit -> paged.add(hit.getVideoId()));
+                    after = page.isEmpty() ? null : page.get(page.size() - 1);
+                } while (page.size() == 7);
+
+                // Assert
+                assertEquals(25, all.size(), order + " " + query);
+                assertEquals(all, paged, order + " " + query);
+            }
+        }
+    }
+
+    /**
+     * Video con solo testo e data di pubblicazione, indicizzato come quelli salvati
+     */
+    private void index(String videoId, String publishedAt, String title) {
+        index(videoId, publishedAt, title, null, null);
+    }
+
+    private void index(String videoId, String publishedAt, String title, String description, String channelTitle) {
+        CachedVideo video = new CachedVideo();
+        video.setVideoId(videoId);
+        video.setPublishedAt(publishedAt);
+        video.setTitle(title);
+        video.setDescription(description);
+        video.setChannelTitle(channelTitle);
+        index.index(video);
+    }
+
+    private List<String> search(String query, int limit) {
+        return index.search(VideoSearchCriteria.forQuery(query), limit);
+    }
+
+    private static VideoSearchCriteria criteria(String query, VideoSearchCriteria.Order order) {
+        return new VideoSearchCriteria(query, null, null, null, order);
+    }
+
+    private static CachedVideo video(String videoId, String publishedAt, String title, String channelId, long viewCount) {
+        CachedVideo video = new CachedVideo();
+        video.setVideoId(videoId);
+        video.setPublishedAt(publishedAt);
+        video.setTitle(title);
+        video.setChannelId(channelId);
+        video.setViewCount(viewCount);
+        return video;
+    }
+}
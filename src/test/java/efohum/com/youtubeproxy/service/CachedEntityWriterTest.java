@@ -0,0 +1,181 @@
+package efohum.com.youtubeproxy.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import efohum.com.youtubeproxy.entity.CachedSearchResult;
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.PayloadCodec;
+import efohum.com.youtubeproxy.persistence.WriteBehindQueue;
+import efohum.com.youtubeproxy.repository.CachedSearchResultRepository;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+
+/**
+ * Upsert eseguiti dalla vera WriteBehindQueue su H2: le transazioni sono quelle del writer, non quella del test
+ */
+@DataJpaTest(showSql = false)
+@Import({ PayloadCodec.class, CachedEntityWriter.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CachedEntityWriterTest {
+
+    @Autowired
+    private CachedEntityWriter writer;
+
+    @Autowired
+    private CachedSearchResultRepository searchResultRepository;
+
+    @Autowired
+    private CachedVideoRepository videoRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    @AfterEach
+    void cleanUp() {
+        searchResultRepository.deleteAllInBatch();
+        videoRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void testFailedBatchStillSavesTheValidNewRowsOnRetry() throws Exception {
+        // Arrange: una riga già presente, il writer bloccato finché tutto il blocco è in coda
+        CachedVideo stored = video("existing", "Titolo vecchio");
+        videoRepository.save(stored);
+        WriteBehindQueue queue = new WriteBehindQueue(transactionManager, true, 100, 100, 1000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit("blocker", () -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Entità create prima dell'accodamento, come nel servizio: il nuovo tentativo riusa gli stessi oggetti
+        CachedSearchResult search = search("q1");
+        CachedVideo added = video("new", "Nuovo video");
+        CachedVideo updated = video("existing", "Titolo nuovo");
+        List<CachedVideo> multi = List.of(video("a", "A"), video("b", "B"));
+        CachedVideo invalid = video(null, "Senza videoId");
+
+        // Act: le upsert valide assegnano gli id, poi l'ultima scrittura fa fallire e annullare il blocco
+        queue.submit("search:q1", () -> writer.upsertSearch(search));
+        queue.submit("video:new", () -> writer.upsertVideo(added));
+        queue.submit("video:existing", () -> writer.upsertVideo(updated));
+        queue.submit("videos:a,b", () -> writer.upsertVideos(multi));
+        queue.submit("video:invalid", () -> writer.upsertVideo(invalid));
+        release.countDown();
+        queue.shutdown();
+
+        // Assert: ripetute una per una, solo la scrittura non valida va persa
+        assertEquals(1L, queue.getStatistics().get("failed"));
+        assertTrue(searchResultRepository.findByQueryKey("q1").isPresent());
+        assertEquals("Nuovo video", videoRepository.findByVideoId("new").orElseThrow().getTitle());
+        assertEquals("Titolo nuovo", videoRepository.findByVideoId("existing").orElseThrow().getTitle());
+        assertEquals(stored.getId(), videoRepository.findByVideoId("existing").orElseThrow().getId());
+        assertTrue(videoRepository.findByVideoId("a").isPresent());
+        assertTrue(videoRepository.findByVideoId("b").isPresent());
+        assertEquals(4L, videoRepository.count());
+    }
+
+    @Test
+    void testUpsertSearchVideosInsertsNewAndUpdatesOnlyChangedSnippets() throws Exception {
+        // Arrange: un video con lo snippet cambiato e uno invariato già nel DB, responseJson da conservare
+        CachedVideo changed = video("changed", "Titolo vecchio");
+        changed.setChannelId("c1");
+        CachedVideo unchanged = video("same", "Stesso titolo");
+        unchanged.setChannelId("c1");
+        videoRepository.saveAll(List.of(changed, unchanged));
+        Map<String, JsonNode> items = new LinkedHashMap<>();
+        items.put("new", item("Nuovo video", "c2"));
+        items.put("changed", item("Titolo nuovo", "c1"));
+        items.put("same", item("Stesso titolo", "c1"));
+
+        // Act
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> writer.upsertSearchVideos(items));
+
+        // Assert
+        assertEquals(3L, videoRepository.count());
+        assertEquals("c2", videoRepository.findByVideoId("new").orElseThrow().getChannelId());
+        CachedVideo updated = videoRepository.findByVideoId("changed").orElseThrow();
+        assertEquals("Titolo nuovo", updated.getTitle());
+        assertEquals(changed.getId(), updated.getId());
+        assertEquals("{\"items\": []}", updated.getResponseJson());
+        assertEquals("Stesso titolo", videoRepository.findByVideoId("same").orElseThrow().getTitle());
+    }
+
+    @Test
+    void testRevalidationOnlyExtendsExpiryAndNeverRecreatesADeletedRow() {
+        // Arrange: riga salvata, scaduta; la copia staccata è quella letta dal servizio prima del 304
+        CachedVideo stored = video("kept", "Titolo");
+        stored.setUpstreamEtag("etag-1");
+        stored.setExpiresAt(LocalDateTime.now().minusHours(1));
+        videoRepository.save(stored);
+        CachedVideo detached = videoRepository.findByVideoId("kept").orElseThrow();
+        detached.revalidate();
+        CachedSearchResult deleted = search("gone");
+        deleted.revalidate();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        // Act
+        transaction.executeWithoutResult(status -> writer.revalidateVideo(detached));
+        transaction.executeWithoutResult(status -> writer.revalidateSearch(deleted));
+
+        // Assert
+        CachedVideo revalidated = videoRepository.findByVideoId("kept").orElseThrow();
+        assertFalse(revalidated.isExpired());
+        assertEquals("etag-1", revalidated.getUpstreamEtag());
+        assertEquals("{\"items\": []}", revalidated.getResponseJson());
+        assertTrue(searchResultRepository.findByQueryKey("gone").isEmpty());
+    }
+
+    private static JsonNode item(String title, String channelId) throws Exception {
+        return new ObjectMapper().readTree(
+                "{\"snippet\": {\"title\": \"" + title + "\", \"channelId\": \"" + channelId + "\"}}");
+    }
+
+    private static CachedSearchResult search(String queryKey) {
+        CachedSearchResult result = new CachedSearchResult();
+        result.setQueryKey(queryKey);
+        result.setResponseJson("{\"items\": []}");
+        result.onCreate();
+        return result;
+    }
+
+    private static CachedVideo video(String videoId, String title) {
+        CachedVideo video = new CachedVideo();
+        video.setVideoId(videoId);
+        video.setTitle(title);
+        video.setResponseJson("{\"items\": []}");
+        video.onCreate();
+        return video;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package efohum.com.youtubeproxy.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import efohum.com.youtubeproxy.persistence.PayloadCodec;
+import efohum.com.youtubeproxy.service.UpstreamQuotaScheduler.Operation;
+
+@DataJpaTest(showSql = false)
+@Import({ PayloadCodec.class, UpstreamQuotaLedger.class })
+class UpstreamQuotaLedgerTest {
+
+    private static final ZoneId PACIFIC = ZoneId.of("America/Los_Angeles");
+
+    @Autowired
+    private UpstreamQuotaLedger ledger;
+
+    @Test
+    void testReplicasOnTheSameDatabaseShareOneBudget() {
+        // Arrange: due istanze con la stessa key, budget 1000 senza riserva
+        UpstreamQuotaScheduler first = scheduler();
+        UpstreamQuotaScheduler second = scheduler();
+
+        // Act: a turno, 20 search; ognuna da sola ne avrebbe 10
+        int searches = 0;
+        for (int i = 0; i < 20; i++) {
+            if ((i % 2 == 0 ? first : second).acquire(Operation.SEARCH) != null) {
+                searches++;
+            }
+        }
+
+        // Assert
+        assertEquals(10, searches);
+        assertEquals(0L, first.getStatistics().get("remaining"));
+        assertEquals(0L, second.getStatistics().get("remaining"));
+    }
+
+    @Test
+    void testRestartResumesTheSpendOfTheDay() {
+        // Arrange
+        UpstreamQuotaScheduler before = scheduler();
+        for (int i = 0; i < 7; i++) {
+            assertNotNull(before.acquire(Operation.SEARCH));
+        }
+
+        // Act: allo spegnimento il blocco prenotato e non usato torna al registro
+        before.releaseLeases();
+        UpstreamQuotaScheduler restarted = scheduler();
+
+        // Assert
+        assertEquals(700L, restarted.getStatistics().get("spent"));
+        assertNotNull(restarted.acquire(Operation.SEARCH));
+        assertNotNull(restarted.acquire(Operation.SEARCH));
+        assertNotNull(restarted.acquire(Operation.SEARCH));
+        assertNull(restarted.acquire(Operation.SEARCH));
+    }
+
+    @Test
+    void testCallsAreServedFromALeasedBlockWithoutAWritePerCall() {
+        // Arrange
+        UpstreamQuotaScheduler scheduler = scheduler();
+
+        // Act
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(scheduler.acquire(Operation.VIDEOS));
+        }
+
+        // Assert: nel registro un solo blocco, in memoria la spesa reale
+        assertEquals(UpstreamQuotaScheduler.DEFAULT_LEASE_UNITS, ledger.load(today(), List.of(keyId())).get(keyId()));
+        assertEquals(50L, scheduler.getStatistics().get("spent"));
+    }
+
+    @Test
+    void testQuotaExceededStopsTheKeyForEveryInstance() {
+        // Arrange
+        UpstreamQuotaScheduler first = scheduler();
+        UpstreamQuotaScheduler second = scheduler();
+
+        // Act
+        first.markExhausted("key");
+
+        // Assert
+        assertNull(second.acquire(Operation.VIDEOS));
+    }
+
+    private UpstreamQuotaScheduler scheduler() {
+        return new UpstreamQuotaScheduler(List.of("key"), 1000, 0, PACIFIC, Clock.systemUTC(), ledger,
+                UpstreamQuotaScheduler.DEFAULT_LEASE_UNITS);
+    }
+
+    private static LocalDate today() {
+        return LocalDate.now(PACIFIC);
+    }
+
+    private static String keyId() {
+        return UpstreamQuotaLedger.keyId("key");
+    }
+}
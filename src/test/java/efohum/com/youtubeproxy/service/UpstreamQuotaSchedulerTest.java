@@ -0,0 +1,186 @@
+package efohum.com.youtubeproxy.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import efohum.com.youtubeproxy.service.UpstreamQuotaScheduler.Operation;
+
+class UpstreamQuotaSchedulerTest {
+
+    private static final ZoneId PACIFIC = ZoneId.of("America/Los_Angeles");
+
+    @Test
+    void testSearchesStopAtReserveWhileVideosContinue() {
+        // Arrange: budget 1000, riserva 20% = 200 unità per i video
+        UpstreamQuotaScheduler scheduler = new UpstreamQuotaScheduler(List.of("key"), 1000, 20, PACIFIC, Clock.systemUTC());
+
+        // Act
+        int searches = 0;
+        while (scheduler.acquire(Operation.SEARCH) != null) {
+            searches++;
+        }
+        int videos = 0;
+        while (scheduler.acquire(Operation.VIDEOS) != null) {
+            videos++;
+        }
+
+        // Assert
+        assertEquals(8, searches);
+        assertEquals(200, videos);
+        assertEquals(0L, scheduler.getStatistics().get("remaining"));
+        assertEquals(1L, scheduler.getStatistics().get("refusedSearches"));
+        assertEquals(1L, scheduler.getStatistics().get("refusedVideos"));
+    }
+
+    @Test
+    void testBudgetResetsAtPacificMidnight() {
+        // Arrange
+        MutableClock clock = new MutableClock(ZonedDateTime.of(2026, 3, 10, 23, 59, 0, 0, PACIFIC).toInstant());
+        UpstreamQuotaScheduler scheduler = new UpstreamQuotaScheduler(List.of("key"), 100, 0, PACIFIC, clock);
+        assertEquals("key", scheduler.acquire(Operation.SEARCH));
+        scheduler.markExhausted("key");
+        assertNull(scheduler.acquire(Operation.VIDEOS));
+
+        // Act
+        clock.instant = clock.instant.plusSeconds(120);
+
+        // Assert
+        assertEquals("key", scheduler.acquire(Operation.SEARCH));
+        assertEquals(100L, scheduler.getStatistics().get("spent"));
+        assertEquals("2026-03-12T07:00:00Z", scheduler.getStatistics().get("resetAt"));
+    }
+
+    @Test
+    void testCallsAreSpreadOnKeyWithMostRemainingQuota() {
+        // Arrange
+        UpstreamQuotaScheduler scheduler = new UpstreamQuotaScheduler(List.of("key-a", "key-b"), 1000, 0, PACIFIC,
+                Clock.systemUTC());
+
+        // Act
+        String first = scheduler.acquire(Operation.SEARCH);
+        String second = scheduler.acquire(Operation.VIDEOS);
+        String third = scheduler.acquire(Operation.VIDEOS);
+        scheduler.markExhausted("key-a");
+        String afterExhausted = scheduler.acquire(Operation.SEARCH);
+
+        // Assert
+        assertEquals("key-a", first);
+        assertEquals("key-b", second);
+        assertEquals("key-b", third);
+        assertEquals("key-b", afterExhausted);
+        assertEquals(2000L, scheduler.getStatistics().get("dailyBudget"));
+        assertEquals(898L, scheduler.getStatistics().get("remaining"));
+    }
+
+    @Test
+    void testLedgerRoundTripDoesNotBlockCallsOnOtherKeys() throws Exception {
+        // Arrange: la prenotazione nel registro della prima key resta appesa
+        UpstreamQuotaLedger ledger = mock(UpstreamQuotaLedger.class);
+        when(ledger.load(any(), any())).thenReturn(Map.of());
+        CountDownLatch reserving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String blockedId = UpstreamQuotaLedger.keyId("key-a");
+        when(ledger.reserve(any(), anyString(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            if (blockedId.equals(invocation.getArgument(1))) {
+                reserving.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return true;
+        });
+        UpstreamQuotaScheduler scheduler = new UpstreamQuotaScheduler(List.of("key-a", "key-b"), 1000, 0, PACIFIC,
+                Clock.systemUTC(), ledger, 100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> blocked = executor.submit(() -> scheduler.acquire(Operation.VIDEOS));
+            assertTrue(reserving.await(5, TimeUnit.SECONDS));
+
+            // Act
+            String other = scheduler.acquire(Operation.VIDEOS);
+            String fromLease = scheduler.acquire(Operation.VIDEOS);
+            release.countDown();
+
+            // Assert: la seconda key prenota e consuma mentre la prima attende il database
+            assertEquals("key-b", other);
+            assertEquals("key-a", blocked.get(5, TimeUnit.SECONDS));
+            assertEquals("key-b", fromLease);
+            verify(ledger, times(2)).reserve(any(), anyString(), eq(100L), eq(900L));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testKeysAreParsedFromSingleAndListProperties() {
+        // Act
+        UpstreamQuotaScheduler scheduler = new UpstreamQuotaScheduler("key-a", " key-b, ,key-a,${YOUTUBE_API_KEYS}",
+                10000, 20, "America/Los_Angeles");
+
+        // Assert
+        assertTrue(scheduler.hasKeys());
+        assertEquals(2, ((List<?>) scheduler.getStatistics().get("keys")).size());
+        assertFalse(new UpstreamQuotaScheduler("", "", 10000, 20, "America/Los_Angeles").hasKeys());
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            MutableClock outer = this;
+            return new Clock() {
+                @Override
+                public ZoneId getZone() {
+                    return zone;
+                }
+
+                @Override
+                public Clock withZone(ZoneId other) {
+                    return outer.withZone(other);
+                }
+
+                @Override
+                public Instant instant() {
+                    return outer.instant;
+                }
+            };
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
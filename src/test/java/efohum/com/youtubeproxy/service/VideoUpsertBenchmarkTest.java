@@ -0,0 +1,157 @@
+package efohum.com.youtubeproxy.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.PayloadCodec;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Costo di scrittura per search dei video estratti dalla risposta (50 item, metà già nel DB):
+ * ciclo findByVideoId + save (prima) contro query IN + saveAll in una transazione (ora).
+ *
+ * mvn -Pbenchmark test
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false, properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({ PayloadCodec.class, CachedEntityWriter.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Slf4j
+class VideoUpsertBenchmarkTest {
+
+    private static final int SEARCHES = 40;
+    private static final int ITEMS_PER_SEARCH = 50;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private CachedVideoRepository videoRepository;
+
+    @Autowired
+    private CachedEntityWriter writer;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void benchmarkSearchVideoUpserts() {
+        // Arrange
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Act
+        Result before = run("loop", statistics, this::saveOneByOne);
+        Result after = run("bulk", statistics, items -> transaction.executeWithoutResult(status ->
+                writer.upsertSearchVideos(itemsById(items))));
+
+        // Assert
+        log.info("Upsert video per search ({} item, metà esistenti, media su {} search)", ITEMS_PER_SEARCH, SEARCHES);
+        log.info("{}", before);
+        log.info("{}", after);
+        assertEquals(2L * SEARCHES * ITEMS_PER_SEARCH, videoRepository.count());
+        assertTrue(after.statements < before.statements);
+        assertTrue(after.transactions < before.transactions);
+    }
+
+    private Result run(String label, Statistics statistics, Consumer<JsonNode> save) {
+        List<JsonNode> responses = new ArrayList<>();
+        for (int search = 0; search < SEARCHES; search++) {
+            // Metà degli item sono video già salvati da una search precedente
+            seed(label, search);
+            responses.add(searchResponse(label, search));
+        }
+        statistics.clear();
+        long start = System.nanoTime();
+        responses.forEach(save);
+        long elapsed = System.nanoTime() - start;
+        return new Result(label, elapsed / 1_000_000.0 / SEARCHES,
+                (double) statistics.getPrepareStatementCount() / SEARCHES,
+                (double) statistics.getTransactionCount() / SEARCHES);
+    }
+
+    /**
+     * Il percorso precedente: una lettura e un save (con la sua transazione) per ogni item
+     */
+    private void saveOneByOne(JsonNode items) {
+        for (JsonNode item : items) {
+            String videoId = item.path("id").path("videoId").asText();
+            Optional<CachedVideo> existing = videoRepository.findByVideoId(videoId);
+            CachedVideo video = existing.orElseGet(CachedVideo::new);
+            video.setVideoId(videoId);
+            video.setTitle(item.path("snippet").path("title").asText(null));
+            videoRepository.save(video);
+        }
+    }
+
+    /**
+     * Item per videoId, come li estrae il servizio dalla risposta search
+     */
+    private static Map<String, JsonNode> itemsById(JsonNode items) {
+        Map<String, JsonNode> itemsById = new LinkedHashMap<>();
+        items.forEach(item -> itemsById.putIfAbsent(item.path("id").path("videoId").asText(), item));
+        return itemsById;
+    }
+
+    private void seed(String label, int search) {
+        List<CachedVideo> videos = new ArrayList<>();
+        for (int i = 0; i < ITEMS_PER_SEARCH / 2; i++) {
+            CachedVideo video = new CachedVideo();
+            video.setVideoId(videoId(label, search, i));
+            video.setTitle("vecchio titolo");
+            videos.add(video);
+        }
+        videoRepository.saveAll(videos);
+    }
+
+    private JsonNode searchResponse(String label, int search) {
+        ArrayNode items = objectMapper.createArrayNode();
+        for (int i = 0; i < ITEMS_PER_SEARCH; i++) {
+            ObjectNode item = items.addObject();
+            item.putObject("id").put("videoId", videoId(label, search, i));
+            ObjectNode snippet = item.putObject("snippet");
+            snippet.put("title", "Video " + i);
+            snippet.put("channelId", "channel-" + search);
+        }
+        return items;
+    }
+
+    private static String videoId(String label, int search, int item) {
+        return label + "-" + search + "-" + item;
+    }
+
+    private record Result(String label, double millis, double statements, double transactions) {
+        @Override
+        public String toString() {
+            return String.format("  %-5s %6.2f ms  %6.1f statement  %5.1f transazioni", label, millis, statements, transactions);
+        }
+    }
+}
@@ -1,31 +1,49 @@
 package efohum.com.youtubeproxy.service;
 
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import efohum.com.youtubeproxy.cache.BackgroundRefresher;
+import efohum.com.youtubeproxy.cache.LocalResponseCache;
+import efohum.com.youtubeproxy.cache.RedisResponseCache;
 import efohum.com.youtubeproxy.entity.CachedSearchResult;
 import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.WriteBehindQueue;
 import efohum.com.youtubeproxy.repository.CachedSearchResultRepository;
 import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoMetadata;
+import efohum.com.youtubeproxy.search.VideoSearchIndex;
 
 @ExtendWith(MockitoExtension.class)
 public class YouTubeProxyServiceReconstructionTest {
@@ -37,17 +55,38 @@ public class YouTubeProxyServiceReconstructionTest {
     private CachedVideoRepository videoRepository;
     
     @Mock
-    private WebClient.Builder webClientBuilder;
+    private LocalResponseCache localCache;
+    
+    @Mock
+    private RedisResponseCache sharedCache;
+    
+    @Mock
+    private BackgroundRefresher backgroundRefresher;
+    
+    @Mock
+    private WriteBehindQueue writeBehindQueue;
+    
+    @Mock
+    private WebClient youtubeWebClient;
+    
+    private UpstreamQuotaScheduler quotaScheduler =
+        new UpstreamQuotaScheduler(List.of(), 10000, 20, ZoneId.of("America/Los_Angeles"), Clock.systemUTC()); // Simula API key non configurata
     
     @InjectMocks
     private YouTubeProxyService service;
     
     private ObjectMapper objectMapper = new ObjectMapper();
     
+    private VideoSearchIndex searchIndex;
+    
+    private final ProjectionFactory projections = new SpelAwareProxyProjectionFactory();
+    
     @BeforeEach
     void setUp() {
         ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
-        ReflectionTestUtils.setField(service, "apiKey", null); // Simula API key non configurata
+        ReflectionTestUtils.setField(service, "quotaScheduler", quotaScheduler);
+        searchIndex = new VideoSearchIndex(videoRepository);
+        ReflectionTestUtils.setField(service, "videoSearchIndex", searchIndex);
     }
     
     @Test
@@ -71,7 +110,7 @@ public class YouTubeProxyServiceReconstructionTest {
         video2.setPublishedAt("2024-01-02T00:00:00Z");
         video2.setThumbnailUrl("https://example.com/thumb2.jpg");
         
-        when(videoRepository.findAll()).thenReturn(List.of(video1, video2));
+        givenVideosInDatabase(video1, video2);
         when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
         
         // When: Cerchiamo "spring"
@@ -96,7 +135,7 @@ public class YouTubeProxyServiceReconstructionTest {
         video.setTitle("Python Tutorial");
         video.setDescription("Learn Python");
         
-        when(videoRepository.findAll()).thenReturn(List.of(video));
+        givenVideosInDatabase(video);
         when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
         
         // When: Cerchiamo "java" (non presente)
@@ -146,7 +185,7 @@ public class YouTubeProxyServiceReconstructionTest {
         video.setChannelTitle("Learning Channel");
         video.setPublishedAt("2024-01-01T00:00:00Z");
         
-        when(videoRepository.findAll()).thenReturn(List.of(video));
+        givenVideosInDatabase(video);
         when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
         
         // When
@@ -172,7 +211,7 @@ public class YouTubeProxyServiceReconstructionTest {
         video.setChannelTitle("Spring Tech Channel");
         video.setPublishedAt("2024-01-01T00:00:00Z");
         
-        when(videoRepository.findAll()).thenReturn(List.of(video));
+        givenVideosInDatabase(video);
         when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
         
         // When
@@ -187,16 +226,98 @@ public class YouTubeProxyServiceReconstructionTest {
         assertTrue(result.contains("Spring Tech Channel"));
     }
     
+    @Test
+    void testSearchVideosToleratesTyposAndWordOrder() {
+        // Given: Video con "Spring Boot Tutorial" nel titolo
+        givenVideosInDatabase(createTestVideo("video1", "Spring Boot Tutorial"));
+        when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
+        
+        // When: query con un refuso e parole invertite
+        Map<String, String> params = new HashMap<>();
+        params.put("q", "tutorial sprnig");
+        params.put("maxResults", "5");
+        
+        // Then: Dovrebbe trovare comunque il video
+        String result = service.searchVideos(params);
+        assertTrue(result.contains("video1"));
+        assertTrue(result.contains("reconstructed-from-db"));
+    }
+    
+    @Test
+    void testReconstructResponse_AppliesChannelDateAndOrder() {
+        // Given: video di due canali con date e visualizzazioni diverse
+        CachedVideo old = createTestVideo("old", "Spring old");
+        old.setViewCount(1000L);
+        CachedVideo popular = createTestVideo("popular", "Spring popular");
+        popular.setPublishedAt("2024-06-01T00:00:00Z");
+        popular.setViewCount(500L);
+        CachedVideo recent = createTestVideo("recent", "Spring recent");
+        recent.setPublishedAt("2024-07-01T00:00:00Z");
+        recent.setViewCount(10L);
+        CachedVideo otherChannel = createTestVideo("other", "Spring other");
+        otherChannel.setChannelId("channel2");
+        otherChannel.setPublishedAt("2024-06-01T00:00:00Z");
+        otherChannel.setViewCount(9999L);
+        givenVideosInDatabase(old, popular, recent, otherChannel);
+        when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
+        
+        // When: canale, data minima e ordinamento per visualizzazioni
+        Map<String, String> params = new HashMap<>();
+        params.put("q", "spring");
+        params.put("channelId", "channel1");
+        params.put("publishedAfter", "2024-05-01T00:00:00Z");
+        params.put("order", "viewCount");
+        
+        // Then: solo i video recenti del canale, il più visto per primo
+        String result = service.searchVideos(params);
+        assertNotNull(result);
+        assertFalse(result.contains("\"old\""));
+        assertFalse(result.contains("\"other\""));
+        assertTrue(result.indexOf("\"popular\"") < result.indexOf("\"recent\""));
+    }
+    
+    @Test
+    void testReconstructResponse_NextPageTokenContinuesFromTheLastVideo() throws Exception {
+        // Given: 5 video nel DB, pagine da 2
+        givenVideosInDatabase(
+            createTestVideo("v1", "Spring 1"),
+            createTestVideo("v2", "Spring 2"),
+            createTestVideo("v3", "Spring 3"),
+            createTestVideo("v4", "Spring 4"),
+            createTestVideo("v5", "Spring 5")
+        );
+        when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
+        Map<String, String> params = new HashMap<>();
+        params.put("q", "spring");
+        params.put("maxResults", "2");
+        
+        // When: si segue nextPageToken fino all'ultima pagina
+        List<String> videoIds = new ArrayList<>();
+        int pages = 0;
+        String pageToken;
+        do {
+            JsonNode page = objectMapper.readTree(service.searchVideos(params));
+            page.path("items").forEach(item -> videoIds.add(item.path("id").path("videoId").asText()));
+            pageToken = page.path("nextPageToken").asText(null);
+            params.put("pageToken", pageToken);
+            pages++;
+        } while (pageToken != null);
+        
+        // Then: tutti i video, una sola volta, in 3 pagine
+        assertEquals(List.of("v1", "v2", "v3", "v4", "v5"), videoIds);
+        assertEquals(3, pages);
+    }
+    
     @Test
     void testReconstructResponse_LimitsResults() {
         // Given: 10 video nel DB ma maxResults=3
-        when(videoRepository.findAll()).thenReturn(List.of(
+        givenVideosInDatabase(
             createTestVideo("v1", "Spring 1"),
             createTestVideo("v2", "Spring 2"),
             createTestVideo("v3", "Spring 3"),
             createTestVideo("v4", "Spring 4"),
             createTestVideo("v5", "Spring 5")
-        ));
+        );
         when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
         
         // When: maxResults=3
@@ -213,6 +334,22 @@ public class YouTubeProxyServiceReconstructionTest {
         assertEquals(3, videoCount);
     }
     
+    /**
+     * Video presenti nel DB: indicizzati e restituiti dalla query IN sui candidati
+     */
+    private void givenVideosInDatabase(CachedVideo... videos) {
+        for (CachedVideo video : videos) {
+            searchIndex.index(video);
+        }
+        // Metadati come li restituisce la proiezione di Spring Data
+        lenient().when(videoRepository.findMetadataByVideoIdIn(any())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            return Arrays.stream(videos).filter(video -> ids.contains(video.getVideoId()))
+                .map(video -> projections.createProjection(VideoMetadata.class, video))
+                .collect(Collectors.toList());
+        });
+    }
+    
     private CachedVideo createTestVideo(String id, String title) {
         CachedVideo video = new CachedVideo();
         video.setVideoId(id);
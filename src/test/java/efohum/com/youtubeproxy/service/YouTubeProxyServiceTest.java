@@ -1,33 +1,64 @@
 package efohum.com.youtubeproxy.service;
 
+import java.time.Clock;
+import java.time.ZoneId;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import efohum.com.youtubeproxy.cache.BackgroundRefresher;
+import efohum.com.youtubeproxy.cache.CachedPayload;
+import efohum.com.youtubeproxy.cache.LocalResponseCache;
+import efohum.com.youtubeproxy.cache.RedisResponseCache;
 import efohum.com.youtubeproxy.entity.CachedSearchResult;
 import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.persistence.WriteBehindQueue;
 import efohum.com.youtubeproxy.repository.CachedSearchResultRepository;
 import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoMetadata;
+import efohum.com.youtubeproxy.search.VideoSearchIndex;
+import efohum.com.youtubeproxy.statistics.VideoStatisticsSummary;
 import reactor.core.publisher.Mono;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,7 +71,19 @@ class YouTubeProxyServiceTest {
     private CachedVideoRepository videoRepository;
 
     @Mock
-    private WebClient.Builder webClientBuilder;
+    private LocalResponseCache localCache;
+
+    @Mock
+    private RedisResponseCache sharedCache;
+
+    @Mock
+    private BackgroundRefresher backgroundRefresher;
+
+    @Mock
+    private WriteBehindQueue writeBehindQueue;
+
+    @Mock
+    private VideoSearchIndex videoSearchIndex;
 
     @Mock
     private ObjectMapper objectMapper;
@@ -57,16 +100,25 @@ class YouTubeProxyServiceTest {
     @Mock
     private WebClient.ResponseSpec responseSpec;
 
+    private static final String API_KEY = "test-api-key";
+
+    private UpstreamQuotaScheduler quotaScheduler =
+        new UpstreamQuotaScheduler(List.of(API_KEY), 10000, 20, ZoneId.of("America/Los_Angeles"), Clock.systemUTC());
+
     @InjectMocks
     private YouTubeProxyService youTubeProxyService;
 
-    private static final String API_KEY = "test-api-key";
-    private static final String BASE_URL = "https://www.googleapis.com/youtube/v3";
-
     @BeforeEach
     void setUp() {
-        ReflectionTestUtils.setField(youTubeProxyService, "apiKey", API_KEY);
-        ReflectionTestUtils.setField(youTubeProxyService, "baseUrl", BASE_URL);
+        ReflectionTestUtils.setField(youTubeProxyService, "quotaScheduler", quotaScheduler);
+        ReflectionTestUtils.setField(youTubeProxyService, "cachedEntityWriter",
+            new CachedEntityWriter(searchResultRepository, videoRepository,
+                new StaticListableBeanFactory().getBeanProvider(VideoStatisticsSummary.class)));
+        // Scrittura differita eseguita subito: le verifiche sui repository restano sincrone
+        lenient().doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(writeBehindQueue).submit(anyString(), any(Runnable.class));
     }
 
     @Test
@@ -92,7 +144,28 @@ class YouTubeProxyServiceTest {
         assertNotNull(result);
         assertEquals("{\"items\": []}", result);
         verify(searchResultRepository, times(1)).findByQueryKey(anyString());
-        verify(webClientBuilder, never()).baseUrl(anyString());
+        verify(webClient, never()).get();
+    }
+
+    @Test
+    void testSearchVideos_LocalCacheHit() {
+        // Arrange
+        Map<String, String> params = new HashMap<>();
+        params.put("part", "snippet");
+        params.put("q", "hot query");
+
+        CachedPayload payload = new CachedPayload("{\"items\": [\"l1\"]}",
+            LocalDateTime.now(), LocalDateTime.now().plusHours(1));
+
+        when(localCache.getSearch(anyString())).thenReturn(Optional.of(payload));
+
+        // Act
+        String result = youTubeProxyService.searchVideos(params);
+
+        // Assert
+        assertEquals("{\"items\": [\"l1\"]}", result);
+        verify(searchResultRepository, never()).findByQueryKey(anyString());
+        verify(webClient, never()).get();
     }
 
     @Test
@@ -106,8 +179,6 @@ class YouTubeProxyServiceTest {
 
         when(searchResultRepository.findByQueryKey(anyString()))
             .thenReturn(Optional.empty());
-        when(webClientBuilder.baseUrl(BASE_URL)).thenReturn(webClientBuilder);
-        when(webClientBuilder.build()).thenReturn(webClient);
         when(webClient.get()).thenReturn(requestHeadersUriSpec);
         when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
             .thenReturn(requestHeadersSpec);
@@ -125,6 +196,116 @@ class YouTubeProxyServiceTest {
         verify(searchResultRepository, times(1)).save(any(CachedSearchResult.class));
     }
 
+    @Test
+    void testSearchVideos_MissRespondsBeforeTheDatabaseWrite() throws Exception {
+        // Arrange: la coda di scrittura trattiene le upsert (search e video estratti)
+        ReflectionTestUtils.setField(youTubeProxyService, "objectMapper", new ObjectMapper());
+        Map<String, String> params = new HashMap<>();
+        params.put("part", "snippet");
+        params.put("q", "write behind");
+        String apiResponse = "{\"items\": [{\"id\": {\"videoId\": \"v1\"}, \"snippet\": {\"title\": \"Video\"}}]}";
+        List<Runnable> pendingWrites = new ArrayList<>();
+        doAnswer(invocation -> pendingWrites.add(invocation.getArgument(1)))
+            .when(writeBehindQueue).submit(anyString(), any(Runnable.class));
+
+        when(searchResultRepository.findByQueryKey(anyString()))
+            .thenReturn(Optional.empty());
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(apiResponse));
+
+        // Act
+        String result = youTubeProxyService.searchVideos(params);
+
+        // Assert: risposta e cache L1 subito, il DB solo al flush della coda
+        assertEquals(apiResponse, result);
+        verify(localCache).putSearch(anyString(), any(CachedPayload.class));
+        verify(searchResultRepository, never()).save(any(CachedSearchResult.class));
+        assertEquals(2, pendingWrites.size());
+        pendingWrites.get(0).run();
+        verify(searchResultRepository, times(1)).save(any(CachedSearchResult.class));
+    }
+
+    @Test
+    void testSearchVideos_ExtractedVideosAreUpsertedWithoutReadingPayloads() {
+        // Arrange: un video nuovo, uno invariato e uno con il titolo cambiato
+        ReflectionTestUtils.setField(youTubeProxyService, "objectMapper", new ObjectMapper());
+        Map<String, String> params = new HashMap<>();
+        params.put("part", "snippet");
+        params.put("q", "upsert");
+        String apiResponse = "{\"items\": ["
+            + "{\"id\": {\"videoId\": \"new\"}, \"snippet\": {\"title\": \"Nuovo\"}},"
+            + "{\"id\": {\"videoId\": \"same\"}, \"snippet\": {\"title\": \"Uguale\"}},"
+            + "{\"id\": {\"videoId\": \"changed\"}, \"snippet\": {\"title\": \"Titolo nuovo\"}}]}";
+        CachedVideo same = new CachedVideo();
+        same.setId(1L);
+        same.setVideoId("same");
+        same.setTitle("Uguale");
+        CachedVideo changed = new CachedVideo();
+        changed.setId(2L);
+        changed.setVideoId("changed");
+        changed.setTitle("Titolo vecchio");
+
+        when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
+        ProjectionFactory projections = new SpelAwareProxyProjectionFactory();
+        when(videoRepository.findMetadataByVideoIdIn(any())).thenReturn(List.of(
+            projections.createProjection(VideoMetadata.class, same), projections.createProjection(VideoMetadata.class, changed)));
+        when(videoRepository.findAllById(any())).thenReturn(List.of(changed));
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(apiResponse));
+
+        // Act
+        youTubeProxyService.searchVideos(params);
+
+        // Assert: entità completa letta solo per il video cambiato, salvata insieme al nuovo
+        verify(videoRepository, never()).findByVideoIdIn(any());
+        verify(videoRepository).findAllById(argThat(ids -> ids.equals(java.util.Set.of(2L))));
+        verify(videoRepository).saveAll(argThat(videos -> ((List<CachedVideo>) videos).size() == 2
+            && ((List<CachedVideo>) videos).get(0).getVideoId().equals("new")
+            && ((List<CachedVideo>) videos).get(1).getTitle().equals("Titolo nuovo")));
+    }
+
+    @Test
+    void testSearchVideos_ConcurrentMissesAreCoalesced() throws Exception {
+        // Arrange
+        Map<String, String> params = new HashMap<>();
+        params.put("part", "snippet");
+        params.put("q", "popular");
+
+        String apiResponse = "{\"items\": []}";
+
+        when(searchResultRepository.findByQueryKey(anyString()))
+            .thenReturn(Optional.empty());
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class))
+            .thenReturn(Mono.just(apiResponse).delayElement(Duration.ofMillis(300)));
+        when(searchResultRepository.save(any(CachedSearchResult.class)))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(() -> youTubeProxyService.searchVideos(new HashMap<>(params))));
+        }
+
+        // Assert
+        for (Future<String> result : results) {
+            assertEquals(apiResponse, result.get(5, TimeUnit.SECONDS));
+        }
+        verify(webClient, times(1)).get();
+        verify(searchResultRepository, times(1)).save(any(CachedSearchResult.class));
+        executor.shutdownNow();
+    }
+
     @Test
     void testSearchVideos_CacheExpired() {
         // Arrange
@@ -143,8 +324,6 @@ class YouTubeProxyServiceTest {
 
         when(searchResultRepository.findByQueryKey(anyString()))
             .thenReturn(Optional.of(expiredResult));
-        when(webClientBuilder.baseUrl(BASE_URL)).thenReturn(webClientBuilder);
-        when(webClientBuilder.build()).thenReturn(webClient);
         when(webClient.get()).thenReturn(requestHeadersUriSpec);
         when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
             .thenReturn(requestHeadersSpec);
@@ -162,6 +341,176 @@ class YouTubeProxyServiceTest {
         verify(searchResultRepository, times(1)).save(any(CachedSearchResult.class));
     }
 
+    @Test
+    void testSearchVideos_StaleWithinWindowIsServedAndRefreshedInBackground() {
+        // Arrange
+        ReflectionTestUtils.setField(youTubeProxyService, "staleWhileRevalidateSeconds", 3600L);
+        Map<String, String> params = new HashMap<>();
+        params.put("part", "snippet");
+        params.put("q", "stale");
+
+        CachedSearchResult staleResult = new CachedSearchResult();
+        staleResult.setQueryKey("stale-key");
+        staleResult.setResponseJson("{\"stale\": true}");
+        staleResult.setCreatedAt(LocalDateTime.now().minusHours(25));
+        staleResult.setExpiresAt(LocalDateTime.now().minusMinutes(10));
+        staleResult.setId(1L);
+
+        when(searchResultRepository.findByQueryKey(anyString()))
+            .thenReturn(Optional.of(staleResult));
+
+        // Act
+        String result = youTubeProxyService.searchVideos(params);
+
+        // Assert: risposta immediata, nessuna chiamata upstream bloccante
+        assertEquals("{\"stale\": true}", result);
+        verify(backgroundRefresher, times(1)).schedule(anyString(), any(Runnable.class));
+        verify(webClient, never()).get();
+        verify(searchResultRepository, never()).save(any(CachedSearchResult.class));
+    }
+
+    @Test
+    void testSearchVideos_BackgroundRefreshUpdatesCache() {
+        // Arrange
+        ReflectionTestUtils.setField(youTubeProxyService, "staleWhileRevalidateSeconds", 3600L);
+        Map<String, String> params = new HashMap<>();
+        params.put("part", "snippet");
+        params.put("q", "stale");
+
+        CachedSearchResult staleResult = new CachedSearchResult();
+        staleResult.setQueryKey("stale-key");
+        staleResult.setResponseJson("{\"stale\": true}");
+        staleResult.setCreatedAt(LocalDateTime.now().minusHours(25));
+        staleResult.setExpiresAt(LocalDateTime.now().minusMinutes(10));
+        staleResult.setId(1L);
+
+        when(searchResultRepository.findByQueryKey(anyString()))
+            .thenReturn(Optional.of(staleResult));
+        List<Runnable> refreshes = new ArrayList<>();
+        doAnswer(invocation -> refreshes.add(invocation.getArgument(1)))
+            .when(backgroundRefresher).schedule(anyString(), any(Runnable.class));
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just("{\"fresh\": true}"));
+        when(searchResultRepository.save(any(CachedSearchResult.class)))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act: il refresh gira dopo la risposta al client, come sul thread di background
+        String result = youTubeProxyService.searchVideos(params);
+        refreshes.forEach(Runnable::run);
+
+        // Assert: il client riceve il dato stale, il refresh salva quello nuovo
+        assertEquals("{\"stale\": true}", result);
+        assertEquals(1, refreshes.size());
+        verify(searchResultRepository, times(1)).save(any(CachedSearchResult.class));
+    }
+
+    @Test
+    void testGetVideoDetails_RefreshScheduledDuringTheForegroundLoadCallsUpstream() {
+        // Arrange: video stale nel DB, il refresh parte su un altro thread mentre il caricamento è ancora in corso
+        ReflectionTestUtils.setField(youTubeProxyService, "staleWhileRevalidateSeconds", 3600L);
+        String videoId = "stale-video";
+
+        CachedVideo staleVideo = new CachedVideo();
+        staleVideo.setVideoId(videoId);
+        staleVideo.setResponseJson("{\"stale\": true}");
+        staleVideo.setCreatedAt(LocalDateTime.now().minusHours(25));
+        staleVideo.setExpiresAt(LocalDateTime.now().minusMinutes(10));
+        staleVideo.setId(1L);
+
+        when(videoRepository.findByVideoId(videoId)).thenReturn(Optional.of(staleVideo));
+        AtomicBoolean refreshCompleted = new AtomicBoolean();
+        doAnswer(invocation -> {
+            Thread refresh = new Thread(invocation.<Runnable>getArgument(1));
+            refresh.start();
+            refresh.join(TimeUnit.SECONDS.toMillis(5));
+            refreshCompleted.set(!refresh.isAlive());
+            return true;
+        }).when(backgroundRefresher).schedule(anyString(), any(Runnable.class));
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just("{\"items\": []}"));
+
+        // Act
+        String result = youTubeProxyService.getVideoDetails(videoId, new HashMap<>());
+
+        // Assert: il refresh non si accoda al caricamento in primo piano e salva la risposta nuova
+        assertEquals("{\"stale\": true}", result);
+        assertTrue(refreshCompleted.get());
+        verify(videoRepository, times(1)).save(argThat(video -> "{\"items\": []}".equals(video.getResponseJson())));
+    }
+
+    @Test
+    void testGetVideoDetails_PastHardTtlBlocksOnUpstream() {
+        // Arrange
+        ReflectionTestUtils.setField(youTubeProxyService, "staleWhileRevalidateSeconds", 3600L);
+        String videoId = "very-old-video";
+
+        CachedVideo oldVideo = new CachedVideo();
+        oldVideo.setVideoId(videoId);
+        oldVideo.setResponseJson("{\"old\": \"video\"}");
+        oldVideo.setCreatedAt(LocalDateTime.now().minusDays(3));
+        oldVideo.setExpiresAt(LocalDateTime.now().minusDays(2));
+        oldVideo.setId(1L);
+
+        when(videoRepository.findByVideoId(videoId)).thenReturn(Optional.of(oldVideo));
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just("{\"items\": []}"));
+        when(videoRepository.save(any(CachedVideo.class)))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        String result = youTubeProxyService.getVideoDetails(videoId, new HashMap<>());
+
+        // Assert
+        assertEquals("{\"items\": []}", result);
+        verify(backgroundRefresher, never()).schedule(anyString(), any(Runnable.class));
+    }
+
+    @Test
+    void testGetVideoDetails_UpstreamNotModifiedOnlyExtendsExpiry() throws Exception {
+        // Arrange: video scaduto con l'etag di YouTube, che risponde 304
+        ReflectionTestUtils.setField(youTubeProxyService, "staleWhileRevalidateSeconds", 3600L);
+        String videoId = "unchanged-video";
+        String json = "{\"etag\": \"abc\", \"items\": []}";
+
+        CachedVideo oldVideo = new CachedVideo();
+        oldVideo.setId(1L);
+        oldVideo.setVideoId(videoId);
+        oldVideo.setResponseJson(json);
+        oldVideo.setUpstreamEtag("abc");
+        oldVideo.setCreatedAt(LocalDateTime.now().minusDays(3));
+        oldVideo.setExpiresAt(LocalDateTime.now().minusDays(2));
+
+        when(videoRepository.findByVideoId(videoId)).thenReturn(Optional.of(oldVideo));
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.header(HttpHeaders.IF_NONE_MATCH, "abc")).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.exchangeToMono(any())).thenAnswer(invocation -> invocation
+            .<java.util.function.Function<ClientResponse, Mono<?>>>getArgument(0)
+            .apply(ClientResponse.create(HttpStatus.NOT_MODIFIED).build()));
+
+        // Act
+        String result = youTubeProxyService.getVideoDetails(videoId, new HashMap<>());
+
+        // Assert: stessa risposta, nuova scadenza, nessun corpo scaricato né JSON rianalizzato
+        assertEquals(json, result);
+        verify(requestHeadersSpec, never()).retrieve();
+        verify(objectMapper, never()).readTree(anyString());
+        verify(videoRepository).revalidate(eq(videoId),
+            argThat(expiresAt -> expiresAt.isAfter(LocalDateTime.now().plusHours(23))), eq("abc"));
+        verify(videoRepository, never()).save(any(CachedVideo.class));
+        verify(localCache).putVideo(eq(videoId), argThat(payload -> !payload.isExpired()));
+    }
+
     @Test
     void testGetVideoDetails_CacheHit() {
         // Arrange
@@ -185,7 +534,26 @@ class YouTubeProxyServiceTest {
         assertNotNull(result);
         assertEquals("{\"items\": [{\"id\": \"test-video-id\"}]}", result);
         verify(videoRepository, times(1)).findByVideoId(videoId);
-        verify(webClientBuilder, never()).baseUrl(anyString());
+        verify(webClient, never()).get();
+    }
+
+    @Test
+    void testGetVideoDetails_DatabaseHitPopulatesLocalCache() {
+        // Arrange
+        String videoId = "db-video-id";
+        CachedVideo cachedVideo = new CachedVideo();
+        cachedVideo.setVideoId(videoId);
+        cachedVideo.setResponseJson("{\"items\": [{\"id\": \"db-video-id\"}]}");
+        cachedVideo.setCreatedAt(LocalDateTime.now());
+        cachedVideo.setExpiresAt(LocalDateTime.now().plusHours(1));
+
+        when(videoRepository.findByVideoId(videoId)).thenReturn(Optional.of(cachedVideo));
+
+        // Act
+        youTubeProxyService.getVideoDetails(videoId, new HashMap<>());
+
+        // Assert
+        verify(localCache, times(1)).putVideo(eq(videoId), any(CachedPayload.class));
     }
 
     @Test
@@ -199,8 +567,6 @@ class YouTubeProxyServiceTest {
 
         when(videoRepository.findByVideoId(videoId))
             .thenReturn(Optional.empty());
-        when(webClientBuilder.baseUrl(BASE_URL)).thenReturn(webClientBuilder);
-        when(webClientBuilder.build()).thenReturn(webClient);
         when(webClient.get()).thenReturn(requestHeadersUriSpec);
         when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
             .thenReturn(requestHeadersSpec);
@@ -235,8 +601,6 @@ class YouTubeProxyServiceTest {
 
         when(videoRepository.findByVideoId(videoId))
             .thenReturn(Optional.of(expiredVideo));
-        when(webClientBuilder.baseUrl(BASE_URL)).thenReturn(webClientBuilder);
-        when(webClientBuilder.build()).thenReturn(webClient);
         when(webClient.get()).thenReturn(requestHeadersUriSpec);
         when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
             .thenReturn(requestHeadersSpec);
@@ -253,4 +617,277 @@ class YouTubeProxyServiceTest {
         assertEquals(newApiResponse, result);
         verify(videoRepository, times(1)).save(any(CachedVideo.class));
     }
+
+    @Test
+    void testGetVideoDetails_MultipleIdsFetchesOnlyMissing() throws Exception {
+        // Arrange
+        ObjectMapper realMapper = new ObjectMapper();
+        ReflectionTestUtils.setField(youTubeProxyService, "objectMapper", realMapper);
+        Map<String, String> params = new HashMap<>();
+        params.put("part", "snippet");
+
+        CachedVideo cachedVideo = new CachedVideo();
+        cachedVideo.setVideoId("cached");
+        cachedVideo.setResponseJson("{\"items\": [{\"id\": \"cached\"}]}");
+        cachedVideo.setCreatedAt(LocalDateTime.now());
+        cachedVideo.setExpiresAt(LocalDateTime.now().plusHours(1));
+
+        String apiResponse = "{\"kind\": \"youtube#videoListResponse\", \"items\": ["
+            + "{\"id\": \"missing2\", \"snippet\": {}}, {\"id\": \"missing1\", \"snippet\": {}}]}";
+
+        when(videoRepository.findByVideoIdIn(any())).thenReturn(List.of(cachedVideo));
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(apiResponse));
+        when(videoRepository.saveAll(any()))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        String result = youTubeProxyService.getVideoDetails("missing1, cached,missing2,cached", params);
+
+        // Assert: una sola chiamata upstream, item nell'ordine richiesto, duplicati rimossi
+        List<String> ids = new ArrayList<>();
+        realMapper.readTree(result).path("items").forEach(item -> ids.add(item.path("id").asText()));
+        assertEquals(List.of("missing1", "cached", "missing2"), ids);
+        assertEquals(3, realMapper.readTree(result).path("pageInfo").path("totalResults").asInt());
+        verify(webClient, times(1)).get();
+        verify(videoRepository, never()).findByVideoId(anyString());
+        verify(localCache).putVideo(eq("missing1"), any(CachedPayload.class));
+    }
+
+    @Test
+    void testGetVideoDetails_MultipleIdsAllCachedSkipsUpstream() throws Exception {
+        // Arrange
+        ObjectMapper realMapper = new ObjectMapper();
+        ReflectionTestUtils.setField(youTubeProxyService, "objectMapper", realMapper);
+        LocalDateTime now = LocalDateTime.now();
+        when(localCache.getVideo("a"))
+            .thenReturn(Optional.of(new CachedPayload("{\"items\": [{\"id\": \"a\"}]}", now, now.plusHours(1))));
+        when(localCache.getVideo("b"))
+            .thenReturn(Optional.of(new CachedPayload("{\"items\": [{\"id\": \"b\"}]}", now, now.plusHours(1))));
+
+        // Act
+        String result = youTubeProxyService.getVideoDetails("b,a", new HashMap<>());
+
+        // Assert
+        assertEquals("b", realMapper.readTree(result).path("items").path(0).path("id").asText());
+        assertEquals(2, realMapper.readTree(result).path("items").size());
+        verify(videoRepository, never()).findByVideoIdIn(any());
+        verify(webClient, never()).get();
+    }
+
+    @Test
+    void testGetVideoDetails_MultipleIdsReadRedisWithOneRoundTrip() throws Exception {
+        // Arrange: "a" in memoria, "b" e "c" solo su Redis
+        ObjectMapper realMapper = new ObjectMapper();
+        ReflectionTestUtils.setField(youTubeProxyService, "objectMapper", realMapper);
+        LocalDateTime now = LocalDateTime.now();
+        CachedPayload b = new CachedPayload("{\"items\": [{\"id\": \"b\"}]}", now, now.plusHours(1));
+        CachedPayload c = new CachedPayload("{\"items\": [{\"id\": \"c\"}]}", now, now.plusHours(1));
+        when(localCache.getVideo("a"))
+            .thenReturn(Optional.of(new CachedPayload("{\"items\": [{\"id\": \"a\"}]}", now, now.plusHours(1))));
+        when(localCache.getVideo("b")).thenReturn(Optional.empty());
+        when(localCache.getVideo("c")).thenReturn(Optional.empty());
+        when(sharedCache.getVideos(List.of("c", "b"))).thenReturn(Map.of("b", b, "c", c));
+
+        // Act
+        String result = youTubeProxyService.getVideoDetails("c,a,b", new HashMap<>());
+
+        // Assert
+        List<String> ids = new ArrayList<>();
+        realMapper.readTree(result).path("items").forEach(item -> ids.add(item.path("id").asText()));
+        assertEquals(List.of("c", "a", "b"), ids);
+        verify(sharedCache, times(1)).getVideos(List.of("c", "b"));
+        verify(sharedCache, never()).getVideo(anyString());
+        verify(localCache).putVideo("b", b);
+        verify(webClient, never()).get();
+    }
+
+    @Test
+    void testSearchVideosReactive_LocalCacheHit() {
+        // Arrange
+        LocalDateTime now = LocalDateTime.now();
+        when(localCache.getSearch(anyString()))
+            .thenReturn(Optional.of(new CachedPayload("{\"items\": [\"l1\"]}", now, now.plusHours(1))));
+
+        // Act
+        String result = youTubeProxyService.searchVideosReactive(new HashMap<>()).block(Duration.ofSeconds(5));
+
+        // Assert
+        assertEquals("{\"items\": [\"l1\"]}", result);
+        verify(sharedCache, never()).getSearchAsync(anyString());
+        verify(searchResultRepository, never()).findByQueryKey(anyString());
+    }
+
+    @Test
+    void testSearchVideosReactive_CacheMissCallsUpstreamWithoutBlocking() {
+        // Arrange
+        Map<String, String> params = new HashMap<>();
+        params.put("q", "reactive");
+        String apiResponse = "{\"items\": []}";
+
+        when(sharedCache.getSearchAsync(anyString())).thenReturn(Mono.empty());
+        when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class))
+            .thenReturn(Mono.just(apiResponse).delayElement(Duration.ofMillis(50)));
+        when(searchResultRepository.save(any(CachedSearchResult.class)))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act: due richieste concorrenti condividono la stessa chiamata upstream
+        Mono<String> first = youTubeProxyService.searchVideosReactive(params);
+        Mono<String> second = youTubeProxyService.searchVideosReactive(params);
+        List<String> results = Mono.zip(first, second, List::of).block(Duration.ofSeconds(5));
+
+        // Assert
+        assertEquals(List.of(apiResponse, apiResponse), results);
+        verify(webClient, times(1)).get();
+        verify(searchResultRepository, times(1)).save(any(CachedSearchResult.class));
+        verify(localCache).putSearch(anyString(), any(CachedPayload.class));
+    }
+
+    @Test
+    void testSearchVideosReactive_QuotaExceededRetryLeavesTheResponseThread() {
+        // Arrange: l'errore quotaExceeded arriva su un thread non bloccabile, come quelli di Netty
+        List<String> quotaThreads = new CopyOnWriteArrayList<>();
+        quotaScheduler = new UpstreamQuotaScheduler(List.of("key-one", "key-two"), 10000, 20,
+            ZoneId.of("America/Los_Angeles"), Clock.systemUTC()) {
+            @Override
+            public String acquire(UpstreamQuotaScheduler.Operation operation) {
+                quotaThreads.add(Thread.currentThread().getName());
+                return super.acquire(operation);
+            }
+
+            @Override
+            public void markExhausted(String apiKey) {
+                quotaThreads.add(Thread.currentThread().getName());
+                super.markExhausted(apiKey);
+            }
+        };
+        ReflectionTestUtils.setField(youTubeProxyService, "quotaScheduler", quotaScheduler);
+        String apiResponse = "{\"items\": []}";
+
+        when(sharedCache.getSearchAsync(anyString())).thenReturn(Mono.empty());
+        when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class))
+            .thenReturn(Mono.delay(Duration.ofMillis(10)).then(Mono.error(WebClientResponseException.create(403,
+                "Forbidden", null, "{\"error\": {\"errors\": [{\"reason\": \"quotaExceeded\"}]}}".getBytes(), null))))
+            .thenReturn(Mono.just(apiResponse));
+
+        // Act
+        String result = youTubeProxyService.searchVideosReactive(Map.of("q", "rotation"))
+            .block(Duration.ofSeconds(5));
+
+        // Assert: acquire, markExhausted e il nuovo acquire girano tutti su boundedElastic
+        assertEquals(apiResponse, result);
+        assertEquals(3, quotaThreads.size());
+        quotaThreads.forEach(thread -> assertTrue(thread.startsWith("boundedElastic"), thread));
+    }
+
+    @Test
+    void testGetVideoDetailsReactive_RedisHitSkipsDatabase() {
+        // Arrange
+        LocalDateTime now = LocalDateTime.now();
+        CachedPayload shared = new CachedPayload("{\"items\": [\"redis\"]}", now, now.plusHours(1));
+        when(sharedCache.getVideoAsync("vid")).thenReturn(Mono.just(shared));
+
+        // Act
+        String result = youTubeProxyService.getVideoDetailsReactive("vid", new HashMap<>()).block(Duration.ofSeconds(5));
+
+        // Assert
+        assertEquals("{\"items\": [\"redis\"]}", result);
+        verify(localCache).putVideo("vid", shared);
+        verify(videoRepository, never()).findByVideoId(anyString());
+    }
+
+    @Test
+    void testSearchVideos_QuotaReserveServesExpiredDataWithoutUpstream() {
+        // Arrange: budget sotto la riserva per le search, resta spazio solo per i video
+        quotaScheduler = new UpstreamQuotaScheduler(List.of(API_KEY), 150, 50, ZoneId.of("America/Los_Angeles"), Clock.systemUTC());
+        ReflectionTestUtils.setField(youTubeProxyService, "quotaScheduler", quotaScheduler);
+
+        CachedSearchResult expired = new CachedSearchResult();
+        expired.setQueryKey("test-key");
+        expired.setResponseJson("{\"items\": [\"old\"]}");
+        expired.setCreatedAt(LocalDateTime.now().minusDays(3));
+        expired.setExpiresAt(LocalDateTime.now().minusDays(2));
+        when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.of(expired));
+
+        // Act
+        String result = youTubeProxyService.searchVideos(Map.of("q", "budget"));
+
+        // Assert
+        assertEquals("{\"items\": [\"old\"]}", result);
+        verify(webClient, never()).get();
+        assertEquals(1L, quotaScheduler.getStatistics().get("refusedSearches"));
+        assertEquals(API_KEY, quotaScheduler.acquire(UpstreamQuotaScheduler.Operation.VIDEOS));
+    }
+
+    @Test
+    void testGetVideoDetails_QuotaExceededFallsBackToDatabase() {
+        // Arrange
+        CachedVideo expired = new CachedVideo();
+        expired.setVideoId("vid");
+        expired.setResponseJson("{\"items\": [\"old\"]}");
+        expired.setCreatedAt(LocalDateTime.now().minusDays(3));
+        expired.setExpiresAt(LocalDateTime.now().minusDays(2));
+        when(videoRepository.findByVideoId("vid")).thenReturn(Optional.of(expired));
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.error(WebClientResponseException.create(
+            403, "Forbidden", null,
+            "{\"error\": {\"errors\": [{\"reason\": \"quotaExceeded\"}]}}".getBytes(), null)));
+
+        // Act
+        String result = youTubeProxyService.getVideoDetails("vid", new HashMap<>());
+
+        // Assert: nessun errore al client, quota considerata esaurita fino al reset
+        assertEquals("{\"items\": [\"old\"]}", result);
+        assertEquals(0L, quotaScheduler.getStatistics().get("remaining"));
+        verify(videoRepository, never()).save(any(CachedVideo.class));
+    }
+
+    @Test
+    void testSearchVideos_QuotaExceededRetriesWithNextKey() {
+        // Arrange: due key, la prima risponde quotaExceeded
+        quotaScheduler = new UpstreamQuotaScheduler(List.of("key-one", "key-two"), 10000, 20,
+            ZoneId.of("America/Los_Angeles"), Clock.systemUTC());
+        ReflectionTestUtils.setField(youTubeProxyService, "quotaScheduler", quotaScheduler);
+        String apiResponse = "{\"items\": []}";
+
+        when(searchResultRepository.findByQueryKey(anyString())).thenReturn(Optional.empty());
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(any(java.util.function.Function.class)))
+            .thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(String.class))
+            .thenReturn(Mono.error(WebClientResponseException.create(403, "Forbidden", null,
+                "{\"error\": {\"errors\": [{\"reason\": \"quotaExceeded\"}]}}".getBytes(), null)))
+            .thenReturn(Mono.just(apiResponse));
+        when(searchResultRepository.save(any(CachedSearchResult.class)))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        String result = youTubeProxyService.searchVideos(Map.of("q", "rotation"));
+
+        // Assert: la prima key è ferma fino al reset, la seconda ha pagato la search
+        assertEquals(apiResponse, result);
+        verify(webClient, times(2)).get();
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> keys = (List<Map<String, Object>>) quotaScheduler.getStatistics().get("keys");
+        assertEquals(1L, keys.get(0).get("quotaExceeded"));
+        assertEquals(0L, keys.get(0).get("remaining"));
+        assertEquals(9900L, keys.get(1).get("remaining"));
+    }
 }
@@ -0,0 +1,109 @@
+package efohum.com.youtubeproxy.statistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoStatisticsRow;
+
+class VideoStatisticsExporterTest {
+
+    private static final int ROWS = VideoStatisticsExporter.BATCH_SIZE * 2 + 7;
+
+    private final CachedVideoRepository videoRepository = mock(CachedVideoRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final VideoStatisticsExporter exporter = new VideoStatisticsExporter(videoRepository, objectMapper);
+
+    @BeforeEach
+    void setUp() {
+        // Tabella simulata: id da 1 a ROWS, il video 3 è scaduto
+        when(videoRepository.findStatisticsAfter(anyLong(), any())).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            Pageable page = invocation.getArgument(1);
+            List<VideoStatisticsRow> rows = new ArrayList<>();
+            for (long id = afterId + 1; id <= ROWS && rows.size() < page.getPageSize(); id++) {
+                rows.add(row(id));
+            }
+            return rows;
+        });
+    }
+
+    @Test
+    void testWritesAllRowsAsJsonArrayInKeysetBatches() throws Exception {
+        // Arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        exporter.writeAll(0, false, out);
+
+        // Assert
+        JsonNode array = objectMapper.readTree(out.toByteArray());
+        assertEquals(ROWS, array.size());
+        assertEquals("v1", array.get(0).path("videoId").asText());
+        assertTrue(array.get(2).path("expired").asBoolean());
+        assertEquals(10L, array.get(0).path("viewCount").asLong());
+        verify(videoRepository, times(3)).findStatisticsAfter(anyLong(), any());
+    }
+
+    @Test
+    void testWritesOneObjectPerLineAsNdjson() throws Exception {
+        // Arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        exporter.writeAll(ROWS - 3, true, out);
+
+        // Assert
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("v" + ROWS, objectMapper.readTree(lines[2]).path("videoId").asText());
+    }
+
+    @Test
+    void testPageContinuesAfterTheGivenId() throws Exception {
+        // Act
+        List<VideoStatisticsRow> page = exporter.page(10, VideoStatisticsExporter.MAX_PAGE_SIZE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.writePage(page.subList(0, 2), out);
+
+        // Assert
+        assertEquals(Math.min(VideoStatisticsExporter.MAX_PAGE_SIZE, ROWS - 10), page.size());
+        assertEquals(11L, page.get(0).getId());
+        assertEquals(2, objectMapper.readTree(out.toByteArray()).size());
+    }
+
+    @Test
+    void testPageRejectsALimitOutsideTheAllowedRange() {
+        // Act & Assert: nessuna pagina ridimensionata in silenzio
+        assertThrows(IllegalArgumentException.class, () -> exporter.page(10, VideoStatisticsExporter.MAX_PAGE_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> exporter.page(10, 0));
+    }
+
+    private static VideoStatisticsRow row(long id) {
+        VideoStatisticsRow row = mock(VideoStatisticsRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getVideoId()).thenReturn("v" + id);
+        when(row.getViewCount()).thenReturn(id * 10);
+        when(row.getCreatedAt()).thenReturn(LocalDateTime.now());
+        when(row.getExpiresAt()).thenReturn(id == 3 ? LocalDateTime.now().minusHours(1) : LocalDateTime.now().plusHours(1));
+        return row;
+    }
+}
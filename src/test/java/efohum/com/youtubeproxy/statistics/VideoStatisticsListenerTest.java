@@ -0,0 +1,80 @@
+package efohum.com.youtubeproxy.statistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+
+class VideoStatisticsListenerTest {
+
+    private final VideoStatisticsSummary summary = new VideoStatisticsSummary(mock(CachedVideoRepository.class));
+    private final VideoStatisticsListener listener = new VideoStatisticsListener(
+            new StaticListableBeanFactory(Map.of("videoStatisticsSummary", summary))
+                    .getBeanProvider(VideoStatisticsSummary.class));
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testTotalsChangeOnlyAfterCommit() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        listener.onSave(video("v1", 100));
+        Object beforeCommit = summary.getSummary().get("totalViews");
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Assert
+        assertEquals(0L, beforeCommit);
+        assertEquals(100L, summary.getSummary().get("totalViews"));
+    }
+
+    @Test
+    void testRolledBackWritesLeaveTheTotalsUnchanged() {
+        // Arrange: v1 già nel riepilogo, la transazione ne annulla la cancellazione e l'insert di v2
+        listener.onSave(video("v1", 100));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        listener.onRemove(video("v1", 100));
+        listener.onSave(video("v2", 50));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // Assert
+        assertEquals(1, summary.getSummary().get("totalCachedVideos"));
+        assertEquals(100L, summary.getSummary().get("totalViews"));
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private static CachedVideo video(String videoId, long viewCount) {
+        CachedVideo video = new CachedVideo();
+        video.setVideoId(videoId);
+        video.setViewCount(viewCount);
+        video.setExpiresAt(LocalDateTime.now().plusHours(1));
+        return video;
+    }
+}
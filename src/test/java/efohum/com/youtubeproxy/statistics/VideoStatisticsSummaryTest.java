@@ -0,0 +1,123 @@
+package efohum.com.youtubeproxy.statistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import efohum.com.youtubeproxy.entity.CachedVideo;
+import efohum.com.youtubeproxy.repository.CachedVideoRepository;
+import efohum.com.youtubeproxy.repository.VideoSummaryFields;
+
+class VideoStatisticsSummaryTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final CachedVideoRepository videoRepository = mock(CachedVideoRepository.class);
+    private final AtomicReference<Instant> now = new AtomicReference<>(NOW.toInstant(ZoneOffset.UTC));
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now.get();
+        }
+    };
+    private final VideoStatisticsSummary summary = new VideoStatisticsSummary(videoRepository, clock);
+
+    @Test
+    void testInsertUpdateAndRemoveAdjustTheAggregates() {
+        // Arrange
+        summary.onSave(video("v1", 100L, 10L, 1L, NOW.plusHours(1)));
+        summary.onSave(video("v2", 50L, null, 2L, NOW.plusHours(1)));
+
+        // Act
+        summary.onSave(video("v1", 300L, 30L, 3L, NOW.plusHours(2)));
+        summary.onRemove("v2");
+        summary.onRemove("unknown");
+        Map<String, Object> result = summary.getSummary();
+
+        // Assert
+        assertEquals(1, result.get("totalCachedVideos"));
+        assertEquals(1L, result.get("validCachedVideos"));
+        assertEquals(300L, result.get("totalViews"));
+        assertEquals(30L, result.get("totalLikes"));
+        assertEquals(3L, result.get("totalComments"));
+    }
+
+    @Test
+    void testExpiredVideosLeaveTheValidSumsWhenTimePasses() {
+        // Arrange
+        summary.onSave(video("v1", 100L, 10L, 1L, NOW.plusHours(1)));
+        summary.onSave(video("v2", 50L, 5L, 2L, NOW.plusHours(3)));
+        summary.onSave(video("v3", 7L, 0L, 0L, NOW.minusHours(1)));
+
+        // Act
+        now.set(NOW.plusHours(2).toInstant(ZoneOffset.UTC));
+        Map<String, Object> result = summary.getSummary();
+
+        // Assert
+        assertEquals(3, result.get("totalCachedVideos"));
+        assertEquals(1L, result.get("validCachedVideos"));
+        assertEquals(2L, result.get("expiredCachedVideos"));
+        assertEquals(50L, result.get("totalViews"));
+    }
+
+    @Test
+    void testReconcileReplacesDriftedAggregatesWithTheDatabase() {
+        // Arrange: il DB ha un video che gli eventi non hanno visto, e non ha più v2
+        summary.onSave(video("v1", 100L, null, null, NOW.plusHours(1)));
+        summary.onSave(video("v2", 50L, 5L, 2L, NOW.plusHours(1)));
+        VideoSummaryFields v1 = fields(1L, "v1", 100L);
+        VideoSummaryFields v3 = fields(3L, "v3", 900L);
+        when(videoRepository.findSummaryFieldsAfter(anyLong(), any())).thenReturn(List.of(v1, v3));
+
+        // Act
+        summary.reconcile();
+        Map<String, Object> result = summary.getSummary();
+
+        // Assert
+        assertEquals(2, result.get("totalCachedVideos"));
+        assertEquals(1000L, result.get("totalViews"));
+        assertEquals(2L, summary.getStatistics().get("lastDrift"));
+    }
+
+    private static CachedVideo video(String videoId, Long views, Long likes, Long comments, LocalDateTime expiresAt) {
+        CachedVideo video = new CachedVideo();
+        video.setVideoId(videoId);
+        video.setViewCount(views);
+        video.setLikeCount(likes);
+        video.setCommentCount(comments);
+        video.setExpiresAt(expiresAt);
+        return video;
+    }
+
+    private static VideoSummaryFields fields(Long id, String videoId, Long views) {
+        VideoSummaryFields fields = mock(VideoSummaryFields.class);
+        when(fields.getId()).thenReturn(id);
+        when(fields.getVideoId()).thenReturn(videoId);
+        when(fields.getViewCount()).thenReturn(views);
+        when(fields.getExpiresAt()).thenReturn(NOW.plusHours(1));
+        return fields;
+    }
+}